@@ -0,0 +1,9 @@
+module xyz.ielis.hyperutil.reference.server {
+    exports xyz.ielis.hyperutil.reference.server;
+
+    requires xyz.ielis.hyperutil.reference;
+    requires htsjdk;
+    requires jannovar.core;
+    requires jdk.httpserver;
+    requires org.slf4j;
+}
@@ -0,0 +1,107 @@
+package xyz.ielis.hyperutil.reference.server;
+
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes ranges of the fasta file bases into a channel, without decoding the bases into strings. The bases are written
+ * in upper case.
+ * <p>
+ * The ranges located on a single line of the fasta file that contain no soft-masked bases are passed to
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which saves the line and case processing. The bytes
+ * are still copied through a buffer unless the target is a channel the operating system can transfer to directly,
+ * such as a socket channel; the channel wrapping the response stream of the HTTP server is not one. The other ranges
+ * are read in blocks, the line terminators are dropped and the bases are converted to upper case before writing.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+class FastaRangeWriter implements Closeable {
+
+    /**
+     * Maximum number of bases written at once.
+     */
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private final FileChannel fasta;
+
+    FastaRangeWriter(Path fastaPath) throws IOException {
+        this.fasta = FileChannel.open(fastaPath, StandardOpenOption.READ);
+    }
+
+    private static long offset(FastaSequenceIndexEntry entry, long pos) {
+        return entry.getLocation() + pos / entry.getBasesPerLine() * entry.getBytesPerLine() + pos % entry.getBasesPerLine();
+    }
+
+    /**
+     * Write bases <code>[begin, end)</code> of the contig into the target.
+     *
+     * @param entry  fasta index entry of the contig
+     * @param begin  0-based begin position
+     * @param end    0-based end position, exclusive
+     * @param masked true if the range contains soft-masked (lowercase) bases
+     * @param target channel to write the bases to
+     * @throws IOException if the file cannot be read or the target cannot be written
+     */
+    void write(FastaSequenceIndexEntry entry, long begin, long end, boolean masked, WritableByteChannel target) throws IOException {
+        int basesPerLine = entry.getBasesPerLine();
+        if (begin == end) {
+            return;
+        }
+        if (!masked && begin / basesPerLine == (end - 1) / basesPerLine) {
+            // single line, no line terminators to drop
+            long position = offset(entry, begin), remaining = end - begin;
+            while (remaining > 0) {
+                long transferred = fasta.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    throw new IOException(String.format("Unexpected end of fasta file at %d", position));
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+            return;
+        }
+
+        int terminatorLength = entry.getBytesPerLine() - basesPerLine;
+        ByteBuffer raw = ByteBuffer.allocate(BLOCK_SIZE + (BLOCK_SIZE / basesPerLine + 1) * terminatorLength);
+        ByteBuffer bases = ByteBuffer.allocate(BLOCK_SIZE);
+        long pos = begin;
+        while (pos < end) {
+            long blockEnd = Math.min(end, pos + BLOCK_SIZE);
+            long from = offset(entry, pos);
+            raw.clear().limit((int) (offset(entry, blockEnd - 1) + 1 - from));
+            while (raw.hasRemaining()) {
+                if (fasta.read(raw, from + raw.position()) < 0) {
+                    throw new IOException(String.format("Unexpected end of fasta file at %d", from + raw.position()));
+                }
+            }
+
+            // copy the line segments, dropping the line terminators
+            bases.clear();
+            for (long p = pos; p < blockEnd; ) {
+                long lineEnd = Math.min(blockEnd, (p / basesPerLine + 1) * basesPerLine);
+                bases.put(raw.array(), (int) (offset(entry, p) - from), (int) (lineEnd - p));
+                p = lineEnd;
+            }
+            RefgetDigests.uppercase(bases.array(), 0, bases.position());
+            bases.flip();
+            while (bases.hasRemaining()) {
+                target.write(bases);
+            }
+            pos = blockEnd;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        fasta.close();
+    }
+}
@@ -0,0 +1,117 @@
+package xyz.ielis.hyperutil.reference.server;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessor;
+import xyz.ielis.hyperutil.reference.fasta.SequenceBatch;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes refget digests of the contigs of an accessor. The digests are computed from the upper case sequence, the
+ * contigs are processed in parallel. The bases are read by {@link GenomeSequenceAccessor#fetchSequences(int[], int[],
+ * int[], boolean[])}, which reads the file-backed accessors without loading whole
+ * contigs into memory.
+ */
+class RefgetDigests {
+
+    /**
+     * Number of bases fetched from the accessor at once.
+     */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private RefgetDigests() {
+        // private no-op
+    }
+
+    /**
+     * @param accessor accessor to compute the digests for
+     * @param executor executor to run the computation on
+     * @return sequences with the digests, in the order of the contig IDs
+     * @throws InterruptedException if interrupted while waiting for the computation
+     */
+    static List<RefgetSequence> compute(GenomeSequenceAccessor accessor, ExecutorService executor) throws InterruptedException {
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        Map<Integer, List<String>> aliases = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : rd.getContigNameToID().entrySet()) {
+            aliases.computeIfAbsent(entry.getValue(), id -> new ArrayList<>()).add(entry.getKey());
+        }
+
+        List<Integer> contigIds = new ArrayList<>(new TreeSet<>(rd.getContigIDToName().keySet()));
+        List<Future<RefgetSequence>> futures = new ArrayList<>(contigIds.size());
+        for (Integer contigId : contigIds) {
+            String name = rd.getContigIDToName().get(contigId);
+            int length = rd.getContigIDToLength().get(contigId);
+            List<String> names = aliases.getOrDefault(contigId, List.of(name));
+            names.sort(Comparator.naturalOrder());
+            futures.add(executor.submit(() -> digest(accessor, contigId, name, length, names)));
+        }
+
+        List<RefgetSequence> sequences = new ArrayList<>(futures.size());
+        try {
+            for (Future<RefgetSequence> future : futures) {
+                sequences.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Unable to compute refget digests", e.getCause());
+        }
+        return sequences;
+    }
+
+    private static RefgetSequence digest(GenomeSequenceAccessor accessor, int contigId, String name, int length,
+                                         List<String> aliases) {
+        MessageDigest md5 = newDigest("MD5");
+        MessageDigest sha512 = newDigest("SHA-512");
+        for (int begin = 0; begin < length; begin += CHUNK_SIZE) {
+            int end = Math.min(begin + CHUNK_SIZE, length);
+            SequenceBatch batch = accessor.fetchSequences(new int[]{contigId}, new int[]{begin}, new int[]{end}, null);
+            if (!batch.isOk(0)) {
+                throw new IllegalStateException(String.format("Unable to fetch %s:%d-%d", name, begin + 1, end));
+            }
+            byte[] bases = batch.getBases();
+            int offset = batch.getOffsets()[0], n = batch.getLength(0);
+            uppercase(bases, offset, offset + n);
+            md5.update(bases, offset, n);
+            sha512.update(bases, offset, n);
+        }
+        String sha512t24u = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Arrays.copyOf(sha512.digest(), 24));
+        return new RefgetSequence(contigId, name, length, hex(md5.digest()), sha512t24u, aliases);
+    }
+
+    /**
+     * Convert the lowercase bases of <code>bases[from, to)</code> to upper case.
+     */
+    static void uppercase(byte[] bases, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bases[i] >= 'a' && bases[i] <= 'z') {
+                bases[i] -= 'a' - 'A';
+            }
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 and SHA-512 are required to be supported by every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+}
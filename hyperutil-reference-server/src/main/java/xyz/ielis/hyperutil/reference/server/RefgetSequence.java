@@ -0,0 +1,81 @@
+package xyz.ielis.hyperutil.reference.server;
+
+import java.util.List;
+
+/**
+ * Contig served by {@link RefgetServer} together with its refget digests.
+ */
+public final class RefgetSequence {
+
+    private final int contigId;
+
+    private final String name;
+
+    private final int length;
+
+    private final String md5;
+
+    private final String sha512t24u;
+
+    private final List<String> aliases;
+
+    RefgetSequence(int contigId, String name, int length, String md5, String sha512t24u, List<String> aliases) {
+        this.contigId = contigId;
+        this.name = name;
+        this.length = length;
+        this.md5 = md5;
+        this.sha512t24u = sha512t24u;
+        this.aliases = List.copyOf(aliases);
+    }
+
+    public int getContigId() {
+        return contigId;
+    }
+
+    /**
+     * @return primary name of the contig in the accessor
+     */
+    public String getName() {
+        return name;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return lower case hex MD5 digest of the upper case sequence
+     */
+    public String getMd5() {
+        return md5;
+    }
+
+    /**
+     * @return base64url encoded first 24 bytes of SHA-512 digest of the upper case sequence
+     */
+    public String getSha512t24u() {
+        return sha512t24u;
+    }
+
+    /**
+     * @return GA4GH identifier of the sequence, e.g. <code>SQ.aKF498dAxcJAqme6QYQ7EZ07-fiw8Kw2</code>
+     */
+    public String getGa4gh() {
+        return "SQ." + sha512t24u;
+    }
+
+    /**
+     * @return all names of the contig
+     */
+    public List<String> getAliases() {
+        return aliases;
+    }
+
+    @Override
+    public String toString() {
+        return "REFGET_SEQ{" + name +
+                ", length=" + length +
+                ", md5=" + md5 +
+                ", ga4gh=" + getGa4gh() + "}";
+    }
+}
@@ -0,0 +1,371 @@
+package xyz.ielis.hyperutil.reference.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessor;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessorBuilder;
+import xyz.ielis.hyperutil.reference.fasta.SingleFastaGenomeSequenceAccessor;
+import xyz.ielis.hyperutil.reference.fasta.SoftMaskIndex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * HTTP server that serves the contigs of a {@link GenomeSequenceAccessor} using the
+ * <a href="https://samtools.github.io/hts-specs/refget.html">GA4GH refget v2 API</a>:
+ * <ul>
+ *     <li><code>GET /sequence/service-info</code> - description of the service,</li>
+ *     <li><code>GET /sequence/{id}?start=0&amp;end=10</code> - sequence or subsequence of the contig, the range can be
+ *     requested by <code>start</code> and <code>end</code> (0-based, half-open) or by <code>Range</code> header,</li>
+ *     <li><code>GET /sequence/{id}/metadata</code> - digests, length and aliases of the contig.</li>
+ * </ul>
+ * The contig <code>id</code> is the MD5 digest, the GA4GH identifier (<code>SQ.</code> followed by sha512t24u
+ * digest), either of them with <code>md5:</code> or <code>ga4gh:</code> prefix, or any name of the contig. The digests
+ * are computed in parallel when the server starts. The sequences are served in upper case, as the digests are computed
+ * from the upper case sequence.
+ * <p>
+ * If the accessor is a {@link SingleFastaGenomeSequenceAccessor}, then the bases are read from the fasta file in
+ * blocks and written to the response without being decoded into strings. The ranges containing soft-masked bases are
+ * found using the {@link SoftMaskIndex} of the accessor, or the index stored next to the fasta file (built when the
+ * server starts if missing) if the accessor has none, and the other single-line ranges are written unchanged.
+ * </p>
+ * <p>
+ * The server does not close the accessor. Run <code>RefgetServer genome.fa [port] [threads]</code> to serve a fasta
+ * file from the command line.
+ * </p>
+ */
+public class RefgetServer implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefgetServer.class);
+
+    static final String SEQUENCE_CONTENT_TYPE = "text/vnd.ga4gh.refget.v2.0.0+plain; charset=us-ascii";
+
+    static final String JSON_CONTENT_TYPE = "application/vnd.ga4gh.refget.v2.0.0+json";
+
+    private static final String CONTEXT = "/sequence/";
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    /**
+     * Number of bases fetched from the accessor at once.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final GenomeSequenceAccessor accessor;
+
+    private final List<RefgetSequence> sequences;
+
+    private final Map<String, RefgetSequence> sequenceById;
+
+    private final ExecutorService executor;
+
+    private final HttpServer server;
+
+    /**
+     * Writer of the file-backed accessor or <code>null</code> if the accessor is not backed by a single fasta file.
+     */
+    private final FastaRangeWriter rangeWriter;
+
+    /**
+     * Soft-mask index of the fasta file or <code>null</code> if the accessor is not backed by a single fasta file.
+     */
+    private final SoftMaskIndex softMaskIndex;
+
+    private RefgetServer(GenomeSequenceAccessor accessor, List<RefgetSequence> sequences, SoftMaskIndex softMaskIndex,
+                         ExecutorService executor, InetSocketAddress address) throws IOException {
+        this.accessor = accessor;
+        this.sequences = List.copyOf(sequences);
+        this.sequenceById = makeIdMap(sequences);
+        this.softMaskIndex = softMaskIndex;
+        this.executor = executor;
+        this.rangeWriter = accessor instanceof SingleFastaGenomeSequenceAccessor
+                ? new FastaRangeWriter(((SingleFastaGenomeSequenceAccessor) accessor).getFastaPath())
+                : null;
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext(CONTEXT, this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    /**
+     * Compute the digests of the contigs and start serving the accessor.
+     *
+     * @param accessor accessor to serve
+     * @param address  address to bind to, use port <code>0</code> to bind to an ephemeral port
+     * @param threads  number of threads computing the digests and serving the requests
+     * @return the running server
+     * @throws IOException          if the server cannot be bound to the address
+     * @throws InterruptedException if interrupted while computing the digests
+     */
+    public static RefgetServer start(GenomeSequenceAccessor accessor, InetSocketAddress address, int threads) throws IOException, InterruptedException {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format("Number of threads must be positive: %d", threads));
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                r -> new Thread(r, "hyperutil-refget-" + threadCount.incrementAndGet()));
+        try {
+            Future<SoftMaskIndex> softMaskIndex = executor.submit(() -> softMaskIndex(accessor));
+            long begin = System.nanoTime();
+            List<RefgetSequence> sequences = RefgetDigests.compute(accessor, executor);
+            LOGGER.info("Computed digests of {} contigs in {} ms", sequences.size(), (System.nanoTime() - begin) / 1_000_000);
+
+            RefgetServer server = new RefgetServer(accessor, sequences, softMaskIndex.get(), executor, address);
+            server.server.start();
+            LOGGER.info("Serving refget API at {}", server.getAddress());
+            return server;
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            throw new IllegalStateException("Unable to index soft-masked bases", e.getCause());
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+    }
+
+    private static SoftMaskIndex softMaskIndex(GenomeSequenceAccessor accessor) {
+        if (!(accessor instanceof SingleFastaGenomeSequenceAccessor)) {
+            return null;
+        }
+        SingleFastaGenomeSequenceAccessor fastaAccessor = (SingleFastaGenomeSequenceAccessor) accessor;
+        // reuse the index stored next to the fasta file, the fasta file is only scanned if the index is missing or stale
+        Path fastaPath = fastaAccessor.getFastaPath();
+        return fastaAccessor.getSoftMaskIndex()
+                .orElseGet(() -> SoftMaskIndex.readOrBuild(fastaPath, fastaAccessor.getFastaIndex(),
+                        fastaPath.resolveSibling(fastaPath.toFile().getName() + ".mask")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: RefgetServer <fasta> [port] [threads]");
+        }
+        GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(Paths.get(args[0]))
+                .setRequireMt(false)
+                .build();
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        RefgetServer server = start(accessor, new InetSocketAddress(port), threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                accessor.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error closing the server: {}", e.getMessage());
+            }
+        }));
+    }
+
+    private static Map<String, RefgetSequence> makeIdMap(List<RefgetSequence> sequences) {
+        Map<String, RefgetSequence> ids = new HashMap<>();
+        for (RefgetSequence sequence : sequences) {
+            for (String alias : sequence.getAliases()) {
+                ids.put(alias, sequence);
+            }
+            ids.put(sequence.getMd5(), sequence);
+            ids.put("md5:" + sequence.getMd5(), sequence);
+            ids.put(sequence.getGa4gh(), sequence);
+            ids.put("ga4gh:" + sequence.getGa4gh(), sequence);
+        }
+        return Map.copyOf(ids);
+    }
+
+    /**
+     * @return address the server is bound to
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * @return the served contigs with their digests
+     */
+    public List<RefgetSequence> getSequences() {
+        return sequences;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "Only GET requests are supported");
+                return;
+            }
+            String path = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+            if (path.equals("service-info")) {
+                sendJson(exchange, serviceInfo());
+            } else if (path.endsWith("/metadata")) {
+                RefgetSequence sequence = sequenceById.get(path.substring(0, path.length() - "/metadata".length()));
+                if (sequence == null) {
+                    sendText(exchange, 404, "Sequence not found");
+                } else {
+                    sendJson(exchange, metadata(sequence));
+                }
+            } else {
+                RefgetSequence sequence = sequenceById.get(path);
+                if (sequence == null) {
+                    sendText(exchange, 404, "Sequence not found");
+                } else {
+                    sendSequence(exchange, sequence);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Error serving `{}`: {}", exchange.getRequestURI(), e.getMessage());
+        }
+    }
+
+    private void sendSequence(HttpExchange exchange, RefgetSequence sequence) throws IOException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        String rangeHeader = exchange.getRequestHeaders().getFirst("Range");
+        long start = 0, end = sequence.getLength();
+        int status = 200;
+        try {
+            if (rangeHeader != null) {
+                if (params.containsKey("start") || params.containsKey("end")) {
+                    sendText(exchange, 400, "Range header cannot be combined with start and end parameters");
+                    return;
+                }
+                Matcher matcher = RANGE.matcher(rangeHeader.trim());
+                if (!matcher.matches()) {
+                    sendText(exchange, 400, "Unsupported range " + rangeHeader);
+                    return;
+                }
+                start = Long.parseLong(matcher.group(1));
+                long last = Long.parseLong(matcher.group(2));
+                if (last < start) {
+                    sendText(exchange, 400, "Invalid range " + rangeHeader);
+                    return;
+                }
+                // the range is inclusive and can reach past the end of the sequence
+                end = Math.min(last + 1, sequence.getLength());
+                status = 206;
+            } else {
+                if (params.containsKey("start")) {
+                    start = Long.parseLong(params.get("start"));
+                }
+                if (params.containsKey("end")) {
+                    end = Long.parseLong(params.get("end"));
+                }
+            }
+        } catch (NumberFormatException e) {
+            sendText(exchange, 400, "Invalid coordinates: " + e.getMessage());
+            return;
+        }
+        if (start < 0 || end < 0) {
+            sendText(exchange, 400, "Coordinates must be non-negative");
+            return;
+        }
+        if (start > end || end > sequence.getLength() || (start >= sequence.getLength() && sequence.getLength() > 0)) {
+            sendText(exchange, 416, "Range not satisfiable");
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", SEQUENCE_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, end == start ? -1 : end - start);
+        if (end > start) {
+            writeSequence(sequence, (int) start, (int) end, exchange.getResponseBody());
+        }
+    }
+
+    private void writeSequence(RefgetSequence sequence, int start, int end, OutputStream os) throws IOException {
+        if (rangeWriter != null) {
+            FastaSequenceIndex index = ((SingleFastaGenomeSequenceAccessor) accessor).getFastaIndex();
+            if (index.hasIndexEntry(sequence.getName())) {
+                boolean masked = softMaskIndex.isMasked(
+                        new GenomeInterval(accessor.getReferenceDictionary(), Strand.FWD, sequence.getContigId(), start, end));
+                rangeWriter.write(index.getIndexEntry(sequence.getName()), start, end, masked, Channels.newChannel(os));
+                return;
+            }
+        }
+        for (int begin = start; begin < end; begin += CHUNK_SIZE) {
+            byte[] bases = accessor.fetchSequence(sequence.getName(), begin + 1, Math.min(begin + CHUNK_SIZE, end))
+                    .getBytes(StandardCharsets.US_ASCII);
+            RefgetDigests.uppercase(bases, 0, bases.length);
+            os.write(bases);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> params = new HashMap<>();
+        for (String param : rawQuery.split("&")) {
+            int idx = param.indexOf('=');
+            String key = idx < 0 ? param : param.substring(0, idx);
+            String value = idx < 0 ? "" : param.substring(idx + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String serviceInfo() {
+        return "{\"id\":\"xyz.ielis.hyperutil.reference.server\"," +
+                "\"name\":\"HyperUtil refget server\"," +
+                "\"type\":{\"group\":\"org.ga4gh\",\"artifact\":\"refget\",\"version\":\"2.0.0\"}," +
+                "\"refget\":{\"circular_supported\":false,\"subsequence_limit\":null," +
+                "\"algorithms\":[\"md5\",\"ga4gh\"],\"identifier_types\":[]}}";
+    }
+
+    private static String metadata(RefgetSequence sequence) {
+        String aliases = sequence.getAliases().stream()
+                .map(alias -> "{\"alias\":\"" + escape(alias) + "\",\"naming_authority\":\"unknown\"}")
+                .collect(Collectors.joining(",", "[", "]"));
+        return "{\"metadata\":{" +
+                "\"id\":\"" + sequence.getMd5() + "\"," +
+                "\"md5\":\"" + sequence.getMd5() + "\"," +
+                "\"ga4gh\":\"" + sequence.getGa4gh() + "\"," +
+                "\"length\":" + sequence.getLength() + "," +
+                "\"aliases\":" + aliases + "}}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static void sendJson(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    /**
+     * Stop the server. The accessor is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+        if (rangeWriter != null) {
+            rangeWriter.close();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package xyz.ielis.hyperutil.reference.server;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.charite.compbio.jannovar.reference.Strand;
+import htsjdk.samtools.SAMException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessor;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessorBuilder;
+import xyz.ielis.hyperutil.reference.fasta.RefgetGenomeSequenceAccessor;
+import xyz.ielis.hyperutil.reference.fasta.SequenceInterval;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests {@link RefgetGenomeSequenceAccessor} against {@link RefgetServer} serving the local fasta file.
+ */
+public class RefgetGenomeSequenceAccessorTest {
+
+    private static final Path FASTA = Paths.get(RefgetGenomeSequenceAccessorTest.class.getResource("small_hg19.fa").getPath());
+
+    private GenomeSequenceAccessor local;
+
+    private RefgetServer server;
+
+    private RefgetGenomeSequenceAccessor instance;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        local = GenomeSequenceAccessorBuilder.builder().setFastaPath(FASTA).build();
+        server = RefgetServer.start(local, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+        instance = RefgetGenomeSequenceAccessor.of(endpoint(), List.of("chr1", "chr2", "chrM"), 1000, 5000);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        instance.close();
+        server.close();
+        local.close();
+    }
+
+    private URI endpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Forward the request to the {@link #server}, stripping the <code>/refget</code> prefix of the path.
+     */
+    private void forward(HttpExchange exchange) throws IOException {
+        URI uri = exchange.getRequestURI();
+        String target = uri.getRawPath().substring("/refget".length()) + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        HttpURLConnection connection = (HttpURLConnection) endpoint().resolve(target).toURL().openConnection();
+        try {
+            int status = connection.getResponseCode();
+            try (InputStream is = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                byte[] body = is == null ? new byte[0] : is.readAllBytes();
+                exchange.getResponseHeaders().set("Content-Type", connection.getContentType());
+                exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void referenceDictionaryIsBuiltFromMetadata() {
+        ReferenceDictionary rd = instance.getReferenceDictionary();
+
+        assertThat(rd.getContigIDToName().get(0), is("chr1"));
+        assertThat(rd.getContigIDToName().get(2), is("chrM"));
+        assertThat(rd.getContigIDToLength().get(1), is(10001));
+        assertThat(rd.getContigNameToID().get("chrM"), is(2));
+    }
+
+    @Test
+    public void contigIsNamedByAliasWhenRequestedByDigest() throws Exception {
+        try (RefgetGenomeSequenceAccessor accessor = RefgetGenomeSequenceAccessor.of(endpoint(),
+                List.of("md5:759aac7cb8b21cd85bd786b16f9283a0"))) {
+            // the aliases are reported in natural order
+            assertThat(accessor.getReferenceDictionary().getContigIDToName().get(0), is("M"));
+            assertThat(accessor.fetchSequence("chrM", 61, 70), is("CGTCTGGGGG"));
+            assertThat(accessor.fetchSequence("M", 61, 70), is("CGTCTGGGGG"));
+        }
+    }
+
+    @Test
+    public void fetchSequence() {
+        assertThat(instance.fetchSequence("chr1", 61, 70), is("CAATGAGCCC"));
+        assertThat(instance.fetchSequence("chr2", 61, 70), is("TCTGCTGTGT"));
+        assertThat(instance.fetchSequence("chrM", 61, 70), is("CGTCTGGGGG"));
+        assertThat(instance.fetchSequence("chrM", 61, 60), is(""));
+    }
+
+    @Test
+    public void fetchSequenceSpanningBlocks() {
+        assertThat(instance.fetchSequence("chr2", 990, 3010), is(local.fetchSequence("chr2", 990, 3010).toUpperCase()));
+        assertThat(instance.fetchSequence("chr2", 9990, 10001), is(local.fetchSequence("chr2", 9990, 10001).toUpperCase()));
+        assertThat(instance.fetchSequence("chrM", 1, 1000), is(local.fetchSequence("chrM", 1, 1000).toUpperCase()));
+    }
+
+    @Test
+    public void fetchSequenceInterval() {
+        ReferenceDictionary rd = instance.getReferenceDictionary();
+        GenomeInterval interval = new GenomeInterval(rd, Strand.FWD, 2, 60, 70).withStrand(Strand.REV);
+
+        SequenceInterval si = instance.fetchSequence(interval).orElseThrow();
+
+        assertThat(si.getSequence(), is("CCCCCAGACG"));
+    }
+
+    @Test
+    public void cacheIsBounded() {
+        for (int begin = 1; begin < 10001; begin += 500) {
+            instance.fetchSequence("chr1", begin, Math.min(begin + 999, 10001));
+        }
+
+        assertThat(instance.getCachedBases(), is(lessThanOrEqualTo(5000L)));
+        assertThat(instance.getCachedBases(), is(greaterThan(0L)));
+    }
+
+    @Test
+    public void cacheHoldsBlocksUpToTheCacheSize() {
+        instance.fetchSequence("chr1", 1, 5000);
+
+        assertThat(instance.getCachedBases(), is(5000L));
+    }
+
+    @Test
+    public void concurrentQueries() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = executor.invokeAll(List.of(
+                    () -> instance.fetchSequence("chr1", 500, 2500),
+                    () -> instance.fetchSequence("chr1", 1500, 3500),
+                    () -> instance.fetchSequence("chr2", 500, 2500),
+                    () -> instance.fetchSequence("chr1", 500, 2500)));
+
+            assertThat(futures.get(0).get(), is(local.fetchSequence("chr1", 500, 2500).toUpperCase()));
+            assertThat(futures.get(1).get(), is(local.fetchSequence("chr1", 1500, 3500).toUpperCase()));
+            assertThat(futures.get(2).get(), is(local.fetchSequence("chr2", 500, 2500).toUpperCase()));
+            assertThat(futures.get(3).get(), is(futures.get(0).get()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void invalidQueries() {
+        assertThrows(SAMException.class, () -> instance.fetchSequence("chrX", 1, 10));
+        assertThrows(SAMException.class, () -> instance.fetchSequence("chrM", 0, 10));
+        assertThrows(SAMException.class, () -> instance.fetchSequence("chrM", 990, 1001));
+    }
+
+    @Test
+    public void endpointWithBasePath() throws Exception {
+        // the proxy serves the refget API under the `/refget/` path
+        HttpServer proxy = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        proxy.createContext("/refget/", this::forward);
+        proxy.start();
+        try {
+            URI base = URI.create("http://localhost:" + proxy.getAddress().getPort() + "/refget");
+            try (RefgetGenomeSequenceAccessor accessor = RefgetGenomeSequenceAccessor.of(base, List.of("chr1"))) {
+                assertThat(accessor.fetchSequence("chr1", 61, 70), is("CAATGAGCCC"));
+            }
+        } finally {
+            proxy.stop(0);
+        }
+    }
+
+    @Test
+    public void unknownSequenceIdFailsCreation() {
+        assertThrows(IOException.class, () -> RefgetGenomeSequenceAccessor.of(endpoint(), List.of("chrX")));
+    }
+}
@@ -0,0 +1,192 @@
+package xyz.ielis.hyperutil.reference.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessor;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessorBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class RefgetServerTest {
+
+    private static final Path FASTA = Paths.get(RefgetServerTest.class.getResource("small_hg19.fa").getPath());
+
+    private GenomeSequenceAccessor accessor;
+
+    private RefgetServer server;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        accessor = GenomeSequenceAccessorBuilder.builder().setFastaPath(FASTA).build();
+        server = start(accessor);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        server.close();
+        accessor.close();
+    }
+
+    private static RefgetServer start(GenomeSequenceAccessor accessor) throws Exception {
+        return RefgetServer.start(accessor, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+    }
+
+    private static Response get(RefgetServer server, String path, String... headers) throws IOException {
+        URL url = new URL("http://localhost:" + server.getAddress().getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            for (int i = 0; i < headers.length; i += 2) {
+                connection.setRequestProperty(headers[i], headers[i + 1]);
+            }
+            int status = connection.getResponseCode();
+            try (InputStream is = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                String body = is == null ? "" : new String(is.readAllBytes(), StandardCharsets.US_ASCII);
+                return new Response(status, connection.getContentType(), body);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static final class Response {
+
+        private final int status;
+        private final String contentType;
+        private final String body;
+
+        private Response(int status, String contentType, String body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        int statusCode() {
+            return status;
+        }
+
+        String body() {
+            return body;
+        }
+    }
+
+    @Test
+    public void digestsMatchSequenceDictionary() {
+        RefgetSequence chr1 = server.getSequences().get(0);
+        assertThat(chr1.getName(), is("chr1"));
+        assertThat(chr1.getLength(), is(10001));
+        // M5 tag of the sequence dictionary
+        assertThat(chr1.getMd5(), is("4aa3816b0242b98936e707f80f46cfaa"));
+        assertThat(chr1.getGa4gh(), startsWith("SQ."));
+        assertThat(chr1.getSha512t24u().length(), is(32));
+        assertThat(server.getSequences().get(2).getMd5(), is("759aac7cb8b21cd85bd786b16f9283a0"));
+    }
+
+    @Test
+    public void getSubsequence() throws Exception {
+        RefgetSequence chr2 = server.getSequences().get(1);
+
+        Response response = get(server, "/sequence/" + chr2.getMd5() + "?start=60&end=70");
+        assertThat(response.statusCode(), is(200));
+        assertThat(response.contentType, is(RefgetServer.SEQUENCE_CONTENT_TYPE));
+        assertThat(response.body(), is("TCTGCTGTGT"));
+
+        // spans several lines of the fasta file
+        response = get(server, "/sequence/ga4gh:" + chr2.getGa4gh() + "?start=55&end=5000");
+        assertThat(response.body(), is(accessor.fetchSequence("chr2", 56, 5000).toUpperCase()));
+
+        // soft-masked bases are served in upper case
+        response = get(server, "/sequence/chr1?start=60&end=70");
+        assertThat(response.body(), is("CAATGAGCCC"));
+
+        response = get(server, "/sequence/M");
+        assertThat(response.body(), is(accessor.fetchSequence("chrM", 1, 1000).toUpperCase()));
+    }
+
+    @Test
+    public void getRange() throws Exception {
+        Response response = get(server, "/sequence/chrM", "Range", "bytes=60-69");
+        assertThat(response.statusCode(), is(206));
+        assertThat(response.body(), is("CGTCTGGGGG"));
+
+        response = get(server, "/sequence/chrM", "Range", "bytes=995-2000");
+        assertThat(response.statusCode(), is(206));
+        assertThat(response.body(), is(accessor.fetchSequence("chrM", 996, 1000).toUpperCase()));
+    }
+
+    @Test
+    public void sequenceHashesToItsId() throws Exception {
+        for (RefgetSequence sequence : server.getSequences()) {
+            Response response = get(server, "/sequence/" + sequence.getMd5());
+            byte[] md5 = MessageDigest.getInstance("MD5").digest(response.body().getBytes(StandardCharsets.US_ASCII));
+            assertThat(sequence.getName(), new BigInteger(1, md5), is(new BigInteger(sequence.getMd5(), 16)));
+        }
+    }
+
+    @Test
+    public void getMetadata() throws Exception {
+        Response response = get(server, "/sequence/md5:759aac7cb8b21cd85bd786b16f9283a0/metadata");
+        assertThat(response.statusCode(), is(200));
+        assertThat(response.body(), containsString("\"length\":1000"));
+        assertThat(response.body(), containsString("\"alias\":\"chrMT\""));
+        assertThat(response.body(), containsString("\"ga4gh\":\"" + server.getSequences().get(2).getGa4gh() + "\""));
+
+        response = get(server, "/sequence/service-info");
+        assertThat(response.statusCode(), is(200));
+        assertThat(response.body(), containsString("\"circular_supported\":false"));
+    }
+
+    @Test
+    public void invalidRequests() throws Exception {
+        assertThat(get(server, "/sequence/chr3").statusCode(), is(404));
+        assertThat(get(server, "/sequence/chr3/metadata").statusCode(), is(404));
+        assertThat(get(server, "/sequence/chr1?start=abc").statusCode(), is(400));
+        assertThat(get(server, "/sequence/chr1?start=10&end=5").statusCode(), is(416));
+        assertThat(get(server, "/sequence/chr1?start=10001").statusCode(), is(416));
+        assertThat(get(server, "/sequence/chr1?end=10002").statusCode(), is(416));
+        assertThat(get(server, "/sequence/chr1?start=1", "Range", "bytes=1-2").statusCode(), is(400));
+    }
+
+    @Test
+    public void serveUppercaseAccessor(@TempDir Path tempDir) throws Exception {
+        try (GenomeSequenceAccessor uppercase = GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setUppercase(true)
+                .setSoftMaskIndexPath(tempDir.resolve("small_hg19.fa.mask"))
+                .build();
+             RefgetServer uppercaseServer = start(uppercase)) {
+            assertThat(get(uppercaseServer, "/sequence/chr1?start=60&end=70").body(), is("CAATGAGCCC"));
+            assertThat(get(uppercaseServer, "/sequence/chr2?start=60&end=70").body(), is("TCTGCTGTGT"));
+            // digests are computed from the upper case sequence regardless of the accessor
+            assertThat(uppercaseServer.getSequences().get(0).getMd5(), is("4aa3816b0242b98936e707f80f46cfaa"));
+        }
+    }
+
+    @Test
+    public void softMaskIndexIsStoredNextToFasta(@TempDir Path tempDir) throws Exception {
+        Path fasta = tempDir.resolve("small_hg19.fa");
+        for (String suffix : new String[]{"", ".fai", ".dict"}) {
+            Files.copy(Paths.get(FASTA + suffix), tempDir.resolve("small_hg19.fa" + suffix));
+        }
+        try (GenomeSequenceAccessor copy = GenomeSequenceAccessorBuilder.builder().setFastaPath(fasta).build();
+             RefgetServer copyServer = start(copy)) {
+            assertThat(Files.isRegularFile(tempDir.resolve("small_hg19.fa.mask")), is(true));
+            assertThat(get(copyServer, "/sequence/chr1?start=60&end=70").body(), is("CAATGAGCCC"));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package xyz.ielis.hyperutil.reference.spring;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessor;
+
+import java.util.Map;
+
+/**
+ * Reports the accessor as healthy if it is ready and its reference dictionary contains at least one contig. The accessor
+ * is reported as out of service while preloading in background.
+ * <p>
+ * No sequence is fetched by the check, since a probe query might be rejected by a
+ * {@link GenomeSequenceAccessor.Type#TARGETED} accessor or might replace the contig held in memory by a
+ * {@link GenomeSequenceAccessor.Type#SINGLE_CHROMOSOME} accessor.
+ * </p>
+ */
+public class GenomeSequenceAccessorHealthIndicator extends AbstractHealthIndicator {
+
+    private final GenomeSequenceAccessor accessor;
+
+    private final HyperUtilReferenceProperties properties;
+
+    GenomeSequenceAccessorHealthIndicator(GenomeSequenceAccessor accessor, HyperUtilReferenceProperties properties) {
+        super("Genome sequence accessor health check failed");
+        this.accessor = accessor;
+        this.properties = properties;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        builder.withDetail("fastaPath", properties.getFastaPath())
+                .withDetail("type", properties.getType());
+
+        if (!accessor.getReadiness().isDone()) {
+            builder.outOfService().withDetail("preloading", true);
+            return;
+        }
+        if (accessor.getReadiness().isCompletedExceptionally()) {
+            // the accessor works without the preloaded data
+            builder.withDetail("preloading", "failed");
+        }
+
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        Map<Integer, String> contigs = rd.getContigIDToName();
+        builder.withDetail("contigs", contigs.size());
+        if (contigs.isEmpty()) {
+            builder.down().withDetail("error", "No contigs in the reference dictionary");
+        } else {
+            builder.up();
+        }
+    }
+}
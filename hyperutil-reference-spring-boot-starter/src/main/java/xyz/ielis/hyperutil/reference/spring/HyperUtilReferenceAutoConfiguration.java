@@ -0,0 +1,80 @@
+package xyz.ielis.hyperutil.reference.spring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessor;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessorBuilder;
+
+import java.nio.file.Paths;
+
+/**
+ * Auto-configuration of a singleton {@link GenomeSequenceAccessor} that is shared by the whole application. The
+ * accessor is configured by {@link HyperUtilReferenceProperties} and created only if
+ * <code>hyperutil.reference.fasta-path</code> is set.
+ * <p>
+ * The configured contigs and regions are preloaded by the builder, either before the accessor is handed to the
+ * application, or in background. The accessor is measured by {@link MeteredGenomeSequenceAccessor} and its health is
+ * reported by {@link GenomeSequenceAccessorHealthIndicator} if Spring Boot Actuator is present.
+ * </p>
+ */
+@Configuration
+@ConditionalOnClass(GenomeSequenceAccessor.class)
+@ConditionalOnProperty(prefix = "hyperutil.reference", name = "fasta-path")
+@EnableConfigurationProperties(HyperUtilReferenceProperties.class)
+public class HyperUtilReferenceAutoConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HyperUtilReferenceAutoConfiguration.class);
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean(GenomeSequenceAccessor.class)
+    public MeteredGenomeSequenceAccessor genomeSequenceAccessor(HyperUtilReferenceProperties properties) {
+        GenomeSequenceAccessorBuilder builder = GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(Paths.get(properties.getFastaPath()))
+                .setType(properties.getType())
+                .setRequireMt(properties.isRequireMt())
+                .setUppercase(properties.isUppercase())
+                .setMemoryBudget(properties.getMemoryBudget())
+                .setPreloadContigs(properties.getPreloadContigs())
+                .setPreloadThreads(properties.getPreloadThreads())
+                .setPreloadAsync(properties.isPreloadAsync())
+                .setTargetPadding(properties.getTargetPadding())
+                .setOffTargetPolicy(properties.getOffTargetPolicy());
+        if (properties.getFastaFaiPath() != null) {
+            builder.setFastaFaiPath(Paths.get(properties.getFastaFaiPath()));
+        }
+        if (properties.getFastaDictPath() != null) {
+            builder.setFastaDictPath(Paths.get(properties.getFastaDictPath()));
+        }
+        if (properties.getSoftMaskIndexPath() != null) {
+            builder.setSoftMaskIndexPath(Paths.get(properties.getSoftMaskIndexPath()));
+        }
+        if (properties.getPreloadRegionsPath() != null) {
+            builder.setPreloadRegionsPath(Paths.get(properties.getPreloadRegionsPath()));
+        }
+        if (properties.getTargetRegionsPath() != null) {
+            builder.setTargetRegionsPath(Paths.get(properties.getTargetRegionsPath()));
+        }
+
+        LOGGER.info("Creating {} genome sequence accessor for `{}`", properties.getType(), properties.getFastaPath());
+        return new MeteredGenomeSequenceAccessor(builder.build());
+    }
+
+    @Configuration
+    @ConditionalOnClass(HealthIndicator.class)
+    static class HealthConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(name = "genomeSequenceAccessorHealthIndicator")
+        public GenomeSequenceAccessorHealthIndicator genomeSequenceAccessorHealthIndicator(GenomeSequenceAccessor accessor,
+                                                                                         HyperUtilReferenceProperties properties) {
+            return new GenomeSequenceAccessorHealthIndicator(accessor, properties);
+        }
+    }
+}
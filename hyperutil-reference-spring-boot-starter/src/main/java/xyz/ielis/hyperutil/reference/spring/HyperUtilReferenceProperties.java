@@ -0,0 +1,213 @@
+package xyz.ielis.hyperutil.reference.spring;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessor;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessorBuilder;
+import xyz.ielis.hyperutil.reference.fasta.TargetedGenomeSequenceAccessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Properties of the {@link GenomeSequenceAccessor} bean. The properties map onto the setters of
+ * {@link GenomeSequenceAccessorBuilder}.
+ */
+@ConfigurationProperties(prefix = "hyperutil.reference")
+public class HyperUtilReferenceProperties {
+
+    /**
+     * Path to fasta file. The accessor bean is not created if the path is not set.
+     */
+    private String fastaPath;
+
+    /**
+     * Path to fasta index, `some.fa.fai` is tried for `some.fa` if the path is not set.
+     */
+    private String fastaFaiPath;
+
+    /**
+     * Path to sequence dictionary, `some.fa.dict` is tried for `some.fa` if the path is not set.
+     */
+    private String fastaDictPath;
+
+    /**
+     * Type of the accessor.
+     */
+    private GenomeSequenceAccessor.Type type = GenomeSequenceAccessor.Type.SINGLE_FASTA;
+
+    /**
+     * Whether the mitochondrial chromosome must be present in the fasta file.
+     */
+    private boolean requireMt = true;
+
+    /**
+     * Whether the soft-masked bases are returned in upper case.
+     */
+    private boolean uppercase = false;
+
+    /**
+     * Path to soft-mask index, `some.fa.mask` is tried for `some.fa` if the path is not set.
+     */
+    private String softMaskIndexPath;
+
+    /**
+     * Memory budget of the AUTO accessor in bytes.
+     */
+    private long memoryBudget = 256L << 20;
+
+    /**
+     * Contigs to preload at startup.
+     */
+    private List<String> preloadContigs = new ArrayList<>();
+
+    /**
+     * Path to BED file with regions to preload at startup.
+     */
+    private String preloadRegionsPath;
+
+    /**
+     * Number of threads used to preload the contigs and regions.
+     */
+    private int preloadThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Whether the preloading runs in background. The health is reported as out of service until the preloading is
+     * done.
+     */
+    private boolean preloadAsync = false;
+
+    /**
+     * Path to BED file with target regions of the TARGETED accessor.
+     */
+    private String targetRegionsPath;
+
+    /**
+     * Number of bases added to both sides of the target regions.
+     */
+    private int targetPadding = 0;
+
+    /**
+     * What the TARGETED accessor does with the queries outside of the target regions.
+     */
+    private TargetedGenomeSequenceAccessor.OffTargetPolicy offTargetPolicy = TargetedGenomeSequenceAccessor.OffTargetPolicy.FALLBACK;
+
+    public String getFastaPath() {
+        return fastaPath;
+    }
+
+    public void setFastaPath(String fastaPath) {
+        this.fastaPath = fastaPath;
+    }
+
+    public String getFastaFaiPath() {
+        return fastaFaiPath;
+    }
+
+    public void setFastaFaiPath(String fastaFaiPath) {
+        this.fastaFaiPath = fastaFaiPath;
+    }
+
+    public String getFastaDictPath() {
+        return fastaDictPath;
+    }
+
+    public void setFastaDictPath(String fastaDictPath) {
+        this.fastaDictPath = fastaDictPath;
+    }
+
+    public GenomeSequenceAccessor.Type getType() {
+        return type;
+    }
+
+    public void setType(GenomeSequenceAccessor.Type type) {
+        this.type = type;
+    }
+
+    public boolean isRequireMt() {
+        return requireMt;
+    }
+
+    public void setRequireMt(boolean requireMt) {
+        this.requireMt = requireMt;
+    }
+
+    public boolean isUppercase() {
+        return uppercase;
+    }
+
+    public void setUppercase(boolean uppercase) {
+        this.uppercase = uppercase;
+    }
+
+    public String getSoftMaskIndexPath() {
+        return softMaskIndexPath;
+    }
+
+    public void setSoftMaskIndexPath(String softMaskIndexPath) {
+        this.softMaskIndexPath = softMaskIndexPath;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public List<String> getPreloadContigs() {
+        return preloadContigs;
+    }
+
+    public void setPreloadContigs(List<String> preloadContigs) {
+        this.preloadContigs = preloadContigs;
+    }
+
+    public String getPreloadRegionsPath() {
+        return preloadRegionsPath;
+    }
+
+    public void setPreloadRegionsPath(String preloadRegionsPath) {
+        this.preloadRegionsPath = preloadRegionsPath;
+    }
+
+    public int getPreloadThreads() {
+        return preloadThreads;
+    }
+
+    public void setPreloadThreads(int preloadThreads) {
+        this.preloadThreads = preloadThreads;
+    }
+
+    public boolean isPreloadAsync() {
+        return preloadAsync;
+    }
+
+    public void setPreloadAsync(boolean preloadAsync) {
+        this.preloadAsync = preloadAsync;
+    }
+
+    public String getTargetRegionsPath() {
+        return targetRegionsPath;
+    }
+
+    public void setTargetRegionsPath(String targetRegionsPath) {
+        this.targetRegionsPath = targetRegionsPath;
+    }
+
+    public int getTargetPadding() {
+        return targetPadding;
+    }
+
+    public void setTargetPadding(int targetPadding) {
+        this.targetPadding = targetPadding;
+    }
+
+    public TargetedGenomeSequenceAccessor.OffTargetPolicy getOffTargetPolicy() {
+        return offTargetPolicy;
+    }
+
+    public void setOffTargetPolicy(TargetedGenomeSequenceAccessor.OffTargetPolicy offTargetPolicy) {
+        this.offTargetPolicy = offTargetPolicy;
+    }
+}
@@ -0,0 +1,157 @@
+package xyz.ielis.hyperutil.reference.spring;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessor;
+import xyz.ielis.hyperutil.reference.fasta.SequenceBatch;
+import xyz.ielis.hyperutil.reference.fasta.SequenceInterval;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accessor decorator that measures the queries using Micrometer. The meters are registered into the registries the
+ * accessor is bound to, the queries are not measured until the accessor is bound to a registry:
+ * <ul>
+ *     <li><code>hyperutil.reference.fetch</code> - timer of the queries, tagged by <code>outcome</code> -
+ *     <code>success</code> if the sequence was returned and <code>failure</code> otherwise,</li>
+ *     <li><code>hyperutil.reference.fetch.length</code> - distribution of the lengths of the returned sequences,</li>
+ *     <li><code>hyperutil.reference.fetch.batch</code> - timer of the batch queries,</li>
+ *     <li><code>hyperutil.reference.fetch.rows</code> - number of the rows of the batch queries, tagged by
+ *     <code>outcome</code>.</li>
+ * </ul>
+ * <p>
+ * This class is thread-safe if the underlying accessor is thread-safe.
+ * </p>
+ */
+public class MeteredGenomeSequenceAccessor implements GenomeSequenceAccessor, MeterBinder {
+
+    private final GenomeSequenceAccessor accessor;
+
+    private final CompositeMeterRegistry registry = new CompositeMeterRegistry();
+
+    private final Timer success;
+
+    private final Timer failure;
+
+    private final DistributionSummary length;
+
+    private final Timer batch;
+
+    private final Counter rowSuccess;
+
+    private final Counter rowFailure;
+
+    MeteredGenomeSequenceAccessor(GenomeSequenceAccessor accessor) {
+        this.accessor = Objects.requireNonNull(accessor, "Accessor cannot be null");
+        this.success = Timer.builder("hyperutil.reference.fetch")
+                .description("Sequence queries")
+                .tag("outcome", "success")
+                .register(registry);
+        this.failure = Timer.builder("hyperutil.reference.fetch")
+                .description("Sequence queries")
+                .tag("outcome", "failure")
+                .register(registry);
+        this.length = DistributionSummary.builder("hyperutil.reference.fetch.length")
+                .description("Length of the fetched sequences")
+                .baseUnit("bases")
+                .register(registry);
+        this.batch = Timer.builder("hyperutil.reference.fetch.batch")
+                .description("Batch sequence queries")
+                .register(registry);
+        this.rowSuccess = Counter.builder("hyperutil.reference.fetch.rows")
+                .description("Rows of the batch sequence queries")
+                .tag("outcome", "success")
+                .register(registry);
+        this.rowFailure = Counter.builder("hyperutil.reference.fetch.rows")
+                .description("Rows of the batch sequence queries")
+                .tag("outcome", "failure")
+                .register(registry);
+    }
+
+    /**
+     * @return the accessor the queries are delegated to
+     */
+    public GenomeSequenceAccessor getAccessor() {
+        return accessor;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        registry.add(meterRegistry);
+    }
+
+    @Override
+    public ReferenceDictionary getReferenceDictionary() {
+        return accessor.getReferenceDictionary();
+    }
+
+    @Override
+    public String fetchSequence(String chromosome, int begin, int end) {
+        long start = System.nanoTime();
+        String sequence = null;
+        try {
+            sequence = accessor.fetchSequence(chromosome, begin, end);
+            return sequence;
+        } finally {
+            record(start, sequence == null ? -1 : sequence.length());
+        }
+    }
+
+    @Override
+    public Optional<SequenceInterval> fetchSequence(GenomeInterval interval) {
+        long start = System.nanoTime();
+        Optional<SequenceInterval> sequence = Optional.empty();
+        try {
+            sequence = accessor.fetchSequence(interval);
+            return sequence;
+        } finally {
+            record(start, sequence.map(si -> si.getSequence().length()).orElse(-1));
+        }
+    }
+
+    @Override
+    public SequenceBatch fetchSequences(int[] contigIds, int[] begins, int[] ends, boolean[] reverseStrand) {
+        long start = System.nanoTime();
+        SequenceBatch sequences = accessor.fetchSequences(contigIds, begins, ends, reverseStrand);
+        batch.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        int ok = 0;
+        for (byte status : sequences.getStatus()) {
+            if (status == SequenceBatch.OK) {
+                ok++;
+            }
+        }
+        rowSuccess.increment(ok);
+        rowFailure.increment(sequences.size() - ok);
+        return sequences;
+    }
+
+    private void record(long start, int sequenceLength) {
+        long elapsed = System.nanoTime() - start;
+        if (sequenceLength < 0) {
+            failure.record(elapsed, TimeUnit.NANOSECONDS);
+        } else {
+            success.record(elapsed, TimeUnit.NANOSECONDS);
+            length.record(sequenceLength);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> getReadiness() {
+        return accessor.getReadiness();
+    }
+
+    @Override
+    public void close() throws IOException {
+        accessor.close();
+    }
+}
@@ -0,0 +1,124 @@
+package xyz.ielis.hyperutil.reference.spring;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import xyz.ielis.hyperutil.reference.fasta.GenomeSequenceAccessor;
+import xyz.ielis.hyperutil.reference.fasta.SequenceBatch;
+import xyz.ielis.hyperutil.reference.fasta.TargetedGenomeSequenceAccessor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class HyperUtilReferenceAutoConfigurationTest {
+
+    private static final Path FASTA = Paths.get(HyperUtilReferenceAutoConfigurationTest.class.getResource("/small_hg19.fa").getPath());
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(HyperUtilReferenceAutoConfiguration.class));
+
+    @Test
+    public void accessorIsNotCreatedWithoutFastaPath() {
+        runner.run(context -> assertThat(context.getBeanNamesForType(GenomeSequenceAccessor.class), is(emptyArray())));
+    }
+
+    @Test
+    public void createSharedAccessor() {
+        runner.withPropertyValues("hyperutil.reference.fasta-path=" + FASTA,
+                "hyperutil.reference.type=SINGLE_CHROMOSOME",
+                "hyperutil.reference.preload-contigs=chr1,chrM")
+                .run(context -> {
+                    GenomeSequenceAccessor accessor = context.getBean(GenomeSequenceAccessor.class);
+                    assertThat(accessor, is(sameInstance(context.getBean(GenomeSequenceAccessor.class))));
+                    assertThat(accessor.getReadiness().isDone(), is(true));
+                    assertThat(accessor.fetchSequence("chr1", 61, 70), is("caatgagccc"));
+                });
+    }
+
+    @Test
+    public void createTargetedAccessor(@TempDir Path tempDir) throws Exception {
+        Path targets = tempDir.resolve("targets.bed");
+        Files.write(targets, List.of("chr1\t100\t200"));
+        runner.withPropertyValues("hyperutil.reference.fasta-path=" + FASTA,
+                "hyperutil.reference.type=TARGETED",
+                "hyperutil.reference.target-regions-path=" + targets,
+                "hyperutil.reference.target-padding=50",
+                "hyperutil.reference.off-target-policy=REJECT")
+                .run(context -> {
+                    GenomeSequenceAccessor accessor = context.getBean(MeteredGenomeSequenceAccessor.class).getAccessor();
+                    assertThat(accessor, is(instanceOf(TargetedGenomeSequenceAccessor.class)));
+                    assertThat(accessor.fetchSequence("chr1", 61, 70), is("caatgagccc"));
+                    assertThat(accessor.fetchSequences(new int[]{1}, new int[]{60}, new int[]{70}, null).getStatus(0),
+                            is(SequenceBatch.REJECTED));
+                });
+    }
+
+    @Test
+    public void healthIsReported() {
+        runner.withPropertyValues("hyperutil.reference.fasta-path=" + FASTA)
+                .run(context -> {
+                    Health health = context.getBean(GenomeSequenceAccessorHealthIndicator.class).health();
+                    assertThat(health.getStatus(), is(Status.UP));
+                    assertThat(health.getDetails().get("contigs"), is(3));
+                });
+    }
+
+    @Test
+    public void healthOfTargetedAccessorIsReported(@TempDir Path tempDir) throws Exception {
+        Path targets = tempDir.resolve("targets.bed");
+        Files.write(targets, List.of("chr1\t100\t200"));
+        runner.withPropertyValues("hyperutil.reference.fasta-path=" + FASTA,
+                "hyperutil.reference.type=TARGETED",
+                "hyperutil.reference.target-regions-path=" + targets,
+                "hyperutil.reference.off-target-policy=REJECT")
+                .run(context -> {
+                    Health health = context.getBean(GenomeSequenceAccessorHealthIndicator.class).health();
+                    assertThat(health.getStatus(), is(Status.UP));
+                    assertThat(health.getDetails().get("contigs"), is(3));
+                });
+    }
+
+    @Test
+    public void healthOfSingleChromosomeAccessorIsReported() {
+        runner.withPropertyValues("hyperutil.reference.fasta-path=" + FASTA,
+                "hyperutil.reference.type=SINGLE_CHROMOSOME",
+                "hyperutil.reference.preload-contigs=chr2")
+                .run(context -> {
+                    Health health = context.getBean(GenomeSequenceAccessorHealthIndicator.class).health();
+                    assertThat(health.getStatus(), is(Status.UP));
+                    assertThat(health.getDetails().get("contigs"), is(3));
+                });
+    }
+
+    @Test
+    public void queriesAreMeasured() {
+        runner.withPropertyValues("hyperutil.reference.fasta-path=" + FASTA)
+                .run(context -> {
+                    MeteredGenomeSequenceAccessor accessor = context.getBean(MeteredGenomeSequenceAccessor.class);
+                    MeterRegistry registry = new SimpleMeterRegistry();
+                    accessor.bindTo(registry);
+
+                    accessor.fetchSequence("chr1", 61, 70);
+                    accessor.fetchSequence("chr2", 61, 70);
+
+                    assertThat(registry.get("hyperutil.reference.fetch").tag("outcome", "success").timer().count(), is(2L));
+                    assertThat(registry.get("hyperutil.reference.fetch.length").summary().totalAmount(), is(20.));
+
+                    accessor.fetchSequences(new int[]{0, 1, 100}, new int[]{60, 60, 0}, new int[]{70, 70, 10}, null);
+
+                    assertThat(registry.get("hyperutil.reference.fetch.batch").timer().count(), is(1L));
+                    assertThat(registry.get("hyperutil.reference.fetch.rows").tag("outcome", "success").counter().count(), is(2.));
+                    assertThat(registry.get("hyperutil.reference.fetch.rows").tag("outcome", "failure").counter().count(), is(1.));
+                });
+    }
+}
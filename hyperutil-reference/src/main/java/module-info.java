@@ -3,6 +3,7 @@ module xyz.ielis.hyperutil.reference {
 
     requires com.google.common;
     requires htsjdk;
+    requires java.net.http;
     requires jannovar.core;
     requires org.slf4j;
 }
\ No newline at end of file
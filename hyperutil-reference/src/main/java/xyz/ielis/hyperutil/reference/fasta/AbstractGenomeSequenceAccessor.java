@@ -0,0 +1,69 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import htsjdk.samtools.SAMException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Base class for accessors that are able to serve {@link GenomeInterval} queries by delegating to
+ * {@link #fetchSequence(String, int, int)}. The query contig is translated to the primary contig name of the
+ * accessor's {@link ReferenceDictionary} and the sequence is reverse complemented if the query is on
+ * {@link Strand#REV}.
+ */
+abstract class AbstractGenomeSequenceAccessor implements GenomeSequenceAccessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractGenomeSequenceAccessor.class);
+
+    private volatile CompletableFuture<Void> readiness = CompletableFuture.completedFuture(null);
+
+    @Override
+    public CompletableFuture<Void> getReadiness() {
+        return readiness;
+    }
+
+    void setReadiness(CompletableFuture<Void> readiness) {
+        this.readiness = readiness;
+    }
+
+    /**
+     * Extract nucleotide sequence from reference genome fasta file that is lying inside given {@link GenomeInterval}.
+     *
+     * @param query where the nucleotide sequence will be extracted from.
+     * @return nucleotide sequence
+     */
+    @Override
+    public Optional<SequenceInterval> fetchSequence(GenomeInterval query) {
+        final ReferenceDictionary referenceDictionary = getReferenceDictionary();
+        String queryContigName = query.getRefDict().getContigIDToName().get(query.getChr());
+        if (!referenceDictionary.getContigNameToID().containsKey(queryContigName)) {
+            LOGGER.warn("Unknown chromosome `{}`", queryContigName);
+            return Optional.empty();
+        }
+
+        // the name we use for contig in FASTA file
+        int primaryContigId = referenceDictionary.getContigNameToID().get(queryContigName);
+        String primaryContigName = referenceDictionary.getContigIDToName().get(primaryContigId);
+        GenomeInterval onStrand = query.withStrand(Strand.FWD);
+        final String seq;
+        try {
+            seq = fetchSequence(primaryContigName, onStrand.getBeginPos() + 1, onStrand.getEndPos());
+        } catch (SAMException e) {
+            LOGGER.warn("Error getting sequence for query `{}`: {}", query, e.getMessage());
+            return Optional.empty();
+        }
+        switch (query.getStrand()) {
+            case FWD:
+                return Optional.of(SequenceIntervalDefault.of(query, seq));
+            case REV:
+                return Optional.of(SequenceIntervalDefault.of(query, SequenceIntervalDefault.reverseComplement(seq)));
+            default:
+                throw new IllegalArgumentException(String.format("Unknown strand `%s`", query.getStrand()));
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This accessor observes the incoming queries and switches between the access strategies at runtime:
+ * <ul>
+ *     <li>{@link Strategy#DIRECT} - positional reads from the fasta file, used for long or scattered queries,</li>
+ *     <li>{@link Strategy#CONTIG} - whole contigs held in memory, used when the queries stay on the contigs that
+ *     fit into the memory budget,</li>
+ *     <li>{@link Strategy#PAGE} - fixed-size pages of the contigs held in memory, used for queries with good locality
+ *     on contigs that do not fit into the memory budget.</li>
+ * </ul>
+ * <p>
+ * The strategy is re-evaluated after every {@value #EPOCH} queries using the contig switching rate, the mean query
+ * length, the distance between consecutive queries, the number of querying threads, and the size of the contigs
+ * queried during the epoch. The access pattern is tracked per thread, hence the interleaved queries of concurrent
+ * callers do not hide their locality. Each cache is bounded by the memory budget and the cache of the outgoing strategy
+ * is released when the strategy is switched. Hence, the caches together exceed the budget only briefly, while the
+ * queries started before the switch complete.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class AdaptiveGenomeSequenceAccessor extends SingleFastaGenomeSequenceAccessor {
+
+    /**
+     * Number of queries between evaluations of the access pattern.
+     */
+    static final int EPOCH = 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveGenomeSequenceAccessor.class);
+
+    private static final int MIN_PAGE_SIZE = 1 << 10;
+
+    private static final int MAX_PAGE_SIZE = 1 << 16;
+
+    /**
+     * Page caching is not used if less than this number of pages fit into the memory budget.
+     */
+    private static final int MIN_PAGE_COUNT = 8;
+
+    /**
+     * Queries that are longer than this on average are served directly from the file.
+     */
+    private static final int LONG_QUERY = 1 << 16;
+
+    /**
+     * Whole contigs are cached if the fraction of queries switching the contig is below this threshold.
+     */
+    private static final double CONTIG_SWITCH_RATE = .01;
+
+    /**
+     * Pages are cached if the fraction of queries located near the previous query is above this threshold.
+     */
+    private static final double LOCALITY = .5;
+
+    private final FastaSequenceIndex index;
+
+    private final long memoryBudget;
+
+    private final int pageSize;
+
+    private final Cache<String, byte[]> contigCache;
+
+    private final Cache<PageKey, byte[]> pageCache;
+
+    // statistics of the current epoch
+    private final AtomicLong queryCount = new AtomicLong();
+    private final LongAdder contigSwitches = new LongAdder();
+    private final LongAdder nearQueries = new LongAdder();
+    private final LongAdder queriedBases = new LongAdder();
+    private final Set<String> epochContigs = ConcurrentHashMap.newKeySet();
+    private final Set<Long> epochThreads = ConcurrentHashMap.newKeySet();
+    /**
+     * The previous query of the thread, the access pattern is tracked per thread, so that the locality of the
+     * concurrent callers is not hidden by interleaving of their queries.
+     */
+    private final ThreadLocal<LastQuery> lastQuery = ThreadLocal.withInitial(LastQuery::new);
+
+    private volatile Strategy strategy = Strategy.DIRECT;
+
+    AdaptiveGenomeSequenceAccessor(Path fastaPath, Path fastaFai, Path fastaDict, boolean requireMt,
+                                   SoftMaskIndex softMaskIndex, long memoryBudget) {
+        super(fastaPath, fastaFai, fastaDict, requireMt, softMaskIndex);
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException(String.format("Memory budget must be non-negative: %d", memoryBudget));
+        }
+        this.index = fasta.getIndex();
+        this.memoryBudget = memoryBudget;
+        this.pageSize = (int) Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, memoryBudget / 64));
+        // Guava splits the maximum weight among the segments, a single segment allows to cache contigs as large as
+        // the whole budget
+        this.contigCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(memoryBudget)
+                .weigher((String contig, byte[] bases) -> bases.length)
+                .recordStats()
+                .build();
+        this.pageCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(memoryBudget)
+                .weigher((PageKey key, byte[] bases) -> bases.length)
+                .build();
+    }
+
+    /**
+     * @return the strategy that is currently used to serve the queries
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return memory budget for caching the sequences in bytes
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return number of contigs loaded into the contig cache since the accessor has been created
+     */
+    long getContigLoadCount() {
+        return contigCache.stats().loadCount();
+    }
+
+    /**
+     * @return true if the contig is held in the contig cache
+     */
+    boolean isContigCached(String chrom) {
+        return contigCache.getIfPresent(chrom) != null;
+    }
+
+    void setStrategy(Strategy strategy) {
+        if (this.strategy != strategy) {
+            LOGGER.debug("Switching access strategy from {} to {}", this.strategy, strategy);
+            this.strategy = strategy;
+            // release the memory held by the strategy that is not used anymore
+            if (strategy != Strategy.CONTIG) {
+                contigCache.invalidateAll();
+            }
+            if (strategy != Strategy.PAGE) {
+                pageCache.invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * Cache the contig and start with {@link Strategy#CONTIG} if the contig fits into the memory budget.
+     */
+    @Override
+    void preload(String chrom) {
+        if (contigLength(chrom) <= memoryBudget) {
+            setStrategy(Strategy.CONTIG);
+            get(contigCache, chrom, () -> fasta.getSequence(chrom).getBases());
+        }
+    }
+
+    @Override
+    protected byte[] fetchBases(String chrom, int start, int end) throws SAMException {
+        observe(chrom, start, end);
+
+        switch (strategy) {
+            case CONTIG:
+                if (contigLength(chrom) <= memoryBudget) {
+                    return fetchFromContigCache(chrom, start, end);
+                }
+                return super.fetchBases(chrom, start, end);
+            case PAGE:
+                return fetchFromPageCache(chrom, start, end);
+            case DIRECT:
+            default:
+                return super.fetchBases(chrom, start, end);
+        }
+    }
+
+    private byte[] fetchFromContigCache(String chrom, int start, int end) {
+        byte[] contig = get(contigCache, chrom, () -> fasta.getSequence(chrom).getBases());
+        if (strategy != Strategy.CONTIG) {
+            // the strategy has been switched while loading the contig
+            contigCache.invalidate(chrom);
+        }
+        checkBounds(chrom, start, end, contig.length);
+        byte[] bases = new byte[end - start + 1];
+        System.arraycopy(contig, start - 1, bases, 0, bases.length);
+        return bases;
+    }
+
+    private byte[] fetchFromPageCache(String chrom, int start, int end) {
+        long contigLength = contigLength(chrom);
+        checkBounds(chrom, start, end, contigLength);
+        byte[] bases = new byte[end - start + 1];
+        int begin = start - 1; // 0-based
+        int copied = 0;
+        while (copied < bases.length) {
+            int pos = begin + copied;
+            long pageIdx = pos / pageSize;
+            long pageBegin = pageIdx * pageSize;
+            long pageEnd = Math.min(pageBegin + pageSize, contigLength);
+            PageKey key = new PageKey(chrom, pageIdx);
+            byte[] page = get(pageCache, key, () -> fasta.getSubsequenceAt(chrom, pageBegin + 1, pageEnd).getBases());
+            if (strategy != Strategy.PAGE) {
+                // the strategy has been switched while loading the page
+                pageCache.invalidate(key);
+            }
+            int offset = (int) (pos - pageBegin);
+            int length = Math.min(page.length - offset, bases.length - copied);
+            System.arraycopy(page, offset, bases, copied, length);
+            copied += length;
+        }
+        return bases;
+    }
+
+    private static <K> byte[] get(Cache<K, byte[]> cache, K key, Callable<byte[]> loader) {
+        try {
+            return cache.get(key, loader);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof SAMException) {
+                throw (SAMException) e.getCause();
+            }
+            throw new SAMException(e.getCause());
+        }
+    }
+
+    private long contigLength(String chrom) {
+        if (!index.hasIndexEntry(chrom)) {
+            throw new SAMException(String.format("Unable to find entry for contig: %s", chrom));
+        }
+        return index.getIndexEntry(chrom).getSize();
+    }
+
+    private static void checkBounds(String chrom, int start, int end, long contigLength) {
+        if (start < 1 || end > contigLength || start > end + 1) {
+            throw new SAMException(String.format("Query %s:%d-%d asks for data outside of contig with length %d",
+                    chrom, start, end, contigLength));
+        }
+    }
+
+    private void observe(String chrom, int start, int end) {
+        LastQuery last = lastQuery.get();
+        if (!chrom.equals(last.contig)) {
+            contigSwitches.increment();
+        } else if (Math.abs(start - last.end) < (long) pageSize * pageCount()) {
+            nearQueries.increment();
+        }
+        last.contig = chrom;
+        last.end = end;
+        queriedBases.add(end - start + 1);
+        epochContigs.add(chrom);
+        epochThreads.add(Thread.currentThread().getId());
+
+        if (queryCount.incrementAndGet() % EPOCH == 0) {
+            evaluate(chrom);
+        }
+    }
+
+    private long pageCount() {
+        return memoryBudget / pageSize;
+    }
+
+    private synchronized void evaluate(String currentContig) {
+        double n = EPOCH;
+        double switchRate = contigSwitches.sumThenReset() / n;
+        double locality = nearQueries.sumThenReset() / n;
+        double meanLength = queriedBases.sumThenReset() / n;
+        long contigBytes = 0;
+        for (String contig : epochContigs) {
+            contigBytes += index.hasIndexEntry(contig) ? index.getIndexEntry(contig).getSize() : 0;
+        }
+        int threads = epochThreads.size();
+        epochContigs.clear();
+        epochThreads.clear();
+
+        Strategy next;
+        if (meanLength >= LONG_QUERY) {
+            // the caches do not help with long queries
+            next = Strategy.DIRECT;
+        } else if (contigBytes <= memoryBudget) {
+            // all contigs queried during the epoch fit into memory
+            next = Strategy.CONTIG;
+        } else if (switchRate < CONTIG_SWITCH_RATE && threads == 1
+                && index.hasIndexEntry(currentContig) && index.getIndexEntry(currentContig).getSize() <= memoryBudget) {
+            // a single caller walking through the contigs, e.g. a sorted VCF file
+            next = Strategy.CONTIG;
+        } else if (locality >= LOCALITY && pageCount() >= MIN_PAGE_COUNT) {
+            next = Strategy.PAGE;
+        } else {
+            next = Strategy.DIRECT;
+        }
+        LOGGER.trace("Epoch stats - contig switch rate: {}, locality: {}, mean length: {}, threads: {}, contig bytes: {}",
+                switchRate, locality, meanLength, threads, contigBytes);
+        setStrategy(next);
+    }
+
+    @Override
+    public void close() throws IOException {
+        contigCache.invalidateAll();
+        pageCache.invalidateAll();
+        super.close();
+    }
+
+    private static final class LastQuery {
+
+        private String contig;
+        private int end;
+    }
+
+    public enum Strategy {
+        /**
+         * Positional reads from the fasta file.
+         */
+        DIRECT,
+        /**
+         * Whole contigs cached in memory.
+         */
+        CONTIG,
+        /**
+         * Pages of the contigs cached in memory.
+         */
+        PAGE
+    }
+
+    private static final class PageKey {
+
+        private final String contig;
+        private final long page;
+
+        private PageKey(String contig, long page) {
+            this.contig = contig;
+            this.page = page;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PageKey pageKey = (PageKey) o;
+            return page == pageKey.page && contig.equals(pageKey.contig);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(contig, page);
+        }
+    }
+}
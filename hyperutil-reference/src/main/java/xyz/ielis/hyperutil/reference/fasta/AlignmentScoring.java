@@ -0,0 +1,65 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+/**
+ * Scores used by {@link ReferenceAligner}. A gap of length <code>k</code> costs <code>gapOpen + k * gapExtend</code>.
+ * All values are positive, the penalties are subtracted from the alignment score.
+ */
+public final class AlignmentScoring {
+
+    private static final AlignmentScoring DEFAULTS = new AlignmentScoring(1, 4, 6, 1);
+
+    private final int match;
+
+    private final int mismatch;
+
+    private final int gapOpen;
+
+    private final int gapExtend;
+
+    private AlignmentScoring(int match, int mismatch, int gapOpen, int gapExtend) {
+        this.match = match;
+        this.mismatch = mismatch;
+        this.gapOpen = gapOpen;
+        this.gapExtend = gapExtend;
+    }
+
+    /**
+     * @return scoring used by BWA-MEM: match 1, mismatch 4, gap open 6, gap extend 1
+     */
+    public static AlignmentScoring defaults() {
+        return DEFAULTS;
+    }
+
+    public static AlignmentScoring of(int match, int mismatch, int gapOpen, int gapExtend) {
+        if (match < 1 || mismatch < 0 || gapOpen < 0 || gapExtend < 1) {
+            throw new IllegalArgumentException(String.format("Invalid scoring: match %d, mismatch %d, gap open %d, gap extend %d",
+                    match, mismatch, gapOpen, gapExtend));
+        }
+        return new AlignmentScoring(match, mismatch, gapOpen, gapExtend);
+    }
+
+    public int getMatch() {
+        return match;
+    }
+
+    public int getMismatch() {
+        return mismatch;
+    }
+
+    public int getGapOpen() {
+        return gapOpen;
+    }
+
+    public int getGapExtend() {
+        return gapExtend;
+    }
+
+    @Override
+    public String toString() {
+        return "AlignmentScoring{" +
+                "match=" + match +
+                ", mismatch=" + mismatch +
+                ", gapOpen=" + gapOpen +
+                ", gapExtend=" + gapExtend + "}";
+    }
+}
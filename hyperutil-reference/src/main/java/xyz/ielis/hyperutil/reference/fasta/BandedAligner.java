@@ -0,0 +1,240 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import java.util.Arrays;
+
+/**
+ * Banded local alignment with affine gap penalties (Smith-Waterman-Gotoh). The band covers the diagonals expected when
+ * the query lies within the reference window, widened by the band width on both sides. Hence, the band width is the
+ * maximum net length of indels that the alignment can contain.
+ * <p>
+ * The score rows, the traceback matrix and the operation buffer are kept between the alignments and grow only when a
+ * larger problem arrives. The instance is not thread-safe, use one instance per thread.
+ * </p>
+ */
+final class BandedAligner {
+
+    private static final int NEG = Integer.MIN_VALUE / 2;
+
+    // traceback - source of the H cell in the lowest two bits
+    private static final byte FROM_ZERO = 0, FROM_DIAG = 1, FROM_E = 2, FROM_F = 3;
+    private static final byte E_EXTENDED = 4, F_EXTENDED = 8;
+
+    private static final byte OP_MATCH = 'M', OP_INSERTION = 'I', OP_DELETION = 'D';
+
+    private final int match, mismatch, open, extend;
+
+    private final int bandWidth;
+
+    private byte[] query = new byte[64];
+
+    private int queryLength;
+
+    private int[] hPrevious = new int[0], hCurrent = new int[0], f = new int[0];
+
+    private byte[] trace = new byte[0];
+
+    private byte[] ops = new byte[0];
+
+    private final StringBuilder cigar = new StringBuilder();
+
+    // results of the last alignment
+    private int score, queryBegin, queryEnd, referenceBegin, referenceEnd, editDistance;
+
+    BandedAligner(AlignmentScoring scoring, int bandWidth) {
+        this.match = scoring.getMatch();
+        this.mismatch = scoring.getMismatch();
+        this.open = scoring.getGapOpen() + scoring.getGapExtend();
+        this.extend = scoring.getGapExtend();
+        this.bandWidth = bandWidth;
+    }
+
+    /**
+     * Set query to be aligned by the subsequent calls of {@link #align(byte[], int, int)}. The bases are stored in
+     * upper case.
+     */
+    void setQuery(CharSequence sequence) {
+        queryLength = sequence.length();
+        if (query.length < queryLength) {
+            query = new byte[Math.max(queryLength, 2 * query.length)];
+        }
+        for (int i = 0; i < queryLength; i++) {
+            query[i] = (byte) (sequence.charAt(i) & 0xDF);
+        }
+    }
+
+    /**
+     * Align the query to the reference stored in <code>reference[offset, offset + length)</code>.
+     *
+     * @return <code>true</code> if an alignment with positive score exists
+     */
+    boolean align(byte[] reference, int offset, int length) {
+        int m = queryLength, n = length;
+        score = 0;
+        if (m == 0 || n == 0) {
+            return false;
+        }
+        int diagonalLow = Math.min(0, n - m) - bandWidth, diagonalHigh = Math.max(0, n - m) + bandWidth;
+        int band = diagonalHigh - diagonalLow + 1;
+        ensureCapacity(m, n, band);
+        Arrays.fill(hPrevious, 0, n + 1, 0);
+        Arrays.fill(hCurrent, 0, n + 1, 0);
+        Arrays.fill(f, 0, n + 1, NEG);
+
+        int bestI = 0, bestJ = 0;
+        for (int i = 1; i <= m; i++) {
+            int lo = Math.max(1, i + diagonalLow), hi = Math.min(n, i + diagonalHigh);
+            int rowStart = (i - 1) * band - i - diagonalLow;
+            byte q = query[i - 1];
+            int e = NEG, hLeft = 0;
+            for (int j = lo; j <= hi; j++) {
+                int r = reference[offset + j - 1] & 0xDF;
+                int diagonal = hPrevious[j - 1] + (q == r && r != 'N' ? match : -mismatch);
+
+                byte t;
+                int eOpen = hLeft - open, eExtend = e - extend;
+                if (eExtend > eOpen) {
+                    e = eExtend;
+                    t = E_EXTENDED;
+                } else {
+                    e = eOpen;
+                    t = 0;
+                }
+                int fOpen = hPrevious[j] - open, fExtend = f[j] - extend;
+                if (fExtend > fOpen) {
+                    f[j] = fExtend;
+                    t |= F_EXTENDED;
+                } else {
+                    f[j] = fOpen;
+                }
+
+                int h = 0;
+                byte source = FROM_ZERO;
+                if (diagonal > h) {
+                    h = diagonal;
+                    source = FROM_DIAG;
+                }
+                if (e > h) {
+                    h = e;
+                    source = FROM_E;
+                }
+                if (f[j] > h) {
+                    h = f[j];
+                    source = FROM_F;
+                }
+                hCurrent[j] = h;
+                trace[rowStart + j] = (byte) (t | source);
+                hLeft = h;
+                if (h > score) {
+                    score = h;
+                    bestI = i;
+                    bestJ = j;
+                }
+            }
+            int[] tmp = hPrevious;
+            hPrevious = hCurrent;
+            hCurrent = tmp;
+        }
+        if (score == 0) {
+            return false;
+        }
+        traceback(reference, offset, band, diagonalLow, bestI, bestJ);
+        return true;
+    }
+
+    private void traceback(byte[] reference, int offset, int band, int diagonalLow, int bestI, int bestJ) {
+        int i = bestI, j = bestJ, opCount = 0;
+        byte state = FROM_DIAG;
+        editDistance = 0;
+        while (i > 0 && j > 0) {
+            byte t = trace[(i - 1) * band - i - diagonalLow + j];
+            if (state == FROM_DIAG) {
+                int source = t & 3;
+                if (source == FROM_ZERO) {
+                    break;
+                } else if (source == FROM_DIAG) {
+                    ops[opCount++] = OP_MATCH;
+                    if (query[i - 1] != (reference[offset + j - 1] & 0xDF) || query[i - 1] == 'N') {
+                        editDistance++;
+                    }
+                    i--;
+                    j--;
+                } else {
+                    state = (byte) source;
+                }
+            } else if (state == FROM_E) {
+                ops[opCount++] = OP_DELETION;
+                editDistance++;
+                state = (t & E_EXTENDED) != 0 ? FROM_E : FROM_DIAG;
+                j--;
+            } else {
+                ops[opCount++] = OP_INSERTION;
+                editDistance++;
+                state = (t & F_EXTENDED) != 0 ? FROM_F : FROM_DIAG;
+                i--;
+            }
+        }
+        queryBegin = i;
+        queryEnd = bestI;
+        referenceBegin = j;
+        referenceEnd = bestJ;
+
+        // the operations are stored from the end of the alignment
+        cigar.setLength(0);
+        for (int k = opCount - 1; k >= 0; ) {
+            byte op = ops[k];
+            int run = 0;
+            while (k >= 0 && ops[k] == op) {
+                run++;
+                k--;
+            }
+            cigar.append(run).append((char) op);
+        }
+    }
+
+    private void ensureCapacity(int m, int n, int band) {
+        if (hPrevious.length < n + 1) {
+            int size = Math.max(n + 1, 2 * hPrevious.length);
+            hPrevious = new int[size];
+            hCurrent = new int[size];
+            f = new int[size];
+        }
+        long cells = (long) m * band;
+        if (cells > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(String.format("Alignment of %d bases with band of %d diagonals is too large", m, band));
+        }
+        if (trace.length < cells) {
+            trace = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(cells, 2L * trace.length))];
+        }
+        if (ops.length < m + n) {
+            ops = new byte[Math.max(m + n, 2 * ops.length)];
+        }
+    }
+
+    int getScore() {
+        return score;
+    }
+
+    int getQueryBegin() {
+        return queryBegin;
+    }
+
+    int getQueryEnd() {
+        return queryEnd;
+    }
+
+    int getReferenceBegin() {
+        return referenceBegin;
+    }
+
+    int getReferenceEnd() {
+        return referenceEnd;
+    }
+
+    int getEditDistance() {
+        return editDistance;
+    }
+
+    String getCigar() {
+        return cigar.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the first three columns of a BED file into {@link GenomeInterval}s on {@link Strand#FWD}. Comment, header, and
+ * empty lines are skipped, as well as the regions on contigs that are not present in the reference dictionary.
+ */
+class BedReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BedReader.class);
+
+    private BedReader() {
+        // private no-op
+    }
+
+    /**
+     * @param bedPath path to BED file
+     * @param rd      reference dictionary used to resolve the contig names
+     * @return regions of the BED file in the order of the file
+     * @throws IOException if the file cannot be read or if a line is not a valid BED line
+     */
+    static List<GenomeInterval> read(Path bedPath, ReferenceDictionary rd) throws IOException {
+        List<GenomeInterval> regions = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(bedPath)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#") || line.startsWith("track") || line.startsWith("browser")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", 4);
+                if (fields.length < 3) {
+                    throw new IOException(String.format("Invalid BED line %d in `%s`: %s", lineNumber, bedPath, line));
+                }
+                Integer contigId = rd.getContigNameToID().get(fields[0]);
+                if (contigId == null) {
+                    LOGGER.warn("Skipping region on unknown contig `{}` at line {}", fields[0], lineNumber);
+                    continue;
+                }
+                int begin, end;
+                try {
+                    begin = Integer.parseInt(fields[1].trim());
+                    end = Integer.parseInt(fields[2].trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException(String.format("Invalid BED line %d in `%s`: %s", lineNumber, bedPath, line), e);
+                }
+                if (begin < 0 || end < begin) {
+                    throw new IOException(String.format("Invalid BED region at line %d in `%s`: %s", lineNumber, bedPath, line));
+                }
+                regions.add(new GenomeInterval(rd, Strand.FWD, contigId, begin, end));
+            }
+        }
+        return regions;
+    }
+}
@@ -0,0 +1,235 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import htsjdk.samtools.SAMException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Forward-only cursor for walking the reference in coordinate order, e.g. when processing a sorted VCF or BAM file or
+ * scanning BED regions.
+ * <p>
+ * The bases are held in a ring buffer of fixed capacity. The buffer is filled by large sequential reads ahead of the
+ * queried positions, each base is read from the accessor at most once. The bases before the watermark are released.
+ * The watermark is moved forward by {@link #release(int)} or automatically, when the buffer needs room for the bases
+ * of the next query. Hence, the memory footprint does not depend on the contig length.
+ * </p>
+ * <p>
+ * The queries must not start before the watermark. A query starting more than a chunk after the buffered bases skips
+ * the bases in between and moves the watermark to the query start. Querying a different contig resets the cursor. The
+ * positions are 0-based and the contigs are identified by the IDs of the accessor's {@link ReferenceDictionary}.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ */
+public class GenomeCursor {
+
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    static final int DEFAULT_CAPACITY = 1 << 22;
+
+    private final GenomeSequenceAccessor accessor;
+
+    private final ReferenceDictionary referenceDictionary;
+
+    private final int chunkSize;
+
+    private final byte[] ring;
+
+    private final int mask;
+
+    private int contigId = -1;
+
+    private int contigLength;
+
+    /**
+     * The buffer holds the bases <code>[low, high)</code> of the contig.
+     */
+    private int low, high;
+
+    private int watermark;
+
+    private long readBases;
+
+    private GenomeCursor(GenomeSequenceAccessor accessor, int chunkSize, int capacity) {
+        this.accessor = accessor;
+        this.referenceDictionary = accessor.getReferenceDictionary();
+        this.chunkSize = chunkSize;
+        this.ring = new byte[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public static GenomeCursor of(GenomeSequenceAccessor accessor) {
+        return of(accessor, DEFAULT_CHUNK_SIZE, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param accessor  accessor to read the bases from
+     * @param chunkSize number of bases read ahead at once
+     * @param capacity  maximum number of bases held by the cursor, rounded up to a power of two, must not be smaller
+     *                  than the chunk size
+     * @return the cursor
+     */
+    public static GenomeCursor of(GenomeSequenceAccessor accessor, int chunkSize, int capacity) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException(String.format("Chunk size must be positive: %d", chunkSize));
+        }
+        if (capacity < chunkSize || capacity > 1 << 30) {
+            throw new IllegalArgumentException(String.format("Capacity %d must be in range [%d, %d]", capacity, chunkSize, 1 << 30));
+        }
+        int powerOfTwo = Integer.highestOneBit(capacity);
+        return new GenomeCursor(accessor, chunkSize, powerOfTwo == capacity ? capacity : powerOfTwo << 1);
+    }
+
+    /**
+     * @return maximum number of bases held by the cursor
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * @return ID of the current contig or <code>-1</code> if the cursor has not been used yet
+     */
+    public int getContigId() {
+        return contigId;
+    }
+
+    /**
+     * @return 0-based position of the first base that can be queried on the current contig
+     */
+    public int getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * @return number of bases held by the cursor
+     */
+    public int getBufferedBases() {
+        return high - low;
+    }
+
+    /**
+     * @return number of bases read from the accessor since the cursor has been created
+     */
+    public long getReadBases() {
+        return readBases;
+    }
+
+    /**
+     * @param contigId contig ID
+     * @param position 0-based position
+     * @return base at the position
+     * @throws SAMException             if the contig is unknown or the position is outside of the contig
+     * @throws IllegalArgumentException if the position is before the watermark
+     */
+    public byte getBase(int contigId, int position) {
+        fill(contigId, position, position + 1);
+        return ring[position & mask];
+    }
+
+    /**
+     * @param contigId contig ID
+     * @param begin    0-based begin position
+     * @param end      0-based end position, exclusive
+     * @return sequence of the region
+     * @throws SAMException             if the contig is unknown or the region is outside of the contig
+     * @throws IllegalArgumentException if the region starts before the watermark or is longer than the capacity
+     */
+    public String getSequence(int contigId, int begin, int end) {
+        byte[] bases = new byte[Math.max(0, end - begin)];
+        copy(contigId, begin, end, bases, 0);
+        return new String(bases, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Copy bases of the region into the target array.
+     *
+     * @param contigId contig ID
+     * @param begin    0-based begin position
+     * @param end      0-based end position, exclusive
+     * @param target   array to copy the bases to
+     * @param offset   index of the target array where the first base is written to
+     * @throws SAMException             if the contig is unknown or the region is outside of the contig
+     * @throws IllegalArgumentException if the region starts before the watermark or is longer than the capacity
+     */
+    public void copy(int contigId, int begin, int end, byte[] target, int offset) {
+        fill(contigId, begin, end);
+        int length = end - begin;
+        int from = begin & mask;
+        int first = Math.min(length, ring.length - from);
+        System.arraycopy(ring, from, target, offset, first);
+        System.arraycopy(ring, 0, target, offset + first, length - first);
+    }
+
+    /**
+     * Move the watermark forward, the bases before the position are released and cannot be queried anymore. Moving the
+     * watermark backward has no effect.
+     *
+     * @param position 0-based position on the current contig
+     */
+    public void release(int position) {
+        if (position > watermark) {
+            watermark = position;
+            low = Math.max(low, Math.min(position, high));
+        }
+    }
+
+    /**
+     * Make sure the bases <code>[begin, end)</code> of the contig are in the buffer.
+     */
+    private void fill(int contigId, int begin, int end) {
+        if (contigId != this.contigId) {
+            Integer length = referenceDictionary.getContigIDToLength().get(contigId);
+            if (length == null) {
+                throw new SAMException(String.format("Unknown contig ID %d", contigId));
+            }
+            this.contigId = contigId;
+            this.contigLength = length;
+            this.low = this.high = this.watermark = 0;
+        }
+        if (begin < 0 || begin > end || end > contigLength) {
+            throw new SAMException(String.format("Region [%d, %d) is outside of contig %d with length %d",
+                    begin, end, contigId, contigLength));
+        }
+        if (begin < watermark) {
+            throw new IllegalArgumentException(String.format("Position %d of contig %d has already been released, watermark is at %d",
+                    begin, contigId, watermark));
+        }
+        if (end - begin > ring.length) {
+            throw new IllegalArgumentException(String.format("Region [%d, %d) is longer than the cursor capacity %d",
+                    begin, end, ring.length));
+        }
+        if (end <= high) {
+            return;
+        }
+
+        if (begin - high >= chunkSize) {
+            // skip the bases between the buffer end and the region instead of reading them
+            low = high = watermark = begin;
+        }
+        // read ahead, but do not evict the bases of the region
+        int target = (int) Math.min(Math.min(contigLength, (long) begin + ring.length), Math.max(end, (long) high + chunkSize));
+        if (target - low > ring.length) {
+            // release the oldest bases to make room for the new ones
+            low = target - ring.length;
+            watermark = Math.max(watermark, low);
+        }
+        read(target);
+    }
+
+    private void read(int target) {
+        SequenceBatch batch = accessor.fetchSequences(new int[]{contigId}, new int[]{high}, new int[]{target}, null);
+        if (!batch.isOk(0)) {
+            throw new SAMException(String.format("Unable to read [%d, %d) of contig %d", high, target, contigId));
+        }
+        int length = target - high;
+        int from = high & mask;
+        int first = Math.min(length, ring.length - from);
+        System.arraycopy(batch.getBases(), batch.getOffsets()[0], ring, from, first);
+        System.arraycopy(batch.getBases(), batch.getOffsets()[0] + first, ring, 0, length - first);
+        high = target;
+        readBases += length;
+    }
+}
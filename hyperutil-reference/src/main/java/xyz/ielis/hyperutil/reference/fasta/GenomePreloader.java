@@ -0,0 +1,183 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms up an accessor before the first query arrives. The file pages backing the requested contigs and regions are
+ * read in parallel, hence they are in the page cache of the operating system, and then the contigs are loaded into
+ * the memory of the accessor in parallel, if the accessor holds the contigs in memory.
+ * <p>
+ * {@link SingleChromosomeGenomeSequenceAccessor} holds a single contig, hence only the last requested contig is loaded
+ * into its memory, while the pages of the other contigs are only read into the page cache.
+ * </p>
+ * <p>
+ * The byte offsets of the regions are calculated from the fasta index, and the file is read in chunks of
+ * {@value #CHUNK_SIZE} bytes.
+ * </p>
+ */
+class GenomePreloader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GenomePreloader.class);
+
+    private static final int CHUNK_SIZE = 1 << 23;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private GenomePreloader() {
+        // private no-op
+    }
+
+    /**
+     * Start preloading of the contigs and regions.
+     *
+     * @param accessor  accessor to warm up
+     * @param fastaPath path to the fasta file of the accessor
+     * @param fastaFai  path to the fasta index
+     * @param contigs   names of the contigs to preload
+     * @param regions   regions to preload
+     * @param threads   number of threads reading the file
+     * @return future that completes when the preloading is done
+     */
+    static CompletableFuture<Void> preload(SingleFastaGenomeSequenceAccessor accessor, Path fastaPath, Path fastaFai,
+                                           Collection<String> contigs, Collection<GenomeInterval> regions, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format("Number of threads must be positive: %d", threads));
+        }
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        FastaSequenceIndex index = new FastaSequenceIndex(fastaFai);
+
+        // names of the contigs as they are used in the fasta file
+        List<String> fastaContigs = new ArrayList<>(contigs.size());
+        List<long[]> byteRanges = new ArrayList<>();
+        for (String contig : contigs) {
+            Integer contigId = rd.getContigNameToID().get(contig);
+            if (contigId == null) {
+                throw new IllegalArgumentException(String.format("Unable to preload unknown contig `%s`", contig));
+            }
+            String name = rd.getContigIDToName().get(contigId);
+            fastaContigs.add(name);
+            byteRanges.add(byteRange(index, name, 0, rd.getContigIDToLength().get(contigId)));
+        }
+        for (GenomeInterval region : regions) {
+            String name = rd.getContigIDToName().get(region.getChr());
+            byteRanges.add(byteRange(index, name, region.getBeginPos(), region.getEndPos()));
+        }
+        List<long[]> chunks = makeChunks(byteRanges);
+        // loading more contigs would only replace the contig held by the accessor
+        List<String> loadedContigs = accessor instanceof SingleChromosomeGenomeSequenceAccessor && !fastaContigs.isEmpty()
+                ? List.of(fastaContigs.get(fastaContigs.size() - 1))
+                : fastaContigs;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "hyperutil-preload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(fastaPath, StandardOpenOption.READ);
+        } catch (IOException e) {
+            executor.shutdown();
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Void> touched = CompletableFuture.allOf(chunks.stream()
+                .map(chunk -> CompletableFuture.runAsync(() -> touch(channel, chunk[0], chunk[1]), executor))
+                .toArray(CompletableFuture[]::new));
+
+        return touched
+                .thenCompose(v -> CompletableFuture.allOf(loadedContigs.stream()
+                        .map(contig -> CompletableFuture.runAsync(() -> accessor.preload(contig), executor))
+                        .toArray(CompletableFuture[]::new)))
+                .whenComplete((v, t) -> {
+                    executor.shutdown();
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        LOGGER.warn("Error closing fasta file `{}`: {}", fastaPath, e.getMessage());
+                    }
+                    if (t == null) {
+                        long bytes = chunks.stream().mapToLong(chunk -> chunk[1] - chunk[0]).sum();
+                        LOGGER.info("Preloaded {} contigs and {} regions ({} bytes) in {} ms", fastaContigs.size(),
+                                regions.size(), bytes, (System.nanoTime() - start) / 1_000_000);
+                    } else {
+                        LOGGER.warn("Preloading failed: {}", t.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * @return begin and end offset of the region bases in the fasta file
+     */
+    private static long[] byteRange(FastaSequenceIndex index, String contig, int begin, int end) {
+        if (!index.hasIndexEntry(contig)) {
+            throw new IllegalArgumentException(String.format("Contig `%s` is not present in the fasta index", contig));
+        }
+        FastaSequenceIndexEntry entry = index.getIndexEntry(contig);
+        return new long[]{offset(entry, begin), offset(entry, Math.min(end, entry.getSize()))};
+    }
+
+    private static long offset(FastaSequenceIndexEntry entry, long pos) {
+        return entry.getLocation() + pos / entry.getBasesPerLine() * entry.getBytesPerLine() + pos % entry.getBasesPerLine();
+    }
+
+    /**
+     * Merge the overlapping byte ranges and split them into chunks of at most {@link #CHUNK_SIZE} bytes.
+     */
+    private static List<long[]> makeChunks(List<long[]> byteRanges) {
+        byteRanges.sort(Comparator.comparingLong(range -> range[0]));
+        List<long[]> chunks = new ArrayList<>();
+        long begin = -1, end = -1;
+        for (long[] range : byteRanges) {
+            if (range[0] > end) {
+                split(begin, end, chunks);
+                begin = range[0];
+            }
+            end = Math.max(end, range[1]);
+        }
+        split(begin, end, chunks);
+        return chunks;
+    }
+
+    private static void split(long begin, long end, List<long[]> chunks) {
+        for (long pos = begin; pos < end; pos += CHUNK_SIZE) {
+            chunks.add(new long[]{pos, Math.min(pos + CHUNK_SIZE, end)});
+        }
+    }
+
+    private static void touch(FileChannel channel, long begin, long end) {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long pos = begin;
+        try {
+            while (pos < end) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - pos));
+                int read = channel.read(buffer, pos);
+                if (read < 0) {
+                    break;
+                }
+                pos += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
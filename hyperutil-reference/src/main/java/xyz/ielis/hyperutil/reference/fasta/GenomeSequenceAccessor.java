@@ -2,9 +2,12 @@ package xyz.ielis.hyperutil.reference.fasta;
 
 import de.charite.compbio.jannovar.data.ReferenceDictionary;
 import de.charite.compbio.jannovar.reference.GenomeInterval;
+import htsjdk.samtools.SAMException;
 
 import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface GenomeSequenceAccessor extends Closeable {
 
@@ -14,8 +17,74 @@ public interface GenomeSequenceAccessor extends Closeable {
 
     Optional<SequenceInterval> fetchSequence(GenomeInterval interval);
 
+    /**
+     * Fetch sequences of many intervals at once. The intervals are given in columns of primitive arrays and the result
+     * is returned in columnar {@link SequenceBatch}, hence no objects are created per interval by the accessors that
+     * override this method.
+     * <p>
+     * The coordinates are 0-based, half-open and on the forward strand, as in BED files. Sequences of the rows on the
+     * reverse strand are reverse complemented. Rows that cannot be served get an empty sequence and a failure status.
+     * </p>
+     *
+     * @param contigIds     contig IDs as used in the {@link ReferenceDictionary}
+     * @param begins        0-based begin positions on the forward strand
+     * @param ends          0-based end positions on the forward strand, exclusive
+     * @param reverseStrand <code>true</code> for the rows on the reverse strand, <code>null</code> if all rows are on the
+     *                      forward strand
+     * @return sequences of the rows
+     * @throws IllegalArgumentException if the arrays do not have the same length
+     */
+    default SequenceBatch fetchSequences(int[] contigIds, int[] begins, int[] ends, boolean[] reverseStrand) {
+        SequenceBatch.Builder batch = SequenceBatch.newBuilder(contigIds, begins, ends, reverseStrand);
+        ReferenceDictionary rd = getReferenceDictionary();
+        for (int i = 0; i < contigIds.length; i++) {
+            String name = rd.getContigIDToName().get(contigIds[i]);
+            if (name == null) {
+                batch.fail(SequenceBatch.UNKNOWN_CONTIG);
+            } else if (begins[i] < 0 || begins[i] > ends[i] || ends[i] > rd.getContigIDToLength().get(contigIds[i])) {
+                batch.fail(SequenceBatch.OUT_OF_BOUNDS);
+            } else if (begins[i] == ends[i]) {
+                batch.commit(0);
+            } else {
+                try {
+                    int position = batch.position();
+                    batch.append(fetchSequence(name, begins[i] + 1, ends[i]).getBytes(StandardCharsets.US_ASCII));
+                    if (reverseStrand != null && reverseStrand[i]) {
+                        ReverseComplement.reverseComplement(batch.buffer(), position, batch.position());
+                    }
+                } catch (SAMException e) {
+                    batch.fail(SequenceBatch.ERROR);
+                }
+            }
+        }
+        return batch.build();
+    }
+
+    /**
+     * Get the future that completes when the accessor finished preloading of the contigs and regions requested on
+     * {@link GenomeSequenceAccessorBuilder}. The accessor can be queried before the future completes, the queries are
+     * just slower.
+     *
+     * @return future that completes when the accessor is warmed up, completed future by default
+     */
+    default CompletableFuture<Void> getReadiness() {
+        return CompletableFuture.completedFuture(null);
+    }
+
     enum Type {
         SINGLE_FASTA,
-        SINGLE_CHROMOSOME
+        SINGLE_CHROMOSOME,
+        /**
+         * Switches between direct reads, contig caching and page caching based on the observed queries.
+         *
+         * @see AdaptiveGenomeSequenceAccessor
+         */
+        AUTO,
+        /**
+         * Holds the padded target regions in memory, the other queries are read from the file or rejected.
+         *
+         * @see TargetedGenomeSequenceAccessor
+         */
+        TARGETED
     }
 }
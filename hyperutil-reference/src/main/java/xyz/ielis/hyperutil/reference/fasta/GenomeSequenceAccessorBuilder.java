@@ -1,9 +1,17 @@
 package xyz.ielis.hyperutil.reference.fasta;
 
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import htsjdk.samtools.reference.FastaSequenceIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class GenomeSequenceAccessorBuilder {
 
@@ -19,6 +27,28 @@ public class GenomeSequenceAccessorBuilder {
 
     private boolean requireMt = true;
 
+    private boolean uppercase = false;
+
+    private Path softMaskIndexPath;
+
+    private long memoryBudget = 256L << 20;
+
+    private List<String> preloadContigs = List.of();
+
+    private Path preloadRegionsPath;
+
+    private int preloadThreads = Runtime.getRuntime().availableProcessors();
+
+    private boolean preloadAsync = false;
+
+    private boolean shared = false;
+
+    private Path targetRegionsPath;
+
+    private int targetPadding = 0;
+
+    private TargetedGenomeSequenceAccessor.OffTargetPolicy offTargetPolicy = TargetedGenomeSequenceAccessor.OffTargetPolicy.FALLBACK;
+
     private GenomeSequenceAccessorBuilder() {
         // private no-op
     }
@@ -27,6 +57,30 @@ public class GenomeSequenceAccessorBuilder {
         return new GenomeSequenceAccessorBuilder();
     }
 
+    /**
+     * @return new builder with the same settings as this builder
+     */
+    GenomeSequenceAccessorBuilder copy() {
+        GenomeSequenceAccessorBuilder copy = new GenomeSequenceAccessorBuilder();
+        copy.fastaPath = fastaPath;
+        copy.fastaFaiPath = fastaFaiPath;
+        copy.fastaDictPath = fastaDictPath;
+        copy.type = type;
+        copy.requireMt = requireMt;
+        copy.uppercase = uppercase;
+        copy.softMaskIndexPath = softMaskIndexPath;
+        copy.memoryBudget = memoryBudget;
+        copy.preloadContigs = preloadContigs;
+        copy.preloadRegionsPath = preloadRegionsPath;
+        copy.preloadThreads = preloadThreads;
+        copy.preloadAsync = preloadAsync;
+        copy.shared = shared;
+        copy.targetRegionsPath = targetRegionsPath;
+        copy.targetPadding = targetPadding;
+        copy.offTargetPolicy = offTargetPolicy;
+        return copy;
+    }
+
     /**
      * Set path to fasta file (REQUIRED).
      *
@@ -80,6 +134,141 @@ public class GenomeSequenceAccessorBuilder {
         return this;
     }
 
+    /**
+     * If set to true, then the soft-masked (lowercase) bases are returned in upper case. The accessor uses
+     * {@link SoftMaskIndex} to find the soft-masked bases, hence the bases outside of the masked runs are not visited.
+     *
+     * @param uppercase true if the accessor should return upper case sequences, false by default
+     * @return builder
+     */
+    public GenomeSequenceAccessorBuilder setUppercase(boolean uppercase) {
+        this.uppercase = uppercase;
+        return this;
+    }
+
+    /**
+     * Path to soft-mask index, `some.fa.mask` is tried for `some.fa` if explicit path is not provided. The index is
+     * built and stored at the path if it does not exist. The index is only used if upper case sequences are requested.
+     *
+     * @param softMaskIndexPath path to soft-mask index
+     * @return builder
+     * @see #setUppercase(boolean)
+     */
+    public GenomeSequenceAccessorBuilder setSoftMaskIndexPath(Path softMaskIndexPath) {
+        this.softMaskIndexPath = softMaskIndexPath;
+        return this;
+    }
+
+    /**
+     * Maximum number of bytes the {@link GenomeSequenceAccessor.Type#AUTO} accessor uses for caching the sequences.
+     *
+     * @param memoryBudget memory budget in bytes, 256 MiB by default
+     * @return builder
+     */
+    public GenomeSequenceAccessorBuilder setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    /**
+     * Contigs to preload before the accessor is returned. The file pages of the contigs are read, hence they are in
+     * the page cache, and the accessors holding contigs in memory load the contigs. Note that
+     * {@link GenomeSequenceAccessor.Type#SINGLE_CHROMOSOME} accessor holds only the last preloaded contig.
+     *
+     * @param preloadContigs names of the contigs to preload, no contigs by default
+     * @return builder
+     */
+    public GenomeSequenceAccessorBuilder setPreloadContigs(Collection<String> preloadContigs) {
+        this.preloadContigs = List.copyOf(preloadContigs);
+        return this;
+    }
+
+    /**
+     * Path to BED file with regions whose file pages are read before the accessor is returned.
+     *
+     * @param preloadRegionsPath path to BED file
+     * @return builder
+     */
+    public GenomeSequenceAccessorBuilder setPreloadRegionsPath(Path preloadRegionsPath) {
+        this.preloadRegionsPath = preloadRegionsPath;
+        return this;
+    }
+
+    /**
+     * @param preloadThreads number of threads used to preload the contigs and regions, number of available processors
+     *                       by default
+     * @return builder
+     */
+    public GenomeSequenceAccessorBuilder setPreloadThreads(int preloadThreads) {
+        this.preloadThreads = preloadThreads;
+        return this;
+    }
+
+    /**
+     * If set to true, then {@link #build()} returns right after the accessor is created and the preloading runs in
+     * background. Use {@link GenomeSequenceAccessor#getReadiness()} to find out when the preloading is done.
+     *
+     * @param preloadAsync true if the preloading should run in background, false by default
+     * @return builder
+     */
+    public GenomeSequenceAccessorBuilder setPreloadAsync(boolean preloadAsync) {
+        this.preloadAsync = preloadAsync;
+        return this;
+    }
+
+    /**
+     * If set to true, then the accessor is shared with all other shared accessors built for the same fasta, index and
+     * dictionary files, the same type, and the same options. The returned handle shares the file handles, the caches
+     * and the {@link de.charite.compbio.jannovar.data.ReferenceDictionary} of the underlying accessor. Closing the handle
+     * releases the underlying accessor, the accessor is closed when the last handle is closed.
+     * <p>
+     * The underlying accessor is preloaded using the options of the builder that created it, the preloading options of
+     * the other builders are ignored.
+     *
+     * @param shared true if the accessor should be shared, false by default
+     * @return builder
+     */
+    public GenomeSequenceAccessorBuilder setShared(boolean shared) {
+        this.shared = shared;
+        return this;
+    }
+
+    /**
+     * Path to BED file with target regions held in memory by the {@link GenomeSequenceAccessor.Type#TARGETED} accessor
+     * (REQUIRED for the type).
+     *
+     * @param targetRegionsPath path to BED file
+     * @return builder
+     */
+    public GenomeSequenceAccessorBuilder setTargetRegionsPath(Path targetRegionsPath) {
+        this.targetRegionsPath = targetRegionsPath;
+        return this;
+    }
+
+    /**
+     * Number of bases added to both sides of each target region.
+     *
+     * @param targetPadding non-negative padding, 0 by default
+     * @return builder
+     * @see #setTargetRegionsPath(Path)
+     */
+    public GenomeSequenceAccessorBuilder setTargetPadding(int targetPadding) {
+        this.targetPadding = targetPadding;
+        return this;
+    }
+
+    /**
+     * What the {@link GenomeSequenceAccessor.Type#TARGETED} accessor does with the queries outside of the padded target
+     * regions.
+     *
+     * @param offTargetPolicy the policy, {@link TargetedGenomeSequenceAccessor.OffTargetPolicy#FALLBACK} by default
+     * @return builder
+     */
+    public GenomeSequenceAccessorBuilder setOffTargetPolicy(TargetedGenomeSequenceAccessor.OffTargetPolicy offTargetPolicy) {
+        this.offTargetPolicy = offTargetPolicy;
+        return this;
+    }
+
     /**
      * Process arguments and return the accessor. Throws {@link IllegalArgumentException} if there are any problems with
      * provided arguments.
@@ -114,13 +303,98 @@ public class GenomeSequenceAccessorBuilder {
             }
         }
 
+        // soft-mask index (MASK)
+        if (uppercase && softMaskIndexPath == null) {
+            this.softMaskIndexPath = fastaPath.resolveSibling(fastaPath.toFile().getName() + ".mask");
+        }
+
+        // target regions (BED)
+        if (type == GenomeSequenceAccessor.Type.TARGETED) {
+            if (targetRegionsPath == null || !targetRegionsPath.toFile().isFile()) {
+                throw new IllegalArgumentException(String.format("Target regions must be set for %s accessor, got `%s`", type, targetRegionsPath));
+            }
+            if (targetPadding < 0) {
+                throw new IllegalArgumentException(String.format("Target padding must be non-negative: %d", targetPadding));
+            }
+        }
+
+        if (shared) {
+            SharedAccessorRegistry.Key key = SharedAccessorRegistry.Key.of(fastaPath, fastaFaiPath, fastaDictPath, type,
+                    requireMt, uppercase ? softMaskIndexPath : null, typeOptions());
+            return SharedAccessorRegistry.instance().acquire(key, this::createAccessor);
+        }
+        return createAccessor();
+    }
+
+    private List<?> typeOptions() {
+        switch (type) {
+            case AUTO:
+                return List.of(memoryBudget);
+            case TARGETED:
+                return List.of(targetRegionsPath.toAbsolutePath().normalize(), targetPadding, offTargetPolicy);
+            default:
+                return List.of();
+        }
+    }
+
+    private GenomeSequenceAccessor createAccessor() {
+        SoftMaskIndex softMaskIndex = uppercase
+                ? SoftMaskIndex.readOrBuild(fastaPath, new FastaSequenceIndex(fastaFaiPath), softMaskIndexPath)
+                : null;
+
+        SingleFastaGenomeSequenceAccessor accessor;
         switch (type) {
             case SINGLE_CHROMOSOME:
-                return new SingleChromosomeGenomeSequenceAccessor(fastaPath, fastaFaiPath, fastaDictPath, requireMt);
+                accessor = new SingleChromosomeGenomeSequenceAccessor(fastaPath, fastaFaiPath, fastaDictPath, requireMt, softMaskIndex);
+                break;
             case SINGLE_FASTA:
-                return new SingleFastaGenomeSequenceAccessor(fastaPath, fastaFaiPath, fastaDictPath, requireMt);
+                accessor = new SingleFastaGenomeSequenceAccessor(fastaPath, fastaFaiPath, fastaDictPath, requireMt, softMaskIndex);
+                break;
+            case AUTO:
+                accessor = new AdaptiveGenomeSequenceAccessor(fastaPath, fastaFaiPath, fastaDictPath, requireMt, softMaskIndex, memoryBudget);
+                break;
+            case TARGETED:
+                accessor = new TargetedGenomeSequenceAccessor(fastaPath, fastaFaiPath, fastaDictPath, requireMt, softMaskIndex,
+                        targetRegionsPath, targetPadding, offTargetPolicy);
+                break;
             default:
                 throw new IllegalArgumentException(String.format("Unknown type `%s`", type));
         }
+
+        if (!preloadContigs.isEmpty() || preloadRegionsPath != null) {
+            try {
+                preload(accessor);
+            } catch (IllegalArgumentException e) {
+                try {
+                    accessor.close();
+                } catch (IOException ex) {
+                    LOGGER.warn("Error closing the accessor: {}", ex.getMessage());
+                }
+                throw e;
+            }
+        }
+        return accessor;
+    }
+
+    private void preload(SingleFastaGenomeSequenceAccessor accessor) {
+        List<GenomeInterval> regions = new ArrayList<>();
+        if (preloadRegionsPath != null) {
+            try {
+                regions.addAll(BedReader.read(preloadRegionsPath, accessor.getReferenceDictionary()));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(String.format("Unable to read regions to preload from `%s`", preloadRegionsPath), e);
+            }
+        }
+
+        CompletableFuture<Void> readiness = GenomePreloader.preload(accessor, fastaPath, fastaFaiPath, preloadContigs, regions, preloadThreads);
+        accessor.setReadiness(readiness);
+        if (!preloadAsync) {
+            try {
+                readiness.join();
+            } catch (CompletionException e) {
+                // the accessor works without the preloaded data
+                LOGGER.warn("Error preloading the accessor: {}", e.getCause().getMessage());
+            }
+        }
     }
 }
@@ -0,0 +1,485 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.data.ReferenceDictionaryBuilder;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.GenomePosition;
+import de.charite.compbio.jannovar.reference.GenomeVariant;
+import de.charite.compbio.jannovar.reference.Strand;
+import htsjdk.samtools.SAMException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * View of an alternate haplotype that is obtained by applying a set of variants (SNVs, MNVs and indels) to the
+ * reference sequence served by another {@link GenomeSequenceAccessor}.
+ * <p>
+ * The variants are not applied eagerly. Each contig is represented by a piece table, where every piece either points
+ * to a span of the reference sequence, or contains the literal alternate allele. Queries are expressed in coordinates
+ * of the alternate haplotype, hence {@link #getReferenceDictionary()} reports contig lengths adjusted by the indels.
+ * Use {@link #toAlternate(GenomePosition)} or {@link #toAlternate(GenomeInterval)} to map reference coordinates onto
+ * the haplotype.
+ * </p>
+ * <p>
+ * REF alleles of the variants are not checked against the reference sequence. Overlapping variants are not allowed.
+ * </p>
+ * <p>
+ * The view does not own the underlying accessor, closing the view does not close the reference accessor.
+ * This class is thread-safe if the underlying accessor is thread-safe.
+ * </p>
+ */
+public class HaplotypeGenomeSequenceAccessor extends AbstractGenomeSequenceAccessor {
+
+    /**
+     * Reference pieces separated by less than this number of bases are fetched from the reference in a single query.
+     */
+    private static final int COALESCE_DISTANCE = 4096;
+
+    private final GenomeSequenceAccessor reference;
+
+    private final ReferenceDictionary referenceDictionary;
+
+    /**
+     * Piece tables of the contigs with at least one variant, keyed by the primary contig ID.
+     */
+    private final Map<Integer, PieceTable> pieceTables;
+
+    HaplotypeGenomeSequenceAccessor(GenomeSequenceAccessor reference, Collection<GenomeVariant> variants) {
+        this.reference = Objects.requireNonNull(reference, "Reference accessor cannot be null");
+        this.pieceTables = buildPieceTables(reference.getReferenceDictionary(), variants);
+        this.referenceDictionary = buildReferenceDictionary(reference.getReferenceDictionary(), pieceTables);
+    }
+
+    /**
+     * Create a view of the alternate haplotype.
+     *
+     * @param reference accessor serving the reference sequence
+     * @param variants  non-overlapping variants to apply to the reference
+     * @return the haplotype view
+     * @throws IllegalArgumentException if a variant is located on unknown contig, exceeds the contig, or if the
+     *                                  variants overlap
+     */
+    public static HaplotypeGenomeSequenceAccessor of(GenomeSequenceAccessor reference, Collection<GenomeVariant> variants) {
+        return new HaplotypeGenomeSequenceAccessor(reference, variants);
+    }
+
+    private static Map<Integer, PieceTable> buildPieceTables(ReferenceDictionary rd, Collection<GenomeVariant> variants) {
+        Map<Integer, List<GenomeVariant>> byContig = new HashMap<>();
+        for (GenomeVariant variant : variants) {
+            GenomeVariant onFwd = variant.withStrand(Strand.FWD);
+            Integer contigId = rd.getContigNameToID().get(onFwd.getChrName());
+            if (contigId == null) {
+                throw new IllegalArgumentException(String.format("Unknown contig `%s` of variant %s", onFwd.getChrName(), variant));
+            }
+            int contigLength = rd.getContigIDToLength().get(contigId);
+            if (onFwd.getPos() < 0 || onFwd.getPos() + onFwd.getRef().length() > contigLength) {
+                throw new IllegalArgumentException(String.format("Variant %s exceeds contig length %d", variant, contigLength));
+            }
+            byContig.computeIfAbsent(contigId, k -> new ArrayList<>()).add(onFwd);
+        }
+
+        Map<Integer, PieceTable> tables = new HashMap<>();
+        for (Map.Entry<Integer, List<GenomeVariant>> entry : byContig.entrySet()) {
+            int contigLength = rd.getContigIDToLength().get(entry.getKey());
+            tables.put(entry.getKey(), PieceTable.of(entry.getValue(), contigLength));
+        }
+        return Map.copyOf(tables);
+    }
+
+    private static ReferenceDictionary buildReferenceDictionary(ReferenceDictionary rd, Map<Integer, PieceTable> pieceTables) {
+        ReferenceDictionaryBuilder rdb = new ReferenceDictionaryBuilder();
+        rd.getContigNameToID().forEach(rdb::putContigID);
+        rd.getContigIDToName().forEach(rdb::putContigName);
+        rd.getContigIDToLength().forEach((id, length) -> rdb.putContigLength(id,
+                pieceTables.containsKey(id) ? pieceTables.get(id).length() : length));
+        return rdb.build();
+    }
+
+    /**
+     * @return accessor serving the reference sequence
+     */
+    public GenomeSequenceAccessor getReference() {
+        return reference;
+    }
+
+    /**
+     * @return reference dictionary with contig lengths of the alternate haplotype
+     */
+    @Override
+    public ReferenceDictionary getReferenceDictionary() {
+        return referenceDictionary;
+    }
+
+    /**
+     * Get sequence of the alternate haplotype.
+     *
+     * @param chr   chromosome
+     * @param start start position of the alternate haplotype in 1-based numbering
+     * @param end   end position of the alternate haplotype in 1-based numbering
+     * @return nucleotide sequence
+     * @throws SAMException if the contig is unknown or if the query exceeds the contig
+     */
+    @Override
+    public String fetchSequence(String chr, int start, int end) throws SAMException {
+        Integer contigId = referenceDictionary.getContigNameToID().get(chr);
+        PieceTable table = contigId == null ? null : pieceTables.get(contigId);
+        if (table == null) {
+            // no variants on this contig
+            return reference.fetchSequence(chr, start, end);
+        }
+        if (start < 1 || end > table.length() || start > end + 1) {
+            throw new SAMException(String.format("Query %s:%d-%d asks for data outside of contig with length %d",
+                    chr, start, end, table.length()));
+        }
+        return table.fetch(reference, chr, start - 1, end);
+    }
+
+    /**
+     * Fetch sequences of many intervals of the alternate haplotype at once. The rows on the contigs without variants
+     * are delegated to the reference accessor in a single batch, the other rows are assembled from the pieces.
+     *
+     * @see GenomeSequenceAccessor#fetchSequences(int[], int[], int[], boolean[])
+     */
+    @Override
+    public SequenceBatch fetchSequences(int[] contigIds, int[] begins, int[] ends, boolean[] reverseStrand) {
+        int onReference = 0;
+        for (int contigId : contigIds) {
+            if (!pieceTables.containsKey(contigId)) {
+                onReference++;
+            }
+        }
+        if (onReference == contigIds.length) {
+            // no variants on the queried contigs
+            return reference.fetchSequences(contigIds, begins, ends, reverseStrand);
+        }
+
+        SequenceBatch.Builder batch = SequenceBatch.newBuilder(contigIds, begins, ends, reverseStrand);
+        int[] refContigIds = new int[onReference], refBegins = new int[onReference], refEnds = new int[onReference];
+        boolean[] refReverse = reverseStrand == null ? null : new boolean[onReference];
+        for (int i = 0, j = 0; i < contigIds.length; i++) {
+            if (!pieceTables.containsKey(contigIds[i])) {
+                refContigIds[j] = contigIds[i];
+                refBegins[j] = begins[i];
+                refEnds[j] = ends[i];
+                if (refReverse != null) {
+                    refReverse[j] = reverseStrand[i];
+                }
+                j++;
+            }
+        }
+        SequenceBatch fromReference = reference.fetchSequences(refContigIds, refBegins, refEnds, refReverse);
+
+        for (int i = 0, j = 0; i < contigIds.length; i++) {
+            PieceTable table = pieceTables.get(contigIds[i]);
+            if (table == null) {
+                if (fromReference.isOk(j)) {
+                    int length = fromReference.getLength(j);
+                    batch.ensureCapacity(length);
+                    System.arraycopy(fromReference.getBases(), fromReference.getOffsets()[j], batch.buffer(), batch.position(), length);
+                    batch.commit(length);
+                } else {
+                    batch.fail(fromReference.getStatus(j));
+                }
+                j++;
+            } else if (begins[i] < 0 || begins[i] > ends[i] || ends[i] > table.length()) {
+                batch.fail(SequenceBatch.OUT_OF_BOUNDS);
+            } else {
+                try {
+                    int position = batch.position();
+                    String chr = referenceDictionary.getContigIDToName().get(contigIds[i]);
+                    batch.append(table.fetch(reference, chr, begins[i], ends[i]).getBytes(StandardCharsets.US_ASCII));
+                    if (reverseStrand != null && reverseStrand[i]) {
+                        ReverseComplement.reverseComplement(batch.buffer(), position, batch.position());
+                    }
+                } catch (SAMException e) {
+                    batch.fail(SequenceBatch.ERROR);
+                }
+            }
+        }
+        return batch.build();
+    }
+
+    /**
+     * Map position on the reference to the position on the alternate haplotype. Positions within a deletion are
+     * mapped to the position following the deletion. Positions within a substitution are mapped to the corresponding
+     * position of the alternate allele, or past the allele if the alternate allele is shorter.
+     *
+     * @param position position on the reference
+     * @return position on the alternate haplotype, on the same strand as <code>position</code>
+     */
+    public GenomePosition toAlternate(GenomePosition position) {
+        GenomePosition onFwd = position.withStrand(Strand.FWD);
+        int contigId = primaryContigId(onFwd.getRefDict(), onFwd.getChr());
+        PieceTable table = pieceTables.get(contigId);
+        int pos = table == null ? onFwd.getPos() : table.mapBoundary(onFwd.getPos(), true);
+        return new GenomePosition(referenceDictionary, Strand.FWD, contigId, pos).withStrand(position.getStrand());
+    }
+
+    /**
+     * Map interval on the reference to the interval on the alternate haplotype. Insertions located exactly at the
+     * interval boundaries are not included in the resulting interval.
+     *
+     * @param interval interval on the reference
+     * @return interval on the alternate haplotype, on the same strand as <code>interval</code>
+     */
+    public GenomeInterval toAlternate(GenomeInterval interval) {
+        GenomeInterval onFwd = interval.withStrand(Strand.FWD);
+        int contigId = primaryContigId(onFwd.getRefDict(), onFwd.getChr());
+        PieceTable table = pieceTables.get(contigId);
+        int begin = onFwd.getBeginPos(), end = onFwd.getEndPos();
+        if (table != null) {
+            int altBegin = table.mapBoundary(begin, true);
+            begin = altBegin;
+            end = Math.max(altBegin, table.mapBoundary(end, false));
+        }
+        return new GenomeInterval(referenceDictionary, Strand.FWD, contigId, begin, end).withStrand(interval.getStrand());
+    }
+
+    private int primaryContigId(ReferenceDictionary rd, int chr) {
+        String name = rd.getContigIDToName().get(chr);
+        Integer contigId = referenceDictionary.getContigNameToID().get(name);
+        if (contigId == null) {
+            throw new IllegalArgumentException(String.format("Unknown contig `%s`", name));
+        }
+        return contigId;
+    }
+
+    @Override
+    public CompletableFuture<Void> getReadiness() {
+        return reference.getReadiness();
+    }
+
+    /**
+     * The view does not own the underlying accessor, hence this is a no-op.
+     */
+    @Override
+    public void close() {
+        // no-op
+    }
+
+    /**
+     * Pieces of a single contig stored in parallel arrays, ordered by position on the alternate haplotype.
+     */
+    private static final class PieceTable {
+
+        /**
+         * 0-based start of the piece on the alternate haplotype.
+         */
+        private final int[] altStarts;
+        /**
+         * 0-based start of the reference span that is covered by the piece.
+         */
+        private final int[] refStarts;
+        /**
+         * Number of reference bases covered by the piece.
+         */
+        private final int[] refLengths;
+        /**
+         * Alternate allele of the piece or <code>null</code> if the piece points to the reference.
+         */
+        private final String[] literals;
+
+        private final int length;
+
+        // parallel arrays describing the variants, used to map coordinates
+        private final int[] variantBegins;
+        private final int[] variantEnds;
+        private final int[] variantAltLengths;
+        /**
+         * Shift of the coordinates caused by the variants that precede the i-th variant.
+         */
+        private final int[] shifts;
+
+        private PieceTable(int[] altStarts, int[] refStarts, int[] refLengths, String[] literals, int length,
+                           int[] variantBegins, int[] variantEnds, int[] variantAltLengths, int[] shifts) {
+            this.altStarts = altStarts;
+            this.refStarts = refStarts;
+            this.refLengths = refLengths;
+            this.literals = literals;
+            this.length = length;
+            this.variantBegins = variantBegins;
+            this.variantEnds = variantEnds;
+            this.variantAltLengths = variantAltLengths;
+            this.shifts = shifts;
+        }
+
+        static PieceTable of(List<GenomeVariant> contigVariants, int contigLength) {
+            List<GenomeVariant> variants = new ArrayList<>(contigVariants);
+            variants.sort(Comparator.comparingInt(GenomeVariant::getPos)
+                    .thenComparingInt(v -> v.getRef().length()));
+
+            int n = variants.size();
+            int[] variantBegins = new int[n], variantEnds = new int[n], variantAltLengths = new int[n], shifts = new int[n];
+            // there are at most 2 pieces per variant plus the trailing reference piece
+            int[] altStarts = new int[2 * n + 1], refStarts = new int[2 * n + 1], refLengths = new int[2 * n + 1];
+            String[] literals = new String[2 * n + 1];
+
+            int pieces = 0, refPos = 0, altPos = 0, shift = 0;
+            GenomeVariant previous = null;
+            for (int i = 0; i < n; i++) {
+                GenomeVariant v = variants.get(i);
+                int begin = v.getPos(), end = v.getPos() + v.getRef().length();
+                if (previous != null && overlap(previous, v)) {
+                    throw new IllegalArgumentException(String.format("Variants %s and %s overlap", previous, v));
+                }
+                previous = v;
+
+                variantBegins[i] = begin;
+                variantEnds[i] = end;
+                variantAltLengths[i] = v.getAlt().length();
+                shifts[i] = shift;
+                shift += v.getAlt().length() - v.getRef().length();
+
+                if (begin > refPos) {
+                    // reference piece preceding the variant
+                    altStarts[pieces] = altPos;
+                    refStarts[pieces] = refPos;
+                    refLengths[pieces] = begin - refPos;
+                    pieces++;
+                    altPos += begin - refPos;
+                }
+                if (!v.getAlt().isEmpty()) {
+                    altStarts[pieces] = altPos;
+                    refStarts[pieces] = begin;
+                    refLengths[pieces] = end - begin;
+                    literals[pieces] = v.getAlt();
+                    pieces++;
+                    altPos += v.getAlt().length();
+                }
+                refPos = end;
+            }
+            if (refPos < contigLength) {
+                altStarts[pieces] = altPos;
+                refStarts[pieces] = refPos;
+                refLengths[pieces] = contigLength - refPos;
+                pieces++;
+                altPos += contigLength - refPos;
+            }
+
+            return new PieceTable(Arrays.copyOf(altStarts, pieces), Arrays.copyOf(refStarts, pieces),
+                    Arrays.copyOf(refLengths, pieces), Arrays.copyOf(literals, pieces), altPos,
+                    variantBegins, variantEnds, variantAltLengths, shifts);
+        }
+
+        private static boolean overlap(GenomeVariant previous, GenomeVariant current) {
+            int previousEnd = previous.getPos() + previous.getRef().length();
+            if (previousEnd > current.getPos()) {
+                return true;
+            }
+            // two insertions at the same position
+            return previous.getRef().isEmpty() && current.getRef().isEmpty() && previous.getPos() == current.getPos();
+        }
+
+        int length() {
+            return length;
+        }
+
+        private boolean isLiteral(int piece) {
+            return literals[piece] != null;
+        }
+
+        private int altLength(int piece) {
+            return isLiteral(piece) ? literals[piece].length() : refLengths[piece];
+        }
+
+        /**
+         * @return index of the piece that contains 0-based alternate position <code>altPos</code>
+         */
+        private int pieceAt(int altPos) {
+            int idx = Arrays.binarySearch(altStarts, altPos);
+            return idx >= 0 ? idx : -idx - 2;
+        }
+
+        /**
+         * Fetch sequence of the alternate haplotype in 0-based half-open coordinates.
+         */
+        String fetch(GenomeSequenceAccessor reference, String chr, int begin, int end) {
+            if (begin == end) {
+                return "";
+            }
+            StringBuilder builder = new StringBuilder(end - begin);
+            int first = pieceAt(begin), last = pieceAt(end - 1);
+
+            int piece = first;
+            while (piece <= last) {
+                if (isLiteral(piece)) {
+                    int from = Math.max(begin - altStarts[piece], 0);
+                    int to = Math.min(end - altStarts[piece], altLength(piece));
+                    builder.append(literals[piece], from, to);
+                    piece++;
+                    continue;
+                }
+                // coalesce the following reference pieces into a single query
+                int group = piece;
+                int refFrom = refStarts[piece] + Math.max(begin - altStarts[piece], 0);
+                int refTo = refStarts[piece] + Math.min(end - altStarts[piece], refLengths[piece]);
+                int next = piece + 1;
+                while (next <= last) {
+                    if (!isLiteral(next)) {
+                        if (refStarts[next] - refTo >= COALESCE_DISTANCE) {
+                            break;
+                        }
+                        refTo = refStarts[next] + Math.min(end - altStarts[next], refLengths[next]);
+                    }
+                    next++;
+                }
+                String refSeq = reference.fetchSequence(chr, refFrom + 1, refTo);
+
+                for (int p = group; p < next; p++) {
+                    int from = Math.max(begin - altStarts[p], 0);
+                    int to = Math.min(end - altStarts[p], altLength(p));
+                    if (isLiteral(p)) {
+                        builder.append(literals[p], from, to);
+                    } else {
+                        int offset = refStarts[p] - refFrom;
+                        builder.append(refSeq, offset + from, offset + to);
+                    }
+                }
+                piece = next;
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Map boundary preceding the 0-based reference position <code>refPos</code> onto the alternate haplotype.
+         *
+         * @param afterInsertions if true, insertions located exactly at <code>refPos</code> are placed before the
+         *                        boundary
+         */
+        int mapBoundary(int refPos, boolean afterInsertions) {
+            // index of the first variant that is not entirely before the boundary
+            int lo = 0, hi = variantBegins.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (isBefore(mid, refPos, afterInsertions)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (lo == variantBegins.length) {
+                int totalShift = lo == 0 ? 0 : shifts[lo - 1] + variantAltLengths[lo - 1] - (variantEnds[lo - 1] - variantBegins[lo - 1]);
+                return refPos + totalShift;
+            }
+            if (variantBegins[lo] < refPos) {
+                // the boundary is located within the variant
+                int offset = Math.min(refPos - variantBegins[lo], variantAltLengths[lo]);
+                return variantBegins[lo] + shifts[lo] + offset;
+            }
+            return refPos + shifts[lo];
+        }
+
+        private boolean isBefore(int variant, int refPos, boolean afterInsertions) {
+            if (variantEnds[variant] < refPos) {
+                return true;
+            }
+            if (variantEnds[variant] == refPos) {
+                boolean isInsertion = variantBegins[variant] == variantEnds[variant];
+                return !isInsertion || afterInsertions;
+            }
+            return false;
+        }
+    }
+}
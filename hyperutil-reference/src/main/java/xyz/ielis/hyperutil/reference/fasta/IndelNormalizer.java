@@ -0,0 +1,198 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.GenomePosition;
+import de.charite.compbio.jannovar.reference.GenomeVariant;
+import de.charite.compbio.jannovar.reference.Strand;
+import htsjdk.samtools.SAMException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Trims and left-aligns variants against the reference sequence. Besides the left-aligned representation, the
+ * normalizer finds the range of all equivalent placements of an indel and the repeat unit of the indel.
+ * <p>
+ * The reference bases are fetched in chunks of growing size, hence shifting an indel through a long repeat takes a
+ * few queries to the accessor instead of one query per shifted base. In the batch mode, the fetched bases are reused by
+ * the subsequent variants. The batch mode works with any input, but the reuse is effective for input sorted by
+ * coordinate.
+ * </p>
+ * <p>
+ * This class is thread-safe if the underlying accessor is thread-safe.
+ * </p>
+ */
+public class IndelNormalizer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndelNormalizer.class);
+
+    /**
+     * The window is dropped if the next variant starts further than this from its end.
+     */
+    private static final int MAX_GAP = 1 << 16;
+
+    /**
+     * The window is dropped if it holds more bases than this before the next variant.
+     */
+    private static final int MAX_WINDOW = 1 << 20;
+
+    private final GenomeSequenceAccessor accessor;
+
+    private IndelNormalizer(GenomeSequenceAccessor accessor) {
+        this.accessor = accessor;
+    }
+
+    public static IndelNormalizer of(GenomeSequenceAccessor accessor) {
+        return new IndelNormalizer(accessor);
+    }
+
+    /**
+     * Normalize the variant.
+     *
+     * @param variant variant to normalize
+     * @return normalized variant or empty optional if the variant is symbolic, located on an unknown contig or its
+     * REF allele does not match the reference
+     */
+    public Optional<NormalizedVariant> normalize(GenomeVariant variant) {
+        return normalize(variant, new ReferenceWindow(accessor));
+    }
+
+    /**
+     * Normalize the variants, reusing the fetched reference bases. The variants should be sorted by coordinate.
+     *
+     * @param variants variants to normalize
+     * @return normalized variants in the order of the input, empty optional for the variants that cannot be normalized
+     */
+    public List<Optional<NormalizedVariant>> normalizeAll(List<GenomeVariant> variants) {
+        ReferenceWindow window = new ReferenceWindow(accessor);
+        List<Optional<NormalizedVariant>> results = new ArrayList<>(variants.size());
+        for (GenomeVariant variant : variants) {
+            results.add(normalize(variant, window));
+        }
+        return results;
+    }
+
+    private Optional<NormalizedVariant> normalize(GenomeVariant variant, ReferenceWindow window) {
+        GenomeVariant fwd = variant.withStrand(Strand.FWD);
+        if (GenomeVariant.wouldBeSymbolicAllele(fwd.getAlt())) {
+            LOGGER.warn("Cannot normalize symbolic variant `{}`", variant);
+            return Optional.empty();
+        }
+        ReferenceDictionary variantRd = fwd.getGenomePos().getRefDict();
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        String contigName = variantRd.getContigIDToName().get(fwd.getChr());
+        Integer contigId = contigName == null ? null : rd.getContigNameToID().get(contigName);
+        if (contigId == null) {
+            LOGGER.warn("Unknown chromosome `{}`", contigName);
+            return Optional.empty();
+        }
+        String contig = rd.getContigIDToName().get(contigId);
+        int contigLength = rd.getContigIDToLength().get(contigId);
+        int pos = fwd.getPos();
+        String ref = fwd.getRef().toUpperCase(), alt = fwd.getAlt().toUpperCase();
+        if (pos < 0 || pos + ref.length() > contigLength) {
+            LOGGER.warn("Variant `{}` is outside of contig `{}` with length {}", variant, contig, contigLength);
+            return Optional.empty();
+        }
+
+        if (!contig.equals(window.getContig()) || pos < window.getStart() || pos > window.getEnd() + MAX_GAP
+                || pos - window.getStart() > MAX_WINDOW) {
+            window.reset(contig, contigLength, Math.max(0, pos - ReferenceWindow.INITIAL_CHUNK));
+        } else {
+            window.resetChunks();
+        }
+
+        try {
+            for (int i = 0; i < ref.length(); i++) {
+                if (window.base(pos + i) != ref.charAt(i)) {
+                    LOGGER.warn("REF allele of `{}` does not match the reference", variant);
+                    return Optional.empty();
+                }
+            }
+            if (ref.isEmpty() == alt.isEmpty()) {
+                // not an indel, jannovar has already trimmed the alleles
+                GenomeVariant trimmed = new GenomeVariant(fwd.getGenomePos(), ref, alt);
+                return Optional.of(new NormalizedVariant(trimmed, trimmed.getGenomeInterval(), "", pos + 1, ref, alt));
+            }
+            return Optional.of(normalizeIndel(fwd, pos, ref, alt, window));
+        } catch (SAMException e) {
+            LOGGER.warn("Error normalizing variant `{}`: {}", variant, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static NormalizedVariant normalizeIndel(GenomeVariant fwd, int pos, String ref, String alt, ReferenceWindow window) {
+        boolean deletion = alt.isEmpty();
+        byte[] allele = (deletion ? ref : alt).getBytes(StandardCharsets.US_ASCII);
+        int length = allele.length;
+        // a deletion spans the deleted bases, an insertion is located before the base at the position
+        int span = deletion ? length : 0;
+        int contigLength = window.getContigLength();
+
+        // shifting by one base rotates the allele, the rotation is tracked by the offset of its first base
+        int left = pos, leftOffset = 0;
+        while (left > 0 && allele[Math.floorMod(length - 1 + leftOffset, length)] == window.base(left - 1)) {
+            left--;
+            leftOffset--;
+        }
+        int right = pos, rightOffset = 0;
+        while (right + span < contigLength && allele[Math.floorMod(rightOffset, length)] == window.base(right + span)) {
+            right++;
+            rightOffset++;
+        }
+
+        byte[] leftAllele = new byte[length];
+        for (int i = 0; i < length; i++) {
+            leftAllele[i] = allele[Math.floorMod(i + leftOffset, length)];
+        }
+        String shifted = new String(leftAllele, StandardCharsets.US_ASCII);
+        String repeatUnit = shifted.substring(0, period(leftAllele));
+
+        GenomePosition leftPos = new GenomePosition(fwd.getGenomePos().getRefDict(), Strand.FWD, fwd.getChr(), left);
+        GenomeVariant leftAligned = deletion
+                ? new GenomeVariant(leftPos, shifted, "")
+                : new GenomeVariant(leftPos, "", shifted);
+        GenomeInterval equivalentRange = new GenomeInterval(leftPos, right + span - left);
+
+        // VCF alleles are padded by the preceding base, or by the following base at the contig start
+        int vcfPosition;
+        String vcfRef, vcfAlt;
+        if (left > 0) {
+            char padding = (char) window.base(left - 1);
+            vcfPosition = left;
+            vcfRef = deletion ? padding + shifted : String.valueOf(padding);
+            vcfAlt = deletion ? String.valueOf(padding) : padding + shifted;
+        } else {
+            char padding = (char) window.base(span);
+            vcfPosition = 1;
+            vcfRef = deletion ? shifted + padding : String.valueOf(padding);
+            vcfAlt = deletion ? String.valueOf(padding) : shifted + padding;
+        }
+        return new NormalizedVariant(leftAligned, equivalentRange, repeatUnit, vcfPosition, vcfRef, vcfAlt);
+    }
+
+    /**
+     * @return length of the shortest prefix whose repetition forms the sequence
+     */
+    private static int period(byte[] sequence) {
+        int length = sequence.length;
+        outer:
+        for (int period = 1; period < length; period++) {
+            if (length % period != 0) {
+                continue;
+            }
+            for (int i = period; i < length; i++) {
+                if (sequence[i] != sequence[i - period]) {
+                    continue outer;
+                }
+            }
+            return period;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,696 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import htsjdk.samtools.SAMException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Index of the (w, k)-minimizers of the reference for finding exact occurrences of short sequences, such as probes,
+ * primers or guides, on both strands.
+ * <p>
+ * For each window of <code>w</code> consecutive k-mers, the k-mers with the smallest hash are indexed. The hash is
+ * computed from the canonical k-mer, the smaller of the k-mer and its reverse complement, hence a sequence and its
+ * reverse complement share the minimizers. A query spanning at least one window shares the minimizers of the window
+ * with each of its occurrences. The index is looked up using the query minimizer with the fewest hits, and the
+ * candidate occurrences are verified by fetching their sequences from the accessor. The k-mers containing bases other
+ * than <code>ACGT</code> are not indexed.
+ * </p>
+ * <p>
+ * The entries are bucketed by the upper 16 bits of the hash, each entry packs the lower 16 bits of the hash, the
+ * position on the concatenated genome and the strand of the canonical k-mer into a single <code>long</code>. Hence, the
+ * indexed genome must be shorter than 2^32 bases. The index is built in parallel by {@link #build(GenomeSequenceAccessor, int, int, int)}
+ * and it can be stored using {@link #write(Path)} with delta-encoded entries. The stored index records the contig
+ * lengths and, if the accessor reads a fasta file, the size of the file, a stored index that does not match the
+ * accessor is rebuilt by {@link #readOrBuild(Path, GenomeSequenceAccessor, int, int, int)}.
+ * </p>
+ * <p>
+ * This class is thread-safe if the accessor is thread-safe.
+ * </p>
+ */
+public class MinimizerIndex {
+
+    /**
+     * Default k-mer length.
+     */
+    public static final int DEFAULT_K = 15;
+
+    /**
+     * Default number of k-mers in a window, queries must be at least <code>20</code> bases long with the default k.
+     */
+    public static final int DEFAULT_W = 6;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MinimizerIndex.class);
+
+    /**
+     * Magic number of the serialized index, `HUMI` in ASCII.
+     */
+    private static final int MAGIC = 0x48554D49;
+
+    private static final int VERSION = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Number of window starts scanned by a single build task.
+     */
+    private static final int CHUNK_SIZE = 1 << 22;
+
+    private static final int BUCKET_BITS = 16;
+
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+
+    private static final int LOCATION_BITS = 33;
+
+    private static final long LOCATION_MASK = (1L << LOCATION_BITS) - 1;
+
+    /**
+     * Strand of the canonical k-mer, the k-mer is equal to its reverse complement if it is a palindrome.
+     */
+    private static final int FORWARD = 0, REVERSE = 1, PALINDROME = 2;
+
+    /**
+     * 2-bit codes of the bases, <code>-1</code> for the bases other than <code>ACGT</code>.
+     */
+    private static final byte[] CODES = makeCodes();
+
+    private final GenomeSequenceAccessor accessor;
+
+    private final int k;
+
+    private final int w;
+
+    /**
+     * IDs of the indexed contigs, in the order of concatenation.
+     */
+    private final int[] contigIds;
+
+    /**
+     * <code>contigOffsets[i]</code> is the position of the first base of the i-th contig on the concatenated genome.
+     */
+    private final long[] contigOffsets;
+
+    /**
+     * Entries of bucket <code>b</code> are located at <code>[bucketOffsets[b], bucketOffsets[b + 1])</code>.
+     */
+    private final int[] bucketOffsets;
+
+    private final long[] entries;
+
+    private MinimizerIndex(GenomeSequenceAccessor accessor, int k, int w, int[] contigIds, long[] contigOffsets,
+                           int[] bucketOffsets, long[] entries) {
+        this.accessor = accessor;
+        this.k = k;
+        this.w = w;
+        this.contigIds = contigIds;
+        this.contigOffsets = contigOffsets;
+        this.bucketOffsets = bucketOffsets;
+        this.entries = entries;
+    }
+
+    /**
+     * Build the index with the default parameters using all available processors.
+     *
+     * @see #build(GenomeSequenceAccessor, int, int, int)
+     */
+    public static MinimizerIndex build(GenomeSequenceAccessor accessor) throws InterruptedException {
+        return build(accessor, DEFAULT_K, DEFAULT_W, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Build the index of all contigs of the accessor. The contigs are split into chunks that are scanned in parallel.
+     *
+     * @param accessor accessor to read the reference from and to verify the query hits with
+     * @param k        k-mer length, in range <code>[4, 31]</code>
+     * @param w        number of k-mers in a window, positive
+     * @param threads  number of threads to build the index with
+     * @return the index
+     * @throws IllegalArgumentException if the parameters are invalid or if the genome is too large
+     * @throws SAMException             if the reference cannot be read
+     * @throws InterruptedException     if interrupted while waiting for the build tasks
+     */
+    public static MinimizerIndex build(GenomeSequenceAccessor accessor, int k, int w, int threads) throws InterruptedException {
+        checkParameters(k, w);
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format("Number of threads must be positive: %d", threads));
+        }
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        int[] contigIds = rd.getContigIDToLength().keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        long[] contigOffsets = contigOffsets(contigIds, rd);
+
+        int span = k + w - 1;
+        List<Callable<Entries>> tasks = new ArrayList<>();
+        for (int i = 0; i < contigIds.length; i++) {
+            int contigId = contigIds[i];
+            int length = rd.getContigIDToLength().get(contigId);
+            long offset = contigOffsets[i];
+            // windows start at [0, length - span]
+            for (long begin = 0; begin <= length - span; begin += CHUNK_SIZE) {
+                int from = (int) begin, to = (int) Math.min(begin + CHUNK_SIZE, length - span + 1);
+                tasks.add(() -> scanChunk(accessor, contigId, offset, from, to, k, w));
+            }
+        }
+
+        long start = System.nanoTime();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "hyperutil-index-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Entries> chunks = new ArrayList<>(tasks.size());
+            for (Future<Entries> future : executor.invokeAll(tasks)) {
+                chunks.add(future.get());
+            }
+            int[] bucketOffsets = new int[BUCKETS + 1];
+            long[] entries = sort(chunks, bucketOffsets, executor);
+            LOGGER.debug("Indexed {} minimizers of {} contigs in {} ms", entries.length, contigIds.length,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return new MinimizerIndex(accessor, k, w, contigIds, contigOffsets, bucketOffsets, entries);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Error building the index", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void checkParameters(int k, int w) {
+        if (k < 4 || k > 31) {
+            throw new IllegalArgumentException(String.format("K-mer length must be in range [4, 31]: %d", k));
+        }
+        if (w < 1) {
+            throw new IllegalArgumentException(String.format("Window size must be positive: %d", w));
+        }
+    }
+
+    private static long[] contigOffsets(int[] contigIds, ReferenceDictionary rd) {
+        long[] offsets = new long[contigIds.length + 1];
+        for (int i = 0; i < contigIds.length; i++) {
+            offsets[i + 1] = offsets[i] + rd.getContigIDToLength().get(contigIds[i]);
+        }
+        if (offsets[contigIds.length] > 1L << (LOCATION_BITS - 1)) {
+            throw new IllegalArgumentException(String.format("Genome with %d bases is too large to be indexed", offsets[contigIds.length]));
+        }
+        return offsets;
+    }
+
+    /**
+     * Find the minimizers of the windows starting at <code>[from, to)</code> of the contig.
+     */
+    private static Entries scanChunk(GenomeSequenceAccessor accessor, int contigId, long offset, int from, int to, int k, int w) {
+        int end = to + k + w - 2;
+        SequenceBatch batch = accessor.fetchSequences(new int[]{contigId}, new int[]{from}, new int[]{end}, null);
+        if (!batch.isOk(0)) {
+            throw new SAMException(String.format("Unable to read [%d, %d) of contig %d", from, end, contigId));
+        }
+        Entries entries = new Entries(Math.max(16, 3 * (to - from) / (w + 1)));
+        minimizers(batch.getBases(), batch.getOffsets()[0], end - from, k, w, (kmer, hash, strand) ->
+                entries.add(hash, (offset + from + kmer) << 1 | (strand == REVERSE ? 1 : 0)));
+        return entries;
+    }
+
+    /**
+     * Sort the entries into the buckets, drop duplicate entries found by the neighboring chunks.
+     */
+    private static long[] sort(List<Entries> chunks, int[] bucketOffsets, ExecutorService executor) throws InterruptedException, ExecutionException {
+        long total = 0;
+        int[] counts = new int[BUCKETS];
+        for (Entries chunk : chunks) {
+            total += chunk.size;
+            for (int i = 0; i < chunk.size; i++) {
+                counts[chunk.hashes[i] >>> BUCKET_BITS]++;
+            }
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(String.format("Too many minimizers %d, use larger window", total));
+        }
+        long[] entries = new long[(int) total];
+        for (int b = 0; b < BUCKETS; b++) {
+            bucketOffsets[b + 1] = bucketOffsets[b] + counts[b];
+        }
+        int[] next = Arrays.copyOf(bucketOffsets, BUCKETS);
+        for (Entries chunk : chunks) {
+            for (int i = 0; i < chunk.size; i++) {
+                int hash = chunk.hashes[i];
+                entries[next[hash >>> BUCKET_BITS]++] = (long) (hash & 0xFFFF) << LOCATION_BITS | chunk.locations[i];
+            }
+        }
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        int step = Math.max(1, BUCKETS / 64);
+        for (int first = 0; first < BUCKETS; first += step) {
+            int from = first, to = Math.min(BUCKETS, first + step);
+            tasks.add(() -> {
+                // each bucket is sorted and deduplicated in place, the new size is stored in counts
+                for (int b = from; b < to; b++) {
+                    Arrays.sort(entries, bucketOffsets[b], bucketOffsets[b + 1]);
+                    int size = 0;
+                    for (int i = bucketOffsets[b]; i < bucketOffsets[b + 1]; i++) {
+                        if (size == 0 || entries[bucketOffsets[b] + size - 1] != entries[i]) {
+                            entries[bucketOffsets[b] + size++] = entries[i];
+                        }
+                    }
+                    counts[b] = size;
+                }
+                return to - from;
+            });
+        }
+        for (Future<Integer> future : executor.invokeAll(tasks)) {
+            future.get();
+        }
+
+        // compact the buckets
+        int size = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            System.arraycopy(entries, bucketOffsets[b], entries, size, counts[b]);
+            bucketOffsets[b] = size;
+            size += counts[b];
+        }
+        bucketOffsets[BUCKETS] = size;
+        return size == entries.length ? entries : Arrays.copyOf(entries, size);
+    }
+
+    /**
+     * Read the index that has been previously stored by {@link #write(Path)}. The contigs of the index must match the
+     * contigs of the accessor.
+     *
+     * @param indexPath path to the stored index
+     * @param accessor  accessor to verify the query hits with
+     * @return the index
+     * @throws IOException if the file cannot be read, if it is not a minimizer index or if the contigs or the size of
+     *                     the fasta file do not match
+     */
+    public static MinimizerIndex read(Path indexPath, GenomeSequenceAccessor accessor) throws IOException {
+        long indexSize = Files.size(indexPath);
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath), BUFFER_SIZE))) {
+            if (is.readInt() != MAGIC) {
+                throw new IOException(String.format("`%s` is not a minimizer index", indexPath));
+            }
+            int version = is.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported minimizer index version %d in `%s`", version, indexPath));
+            }
+            int k = is.readInt(), w = is.readInt();
+            if (k < 4 || k > 31 || w < 1) {
+                throw new IOException(String.format("Invalid parameters k=%d and w=%d in `%s`", k, w, indexPath));
+            }
+            long fastaSize = is.readLong();
+            if (fastaSize != fastaSize(accessor)) {
+                throw new IOException(String.format("Fasta file size %d recorded in `%s` does not match the accessor", fastaSize, indexPath));
+            }
+            ReferenceDictionary rd = accessor.getReferenceDictionary();
+            int contigCount = is.readInt();
+            if (contigCount < 0 || contigCount > rd.getContigIDToName().size()) {
+                throw new IOException(String.format("Invalid number of contigs %d in `%s`", contigCount, indexPath));
+            }
+            int[] contigIds = new int[contigCount];
+            for (int i = 0; i < contigIds.length; i++) {
+                String name = is.readUTF();
+                int length = is.readInt();
+                Integer contigId = rd.getContigNameToID().get(name);
+                if (contigId == null || rd.getContigIDToLength().get(contigId) != length) {
+                    throw new IOException(String.format("Contig `%s` with length %d of `%s` does not match the accessor", name, length, indexPath));
+                }
+                contigIds[i] = contigId;
+            }
+            long[] contigOffsets = contigOffsets(contigIds, rd);
+
+            int[] bucketOffsets = new int[BUCKETS + 1];
+            int entryCount = is.readInt();
+            // each entry is stored in at least one byte
+            if (entryCount < 0 || entryCount > indexSize) {
+                throw new IOException(String.format("Invalid number of entries %d in `%s`", entryCount, indexPath));
+            }
+            long[] entries = new long[entryCount];
+            int size = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                bucketOffsets[b] = size;
+                int count = is.readInt();
+                if (count < 0 || count > entries.length - size) {
+                    throw new IOException(String.format("Invalid number of entries %d in bucket %d of `%s`", count, b, indexPath));
+                }
+                long previous = 0;
+                for (int i = 0; i < count; i++) {
+                    // stored as difference to the previous entry of the bucket
+                    previous += readVarLong(is);
+                    entries[size++] = previous;
+                }
+            }
+            if (size != entries.length) {
+                throw new IOException(String.format("Expected %d entries but found %d in `%s`", entries.length, size, indexPath));
+            }
+            bucketOffsets[BUCKETS] = size;
+            return new MinimizerIndex(accessor, k, w, contigIds, contigOffsets, bucketOffsets, entries);
+        }
+    }
+
+    /**
+     * Load the index from <code>indexPath</code> if the file exists and matches the accessor. Otherwise build the index
+     * and try to store it at <code>indexPath</code>.
+     *
+     * @see #build(GenomeSequenceAccessor, int, int, int)
+     */
+    public static MinimizerIndex readOrBuild(Path indexPath, GenomeSequenceAccessor accessor, int k, int w, int threads) throws InterruptedException {
+        if (Files.isRegularFile(indexPath)) {
+            try {
+                LOGGER.debug("Reading minimizer index from `{}`", indexPath);
+                MinimizerIndex index = read(indexPath, accessor);
+                if (index.k == k && index.w == w) {
+                    return index;
+                }
+                LOGGER.warn("Minimizer index at `{}` has k={} and w={}, rebuilding", indexPath, index.k, index.w);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to read minimizer index from `{}`, rebuilding: {}", indexPath, e.getMessage());
+            }
+        }
+        MinimizerIndex index = build(accessor, k, w, threads);
+        try {
+            index.write(indexPath);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to store minimizer index at `{}`: {}", indexPath, e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Store the index.
+     *
+     * @param indexPath where to store the index
+     * @throws IOException if the index cannot be written
+     */
+    public void write(Path indexPath) throws IOException {
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath), BUFFER_SIZE))) {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeInt(k);
+            os.writeInt(w);
+            os.writeLong(fastaSize(accessor));
+            os.writeInt(contigIds.length);
+            for (int contigId : contigIds) {
+                os.writeUTF(rd.getContigIDToName().get(contigId));
+                os.writeInt(rd.getContigIDToLength().get(contigId));
+            }
+            os.writeInt(entries.length);
+            for (int b = 0; b < BUCKETS; b++) {
+                os.writeInt(bucketOffsets[b + 1] - bucketOffsets[b]);
+                long previous = 0;
+                for (int i = bucketOffsets[b]; i < bucketOffsets[b + 1]; i++) {
+                    writeVarLong(os, entries[i] - previous);
+                    previous = entries[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return size of the fasta file read by the accessor or <code>-1</code> if the accessor does not read a fasta file
+     */
+    private static long fastaSize(GenomeSequenceAccessor accessor) throws IOException {
+        return accessor instanceof SingleFastaGenomeSequenceAccessor
+                ? Files.size(((SingleFastaGenomeSequenceAccessor) accessor).getFastaPath())
+                : -1;
+    }
+
+    private static void writeVarLong(DataOutputStream os, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            os.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        os.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream is) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = is.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length number");
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public int getW() {
+        return w;
+    }
+
+    /**
+     * @return minimum length of the queries, the length of a window
+     */
+    public int getMinimumQueryLength() {
+        return k + w - 1;
+    }
+
+    /**
+     * @return number of indexed minimizer positions
+     */
+    public int getEntryCount() {
+        return entries.length;
+    }
+
+    /**
+     * Find all exact occurrences of the sequence on both strands of the reference. The bases are compared ignoring the
+     * case.
+     *
+     * @param sequence query sequence, at least {@link #getMinimumQueryLength()} bases long
+     * @return intervals where the sequence occurs, the interval is on {@link Strand#REV} if the reverse complement of the
+     * sequence occurs on the forward strand. The intervals are sorted by contig, position and strand
+     * @throws IllegalArgumentException if the sequence is shorter than the minimum query length
+     */
+    public List<GenomeInterval> findExact(String sequence) {
+        int length = sequence.length();
+        if (length < getMinimumQueryLength()) {
+            throw new IllegalArgumentException(String.format("Sequence with %d bases is shorter than the minimum query length %d",
+                    length, getMinimumQueryLength()));
+        }
+        byte[] bases = sequence.getBytes(StandardCharsets.US_ASCII);
+
+        // the minimizer with the fewest hits, k-mer index, hash and strand
+        int[] best = {-1, 0, 0};
+        int[] bestHits = {Integer.MAX_VALUE};
+        minimizers(bases, 0, length, k, w, (kmer, hash, strand) -> {
+            int[] range = hitRange(hash);
+            int hits = range[1] - range[0];
+            if (hits < bestHits[0]) {
+                bestHits[0] = hits;
+                best[0] = kmer;
+                best[1] = hash;
+                best[2] = strand;
+            }
+        });
+        if (best[0] < 0) {
+            LOGGER.warn("Sequence `{}` has no window without ambiguous bases", sequence);
+            return List.of();
+        }
+
+        // candidate occurrences, contig ID, begin and strand packed into a long
+        SortedSet<Long> candidates = new TreeSet<>();
+        int[] range = hitRange(best[1]);
+        for (int i = range[0]; i < range[1]; i++) {
+            long location = entries[i] & LOCATION_MASK;
+            long position = location >>> 1;
+            int strand = (int) (location & 1);
+            int idx = Arrays.binarySearch(contigOffsets, position);
+            idx = idx < 0 ? -idx - 2 : idx;
+            // skip the empty contigs sharing the offset
+            while (contigOffsets[idx + 1] <= position) {
+                idx++;
+            }
+            int pos = (int) (position - contigOffsets[idx]);
+            if (best[2] == PALINDROME || strand == best[2]) {
+                addCandidate(candidates, idx, pos - best[0], length, false);
+            }
+            if (best[2] == PALINDROME || strand != best[2]) {
+                addCandidate(candidates, idx, pos - (length - best[0] - k), length, true);
+            }
+        }
+        return verify(sequence, candidates);
+    }
+
+    /**
+     * @return true if the sequence occurs exactly once on either strand of the reference
+     * @see #findExact(String)
+     */
+    public boolean isUnique(String sequence) {
+        return findExact(sequence).size() == 1;
+    }
+
+    private void addCandidate(SortedSet<Long> candidates, int contigIdx, int begin, int length, boolean reverse) {
+        if (begin >= 0 && begin + (long) length <= contigOffsets[contigIdx + 1] - contigOffsets[contigIdx]) {
+            candidates.add((long) contigIdx << 33 | (long) begin << 1 | (reverse ? 1 : 0));
+        }
+    }
+
+    private List<GenomeInterval> verify(String sequence, SortedSet<Long> candidates) {
+        int n = candidates.size();
+        int[] ids = new int[n], begins = new int[n], ends = new int[n];
+        boolean[] reverse = new boolean[n];
+        int row = 0;
+        for (long candidate : candidates) {
+            ids[row] = contigIds[(int) (candidate >>> 33)];
+            begins[row] = (int) ((candidate >>> 1) & 0xFFFFFFFFL);
+            ends[row] = begins[row] + sequence.length();
+            reverse[row] = (candidate & 1) == 1;
+            row++;
+        }
+        SequenceBatch batch = accessor.fetchSequences(ids, begins, ends, reverse);
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        List<GenomeInterval> occurrences = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (batch.isOk(i) && batch.getSequence(i).equalsIgnoreCase(sequence)) {
+                GenomeInterval interval = new GenomeInterval(rd, Strand.FWD, ids[i], begins[i], ends[i]);
+                occurrences.add(reverse[i] ? interval.withStrand(Strand.REV) : interval);
+            }
+        }
+        return occurrences;
+    }
+
+    /**
+     * @return range of the entries with the hash, <code>[begin, end)</code>
+     */
+    private int[] hitRange(int hash) {
+        int bucket = hash >>> BUCKET_BITS;
+        long low = (long) (hash & 0xFFFF) << LOCATION_BITS;
+        return new int[]{lowerBound(bucketOffsets[bucket], bucketOffsets[bucket + 1], low),
+                lowerBound(bucketOffsets[bucket], bucketOffsets[bucket + 1], low + (1L << LOCATION_BITS))};
+    }
+
+    private int lowerBound(int from, int to, long value) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entries[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Report the minimizers of all windows of <code>w</code> k-mers without ambiguous bases. Each k-mer is reported at
+     * most once, all k-mers sharing the smallest hash of a window are reported.
+     */
+    private static void minimizers(byte[] bases, int offset, int length, int k, int w, MinimizerConsumer consumer) {
+        int kmers = length - k + 1;
+        if (kmers < w) {
+            return;
+        }
+        int[] hashes = new int[kmers];
+        byte[] strands = new byte[kmers];
+        // monotone deque of the k-mer indices, the hashes are non-decreasing from head to tail
+        int[] deque = new int[kmers];
+        int head = 0, tail = 0;
+        long mask = (1L << 2 * k) - 1;
+        int shift = 2 * (k - 1);
+        long fwd = 0, rev = 0;
+        int validBases = 0, validKmers = 0, lastReported = -1;
+        for (int i = 0; i < length; i++) {
+            int code = CODES[bases[offset + i] & 0xFF];
+            if (code < 0) {
+                validBases = validKmers = 0;
+                head = tail = 0;
+                continue;
+            }
+            fwd = (fwd << 2 | code) & mask;
+            rev = rev >>> 2 | (long) (3 - code) << shift;
+            if (++validBases < k) {
+                continue;
+            }
+            int kmer = i - k + 1;
+            hashes[kmer] = hash(Math.min(fwd, rev));
+            strands[kmer] = (byte) (fwd < rev ? FORWARD : fwd > rev ? REVERSE : PALINDROME);
+            while (tail > head && Integer.compareUnsigned(hashes[deque[tail - 1]], hashes[kmer]) > 0) {
+                tail--;
+            }
+            deque[tail++] = kmer;
+            if (++validKmers < w) {
+                continue;
+            }
+            int windowStart = kmer - w + 1;
+            while (deque[head] < windowStart) {
+                head++;
+            }
+            int minimum = hashes[deque[head]];
+            for (int j = head; j < tail && hashes[deque[j]] == minimum; j++) {
+                if (deque[j] > lastReported) {
+                    lastReported = deque[j];
+                    consumer.accept(deque[j], minimum, strands[deque[j]]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invertible 64-bit mix of the canonical k-mer, upper 32 bits.
+     */
+    private static int hash(long kmer) {
+        long h = kmer;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) (h >>> 32);
+    }
+
+    private static byte[] makeCodes() {
+        byte[] codes = new byte[256];
+        Arrays.fill(codes, (byte) -1);
+        codes['A'] = codes['a'] = 0;
+        codes['C'] = codes['c'] = 1;
+        codes['G'] = codes['g'] = 2;
+        codes['T'] = codes['t'] = 3;
+        return codes;
+    }
+
+    @FunctionalInterface
+    private interface MinimizerConsumer {
+        void accept(int kmer, int hash, int strand);
+    }
+
+    /**
+     * Minimizers found by a build task.
+     */
+    private static final class Entries {
+
+        private int[] hashes;
+        private long[] locations;
+        private int size;
+
+        private Entries(int capacity) {
+            this.hashes = new int[capacity];
+            this.locations = new long[capacity];
+        }
+
+        private void add(int hash, long location) {
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+                locations = Arrays.copyOf(locations, size * 2);
+            }
+            hashes[size] = hash;
+            locations[size++] = location;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.GenomeVariant;
+
+import java.util.Objects;
+
+/**
+ * Variant normalized by {@link IndelNormalizer}.
+ */
+public final class NormalizedVariant {
+
+    private final GenomeVariant variant;
+
+    private final GenomeInterval equivalentRange;
+
+    private final String repeatUnit;
+
+    private final int vcfPosition;
+
+    private final String vcfRef;
+
+    private final String vcfAlt;
+
+    NormalizedVariant(GenomeVariant variant, GenomeInterval equivalentRange, String repeatUnit,
+                      int vcfPosition, String vcfRef, String vcfAlt) {
+        this.variant = variant;
+        this.equivalentRange = equivalentRange;
+        this.repeatUnit = repeatUnit;
+        this.vcfPosition = vcfPosition;
+        this.vcfRef = vcfRef;
+        this.vcfAlt = vcfAlt;
+    }
+
+    /**
+     * @return trimmed and left-aligned variant on {@link de.charite.compbio.jannovar.reference.Strand#FWD}
+     */
+    public GenomeVariant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Get reference region spanned by all equivalent placements of the indel. For a deletion, the region contains all
+     * bases that can be deleted by an equivalent deletion. For an insertion, the region contains the bases between
+     * the leftmost and the rightmost insertion point, hence the region is empty if the insertion cannot be shifted.
+     * The region of a variant that is not an indel is the region of the variant.
+     *
+     * @return region spanned by the equivalent placements on {@link de.charite.compbio.jannovar.reference.Strand#FWD}
+     */
+    public GenomeInterval getEquivalentRange() {
+        return equivalentRange;
+    }
+
+    /**
+     * @return the shortest sequence whose repetition forms the left-aligned inserted or deleted sequence, e.g.
+     * <code>CA</code> for deletion of <code>CACA</code>, or an empty string if the variant is not an indel
+     */
+    public String getRepeatUnit() {
+        return repeatUnit;
+    }
+
+    /**
+     * @return <code>true</code> if the variant is an insertion or a deletion
+     */
+    public boolean isIndel() {
+        return variant.getRef().isEmpty() != variant.getAlt().isEmpty();
+    }
+
+    /**
+     * @return 1-based VCF position of the left-aligned variant, including the padding base
+     */
+    public int getVcfPosition() {
+        return vcfPosition;
+    }
+
+    /**
+     * @return VCF REF allele of the left-aligned variant, including the padding base
+     */
+    public String getVcfRef() {
+        return vcfRef;
+    }
+
+    /**
+     * @return VCF ALT allele of the left-aligned variant, including the padding base
+     */
+    public String getVcfAlt() {
+        return vcfAlt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NormalizedVariant that = (NormalizedVariant) o;
+        return vcfPosition == that.vcfPosition &&
+                Objects.equals(variant, that.variant) &&
+                Objects.equals(equivalentRange, that.equivalentRange) &&
+                Objects.equals(repeatUnit, that.repeatUnit) &&
+                Objects.equals(vcfRef, that.vcfRef) &&
+                Objects.equals(vcfAlt, that.vcfAlt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(variant, equivalentRange, repeatUnit, vcfPosition, vcfRef, vcfAlt);
+    }
+
+    @Override
+    public String toString() {
+        return "NormalizedVariant{" +
+                "variant=" + variant +
+                ", equivalentRange=" + equivalentRange +
+                ", repeatUnit=" + repeatUnit +
+                ", vcf=" + vcfPosition + ":" + vcfRef + ">" + vcfAlt + "}";
+    }
+}
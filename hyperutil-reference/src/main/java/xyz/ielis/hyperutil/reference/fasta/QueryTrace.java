@@ -0,0 +1,171 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.reference.Strand;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sequence queries recorded by {@link RecordingGenomeSequenceAccessor}.
+ * <p>
+ * The trace is stored in a compact binary format. The header contains the names of the contigs, followed by one
+ * fixed-size record per query: contig ID, 0-based begin and end on the forward strand, strand, ID of the querying
+ * thread, and the time of the query in nanoseconds since the start of the recording.
+ * </p>
+ */
+public class QueryTrace {
+
+    /**
+     * Magic number of the trace, `HUQT` in ASCII.
+     */
+    static final int MAGIC = 0x48555154;
+
+    static final int VERSION = 1;
+
+    static final byte FWD = 0;
+
+    static final byte REV = 1;
+
+    private final Map<Integer, String> contigNames;
+
+    private final int[] contigs;
+    private final int[] begins;
+    private final int[] ends;
+    private final byte[] strands;
+    private final long[] threads;
+    private final long[] timestamps;
+
+    private QueryTrace(Map<Integer, String> contigNames, int[] contigs, int[] begins, int[] ends, byte[] strands,
+                       long[] threads, long[] timestamps) {
+        this.contigNames = contigNames;
+        this.contigs = contigs;
+        this.begins = begins;
+        this.ends = ends;
+        this.strands = strands;
+        this.threads = threads;
+        this.timestamps = timestamps;
+    }
+
+    /**
+     * Read the trace.
+     *
+     * @param tracePath path to trace written by {@link RecordingGenomeSequenceAccessor}
+     * @return the trace
+     * @throws IOException if the trace cannot be read
+     */
+    public static QueryTrace read(Path tracePath) throws IOException {
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(tracePath), 1 << 16))) {
+            if (is.readInt() != MAGIC) {
+                throw new IOException(String.format("`%s` is not a query trace", tracePath));
+            }
+            int version = is.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported query trace version %d in `%s`", version, tracePath));
+            }
+            int contigCount = is.readInt();
+            Map<Integer, String> contigNames = new HashMap<>();
+            for (int i = 0; i < contigCount; i++) {
+                int id = is.readInt();
+                contigNames.put(id, is.readUTF());
+            }
+
+            int capacity = 1024, size = 0;
+            int[] contigs = new int[capacity], begins = new int[capacity], ends = new int[capacity];
+            byte[] strands = new byte[capacity];
+            long[] threads = new long[capacity], timestamps = new long[capacity];
+            while (true) {
+                int contig;
+                try {
+                    contig = is.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (size == capacity) {
+                    capacity *= 2;
+                    contigs = Arrays.copyOf(contigs, capacity);
+                    begins = Arrays.copyOf(begins, capacity);
+                    ends = Arrays.copyOf(ends, capacity);
+                    strands = Arrays.copyOf(strands, capacity);
+                    threads = Arrays.copyOf(threads, capacity);
+                    timestamps = Arrays.copyOf(timestamps, capacity);
+                }
+                contigs[size] = contig;
+                begins[size] = is.readInt();
+                ends[size] = is.readInt();
+                strands[size] = is.readByte();
+                threads[size] = is.readLong();
+                timestamps[size] = is.readLong();
+                size++;
+            }
+            return new QueryTrace(Map.copyOf(contigNames),
+                    Arrays.copyOf(contigs, size), Arrays.copyOf(begins, size), Arrays.copyOf(ends, size),
+                    Arrays.copyOf(strands, size), Arrays.copyOf(threads, size), Arrays.copyOf(timestamps, size));
+        }
+    }
+
+    static void writeHeader(DataOutputStream os, Map<Integer, String> contigNames) throws IOException {
+        os.writeInt(MAGIC);
+        os.writeInt(VERSION);
+        os.writeInt(contigNames.size());
+        for (Map.Entry<Integer, String> entry : contigNames.entrySet()) {
+            os.writeInt(entry.getKey());
+            os.writeUTF(entry.getValue());
+        }
+    }
+
+    static void writeRecord(DataOutputStream os, int contig, int begin, int end, byte strand, long thread, long timestamp) throws IOException {
+        os.writeInt(contig);
+        os.writeInt(begin);
+        os.writeInt(end);
+        os.writeByte(strand);
+        os.writeLong(thread);
+        os.writeLong(timestamp);
+    }
+
+    /**
+     * @return number of recorded queries
+     */
+    public int size() {
+        return contigs.length;
+    }
+
+    /**
+     * @param contigId contig ID used in the trace
+     * @return name of the contig or <code>null</code> if the ID is unknown
+     */
+    public String getContigName(int contigId) {
+        return contigNames.get(contigId);
+    }
+
+    public int getContig(int i) {
+        return contigs[i];
+    }
+
+    public int getBegin(int i) {
+        return begins[i];
+    }
+
+    public int getEnd(int i) {
+        return ends[i];
+    }
+
+    public Strand getStrand(int i) {
+        return strands[i] == REV ? Strand.REV : Strand.FWD;
+    }
+
+    public long getThread(int i) {
+        return threads[i];
+    }
+
+    /**
+     * @param i index of the query
+     * @return time of the query in nanoseconds since the start of the recording
+     */
+    public long getTimestamp(int i) {
+        return timestamps[i];
+    }
+}
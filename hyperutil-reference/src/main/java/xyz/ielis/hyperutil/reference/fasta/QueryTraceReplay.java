@@ -0,0 +1,243 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import htsjdk.samtools.SAMException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a {@link QueryTrace} against a {@link GenomeSequenceAccessor} and reports the latency distribution and the
+ * throughput of the queries. The replay allows to compare the accessor types using the real access pattern of an
+ * application.
+ * <p>
+ * The queries are issued in the order of the trace by the given number of threads, either as fast as possible, or at
+ * the original pace. When replaying at the original pace, the latency is measured from the time when the query was
+ * supposed to be issued, hence the delays caused by the preceding slow queries are included.
+ * </p>
+ * <p>
+ * Run <code>QueryTraceReplay trace.bin genome.fa TYPE [threads] [ORIGINAL|MAXIMUM]</code> to replay the trace from
+ * the command line, the report is logged at the <code>INFO</code> level.
+ * </p>
+ */
+public class QueryTraceReplay {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryTraceReplay.class);
+
+    private QueryTraceReplay() {
+        // private no-op
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            throw new IllegalArgumentException("Usage: QueryTraceReplay <trace> <fasta> <SINGLE_FASTA|SINGLE_CHROMOSOME|AUTO> [threads] [ORIGINAL|MAXIMUM]");
+        }
+        Path trace = Paths.get(args[0]);
+        GenomeSequenceAccessorBuilder builder = GenomeSequenceAccessorBuilder.builder().setFastaPath(Paths.get(args[1]));
+        GenomeSequenceAccessor.Type type = GenomeSequenceAccessor.Type.valueOf(args[2]);
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        Pace pace = args.length > 4 ? Pace.valueOf(args[4]) : Pace.MAXIMUM;
+
+        LOGGER.info("{}", replay(trace, builder, type, pace, threads));
+    }
+
+    /**
+     * Build the accessor of given <code>type</code> and replay the trace against it. The <code>builder</code> is not
+     * modified, the accessor is built by a copy of the builder.
+     *
+     * @param tracePath path to the trace
+     * @param builder   builder configured with the fasta file
+     * @param type      type of the accessor to replay the trace against
+     * @param pace      pace of the replay
+     * @param threads   number of threads issuing the queries
+     * @return the report
+     * @throws IOException          if the trace cannot be read or the accessor cannot be closed
+     * @throws InterruptedException if interrupted while waiting for the replay to finish
+     */
+    public static Report replay(Path tracePath, GenomeSequenceAccessorBuilder builder, GenomeSequenceAccessor.Type type,
+                                Pace pace, int threads) throws IOException, InterruptedException {
+        QueryTrace trace = QueryTrace.read(tracePath);
+        try (GenomeSequenceAccessor accessor = builder.copy().setType(type).build()) {
+            return replay(trace, accessor, pace, threads);
+        }
+    }
+
+    /**
+     * Replay the trace against the accessor.
+     *
+     * @param trace    trace to replay
+     * @param accessor accessor to query
+     * @param pace     pace of the replay
+     * @param threads  number of threads issuing the queries
+     * @return the report
+     * @throws InterruptedException if interrupted while waiting for the replay to finish
+     */
+    public static Report replay(QueryTrace trace, GenomeSequenceAccessor accessor, Pace pace, int threads) throws InterruptedException {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format("Number of threads must be positive: %d", threads));
+        }
+        GenomeInterval[] queries = makeQueries(trace, accessor.getReferenceDictionary());
+        long[] latencies = new long[queries.length];
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong failures = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>(threads);
+        long start = System.nanoTime();
+        long origin = queries.length == 0 ? 0 : trace.getTimestamp(0);
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < queries.length) {
+                        long issued;
+                        if (pace == Pace.ORIGINAL) {
+                            issued = start + trace.getTimestamp(i) - origin;
+                            long wait;
+                            while ((wait = issued - System.nanoTime()) > 0) {
+                                LockSupport.parkNanos(wait);
+                            }
+                        } else {
+                            issued = System.nanoTime();
+                        }
+
+                        if (queries[i] == null || !fetch(accessor, queries[i])) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[i] = System.nanoTime() - issued;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replay failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Report(queries.length, failures.get(), elapsed,
+                percentile(latencies, .5), percentile(latencies, .99), percentile(latencies, .999));
+    }
+
+    private static boolean fetch(GenomeSequenceAccessor accessor, GenomeInterval query) {
+        try {
+            return accessor.fetchSequence(query).isPresent();
+        } catch (SAMException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Translate the trace records to queries using the contig names. The query is <code>null</code> if the contig is
+     * not known to the accessor or if the record is not a valid interval on the contig.
+     */
+    private static GenomeInterval[] makeQueries(QueryTrace trace, ReferenceDictionary rd) {
+        GenomeInterval[] queries = new GenomeInterval[trace.size()];
+        for (int i = 0; i < trace.size(); i++) {
+            Integer contigId = rd.getContigNameToID().get(trace.getContigName(trace.getContig(i)));
+            if (contigId != null && 0 <= trace.getBegin(i) && trace.getBegin(i) <= trace.getEnd(i)
+                    && trace.getEnd(i) <= rd.getContigIDToLength().get(contigId)) {
+                GenomeInterval query = new GenomeInterval(rd, Strand.FWD, contigId, trace.getBegin(i), trace.getEnd(i));
+                queries[i] = query.withStrand(trace.getStrand(i));
+            }
+        }
+        return queries;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int idx = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+    }
+
+    public enum Pace {
+        /**
+         * Issue the queries with the delays observed during recording.
+         */
+        ORIGINAL,
+        /**
+         * Issue the queries as fast as possible.
+         */
+        MAXIMUM
+    }
+
+    /**
+     * Summary of a replay. Latencies are in nanoseconds.
+     */
+    public static final class Report {
+
+        private final int queryCount;
+        private final long failureCount;
+        private final long elapsedNanos;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+
+        private Report(int queryCount, long failureCount, long elapsedNanos, long p50, long p99, long p999) {
+            this.queryCount = queryCount;
+            this.failureCount = failureCount;
+            this.elapsedNanos = elapsedNanos;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+        }
+
+        public int getQueryCount() {
+            return queryCount;
+        }
+
+        /**
+         * @return number of queries that did not return a sequence
+         */
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        /**
+         * @return number of queries per second
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0. : queryCount * 1E9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("REPLAY{queries=%d, failures=%d, elapsed=%.3fs, throughput=%.1f/s, p50=%.1fus, p99=%.1fus, p999=%.1fus}",
+                    queryCount, failureCount, elapsedNanos / 1E9, getThroughput(), p50 / 1E3, p99 / 1E3, p999 / 1E3);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Accessor decorator that records every query into a {@link QueryTrace} before delegating it to the underlying
+ * accessor. The trace can be replayed against other accessor types by {@link QueryTraceReplay}.
+ * <p>
+ * Queries for unknown contigs are delegated, but not recorded. Closing the accessor flushes the trace and closes the
+ * underlying accessor.
+ * </p>
+ * <p>
+ * This class is thread-safe if the underlying accessor is thread-safe.
+ * </p>
+ */
+public class RecordingGenomeSequenceAccessor implements GenomeSequenceAccessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordingGenomeSequenceAccessor.class);
+
+    private final GenomeSequenceAccessor accessor;
+
+    private final DataOutputStream trace;
+
+    private final long origin;
+
+    private boolean closed = false;
+
+    RecordingGenomeSequenceAccessor(GenomeSequenceAccessor accessor, Path tracePath) throws IOException {
+        this.accessor = Objects.requireNonNull(accessor, "Accessor cannot be null");
+        this.trace = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tracePath), 1 << 16));
+        QueryTrace.writeHeader(trace, accessor.getReferenceDictionary().getContigIDToName());
+        this.origin = System.nanoTime();
+    }
+
+    /**
+     * Create the recording accessor.
+     *
+     * @param accessor  accessor to delegate the queries to
+     * @param tracePath where to write the trace
+     * @return the recording accessor
+     * @throws IOException if the trace cannot be created
+     */
+    public static RecordingGenomeSequenceAccessor of(GenomeSequenceAccessor accessor, Path tracePath) throws IOException {
+        return new RecordingGenomeSequenceAccessor(accessor, tracePath);
+    }
+
+    @Override
+    public ReferenceDictionary getReferenceDictionary() {
+        return accessor.getReferenceDictionary();
+    }
+
+    @Override
+    public String fetchSequence(String chromosome, int begin, int end) {
+        Integer contigId = accessor.getReferenceDictionary().getContigNameToID().get(chromosome);
+        if (contigId != null) {
+            record(contigId, begin - 1, end, QueryTrace.FWD);
+        }
+        return accessor.fetchSequence(chromosome, begin, end);
+    }
+
+    @Override
+    public Optional<SequenceInterval> fetchSequence(GenomeInterval interval) {
+        String contigName = interval.getRefDict().getContigIDToName().get(interval.getChr());
+        Integer contigId = accessor.getReferenceDictionary().getContigNameToID().get(contigName);
+        if (contigId != null) {
+            GenomeInterval onFwd = interval.withStrand(Strand.FWD);
+            record(contigId, onFwd.getBeginPos(), onFwd.getEndPos(),
+                    interval.getStrand() == Strand.REV ? QueryTrace.REV : QueryTrace.FWD);
+        }
+        return accessor.fetchSequence(interval);
+    }
+
+    /**
+     * Record each row of the batch and delegate the batch to the underlying accessor.
+     */
+    @Override
+    public SequenceBatch fetchSequences(int[] contigIds, int[] begins, int[] ends, boolean[] reverseStrand) {
+        if (begins.length == contigIds.length && ends.length == contigIds.length
+                && (reverseStrand == null || reverseStrand.length == contigIds.length)) {
+            Map<Integer, String> contigNames = accessor.getReferenceDictionary().getContigIDToName();
+            long timestamp = System.nanoTime() - origin;
+            long thread = Thread.currentThread().getId();
+            synchronized (trace) {
+                for (int i = 0; i < contigIds.length && !closed; i++) {
+                    if (contigNames.containsKey(contigIds[i])) {
+                        byte strand = reverseStrand != null && reverseStrand[i] ? QueryTrace.REV : QueryTrace.FWD;
+                        write(contigIds[i], begins[i], ends[i], strand, thread, timestamp);
+                    }
+                }
+            }
+        }
+        return accessor.fetchSequences(contigIds, begins, ends, reverseStrand);
+    }
+
+    private void record(int contigId, int begin, int end, byte strand) {
+        long timestamp = System.nanoTime() - origin;
+        long thread = Thread.currentThread().getId();
+        synchronized (trace) {
+            if (!closed) {
+                write(contigId, begin, end, strand, thread, timestamp);
+            }
+        }
+    }
+
+    private void write(int contigId, int begin, int end, byte strand, long thread, long timestamp) {
+        try {
+            QueryTrace.writeRecord(trace, contigId, begin, end, strand, thread, timestamp);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> getReadiness() {
+        return accessor.getReadiness();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (trace) {
+            if (!closed) {
+                closed = true;
+                trace.close();
+                LOGGER.debug("Closed query trace after {} bytes", trace.size());
+            }
+        }
+        accessor.close();
+    }
+}
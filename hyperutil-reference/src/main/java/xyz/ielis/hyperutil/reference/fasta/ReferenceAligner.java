@@ -0,0 +1,227 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Aligns short query sequences, such as reads, assembled contigs or primers, to reference windows fetched from a
+ * {@link GenomeSequenceAccessor}. The query is aligned locally using a banded Smith-Waterman algorithm with affine gap
+ * penalties, the band width is the maximum net length of indels within the alignment.
+ * <p>
+ * The scoring matrices are owned by a {@link Worker} and reused by all alignments done by the worker, growing with the
+ * largest problem the worker has aligned. The matrices are released together with the worker, nothing is retained by
+ * the threads. Use {@link #newWorker()} to align many queries on one thread without allocating per alignment. The
+ * parallel batch API uses one worker per chunk of the batch. The windows of a batch are fetched by a single
+ * {@link GenomeSequenceAccessor#fetchSequences(int[], int[], int[], boolean[])} query.
+ * </p>
+ * <p>
+ * This class is thread-safe if the underlying accessor is thread-safe.
+ * </p>
+ */
+public class ReferenceAligner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceAligner.class);
+
+    static final int DEFAULT_BAND_WIDTH = 32;
+
+    /**
+     * Minimum number of alignments processed by a single task of the batch.
+     */
+    private static final int MIN_CHUNK_SIZE = 64;
+
+    private final GenomeSequenceAccessor accessor;
+
+    private final AlignmentScoring scoring;
+
+    private final int bandWidth;
+
+    private ReferenceAligner(GenomeSequenceAccessor accessor, AlignmentScoring scoring, int bandWidth) {
+        this.accessor = accessor;
+        this.scoring = scoring;
+        this.bandWidth = bandWidth;
+    }
+
+    public static ReferenceAligner of(GenomeSequenceAccessor accessor) {
+        return of(accessor, AlignmentScoring.defaults(), DEFAULT_BAND_WIDTH);
+    }
+
+    /**
+     * @param accessor  accessor to fetch the reference windows from
+     * @param scoring   alignment scores
+     * @param bandWidth maximum net length of indels within the alignment
+     * @return the aligner
+     */
+    public static ReferenceAligner of(GenomeSequenceAccessor accessor, AlignmentScoring scoring, int bandWidth) {
+        if (bandWidth < 0) {
+            throw new IllegalArgumentException(String.format("Band width must be non-negative: %d", bandWidth));
+        }
+        return new ReferenceAligner(accessor, scoring, bandWidth);
+    }
+
+    public AlignmentScoring getScoring() {
+        return scoring;
+    }
+
+    public int getBandWidth() {
+        return bandWidth;
+    }
+
+    /**
+     * @return a new worker with its own scoring matrices
+     */
+    public Worker newWorker() {
+        return new Worker();
+    }
+
+    /**
+     * Align the query to the reference window. The scoring matrices are allocated by each call, use
+     * {@link #newWorker()} to align many queries.
+     *
+     * @param query  query sequence, on the strand of the window
+     * @param window reference window
+     * @return the best local alignment or empty optional if the window cannot be fetched or there is no alignment
+     * with positive score
+     */
+    public Optional<ReferenceAlignment> align(String query, GenomeInterval window) {
+        return newWorker().align(query, window);
+    }
+
+    /**
+     * Align the queries to the corresponding reference windows on the current thread, reusing the scoring matrices
+     * within the batch.
+     *
+     * @param queries query sequences, on the strand of the corresponding window
+     * @param windows reference windows
+     * @return the best local alignments in the order of the queries
+     * @throws IllegalArgumentException if the number of queries and windows differ
+     */
+    public List<Optional<ReferenceAlignment>> alignAll(List<String> queries, List<GenomeInterval> windows) {
+        return newWorker().alignAll(queries, windows);
+    }
+
+    /**
+     * Align the queries to the corresponding reference windows using the executor. The batch is split into chunks of
+     * consecutive queries, the chunks are processed in parallel.
+     *
+     * @param queries  query sequences, on the strand of the corresponding window
+     * @param windows  reference windows
+     * @param executor executor to run the alignments on
+     * @param threads  number of chunks to split the batch into, typically the number of executor threads
+     * @return the best local alignments in the order of the queries
+     * @throws IllegalArgumentException if the number of queries and windows differ
+     * @throws InterruptedException     if interrupted while waiting for the alignments
+     */
+    public List<Optional<ReferenceAlignment>> alignAll(List<String> queries, List<GenomeInterval> windows,
+                                                       ExecutorService executor, int threads) throws InterruptedException {
+        checkBatch(queries, windows);
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format("Number of threads must be positive: %d", threads));
+        }
+        int size = queries.size();
+        // results are written to distinct indices of the list by the tasks, the list is not resized
+        List<Optional<ReferenceAlignment>> results = new ArrayList<>(Collections.nCopies(size, Optional.empty()));
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (size + threads - 1) / threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < size; from += chunkSize) {
+            int begin = from, end = Math.min(size, from + chunkSize);
+            futures.add(executor.submit(() -> new Worker().alignChunk(queries, windows, begin, end, results)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error aligning the batch", e.getCause());
+        }
+        return results;
+    }
+
+    private static void checkBatch(List<String> queries, List<GenomeInterval> windows) {
+        if (queries.size() != windows.size()) {
+            throw new IllegalArgumentException(String.format("Number of queries %d and windows %d differ",
+                    queries.size(), windows.size()));
+        }
+    }
+
+    /**
+     * Aligner with its own scoring matrices. The matrices are reused by all alignments of the worker and grow with the
+     * largest problem it has aligned, they are released together with the worker.
+     * <p>
+     * This class is not thread-safe, use one worker per thread.
+     * </p>
+     */
+    public final class Worker {
+
+        private final BandedAligner aligner = new BandedAligner(scoring, bandWidth);
+
+        private Worker() {
+            // created by newWorker()
+        }
+
+        /**
+         * Align the query to the reference window.
+         *
+         * @see ReferenceAligner#align(String, GenomeInterval)
+         */
+        public Optional<ReferenceAlignment> align(String query, GenomeInterval window) {
+            return alignAll(List.of(query), List.of(window)).get(0);
+        }
+
+        /**
+         * Align the queries to the corresponding reference windows.
+         *
+         * @see ReferenceAligner#alignAll(List, List)
+         */
+        public List<Optional<ReferenceAlignment>> alignAll(List<String> queries, List<GenomeInterval> windows) {
+            checkBatch(queries, windows);
+            List<Optional<ReferenceAlignment>> results = new ArrayList<>(Collections.nCopies(queries.size(), Optional.empty()));
+            alignChunk(queries, windows, 0, queries.size(), results);
+            return results;
+        }
+
+        private void alignChunk(List<String> queries, List<GenomeInterval> windows, int from, int to,
+                                List<Optional<ReferenceAlignment>> results) {
+            // fetch all windows of the chunk at once, translating the contigs to the accessor's dictionary
+            ReferenceDictionary rd = accessor.getReferenceDictionary();
+            int n = to - from;
+            int[] contigIds = new int[n], begins = new int[n], ends = new int[n];
+            boolean[] reverse = new boolean[n];
+            for (int k = 0; k < n; k++) {
+                GenomeInterval window = windows.get(from + k);
+                String contig = window.getRefDict().getContigIDToName().get(window.getChr());
+                Integer contigId = contig == null ? null : rd.getContigNameToID().get(contig);
+                GenomeInterval forward = window.withStrand(Strand.FWD);
+                contigIds[k] = contigId == null ? -1 : contigId;
+                begins[k] = forward.getBeginPos();
+                ends[k] = forward.getEndPos();
+                reverse[k] = window.getStrand() == Strand.REV;
+            }
+            SequenceBatch batch = accessor.fetchSequences(contigIds, begins, ends, reverse);
+
+            byte[] bases = batch.getBases();
+            int[] offsets = batch.getOffsets();
+            for (int k = 0; k < n; k++) {
+                GenomeInterval window = windows.get(from + k);
+                if (!batch.isOk(k)) {
+                    LOGGER.warn("Unable to fetch reference window `{}`", window);
+                    continue;
+                }
+                aligner.setQuery(queries.get(from + k));
+                if (aligner.align(bases, offsets[k], batch.getLength(k))) {
+                    GenomeInterval reference = new GenomeInterval(window.getRefDict(), window.getStrand(), window.getChr(),
+                            window.getBeginPos() + aligner.getReferenceBegin(), window.getBeginPos() + aligner.getReferenceEnd());
+                    results.set(from + k, Optional.of(new ReferenceAlignment(aligner.getQueryBegin(), aligner.getQueryEnd(),
+                            reference, aligner.getScore(), aligner.getCigar(), aligner.getEditDistance())));
+                }
+            }
+        }
+    }
+}
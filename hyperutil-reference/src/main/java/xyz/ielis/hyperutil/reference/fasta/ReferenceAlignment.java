@@ -0,0 +1,100 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+
+import java.util.Objects;
+
+/**
+ * Local alignment of a query sequence to a reference window, produced by {@link ReferenceAligner}.
+ */
+public final class ReferenceAlignment {
+
+    private final int queryBegin;
+
+    private final int queryEnd;
+
+    private final GenomeInterval reference;
+
+    private final int score;
+
+    private final String cigar;
+
+    private final int editDistance;
+
+    ReferenceAlignment(int queryBegin, int queryEnd, GenomeInterval reference, int score, String cigar, int editDistance) {
+        this.queryBegin = queryBegin;
+        this.queryEnd = queryEnd;
+        this.reference = reference;
+        this.score = score;
+        this.cigar = cigar;
+        this.editDistance = editDistance;
+    }
+
+    /**
+     * @return 0-based position of the first aligned query base
+     */
+    public int getQueryBegin() {
+        return queryBegin;
+    }
+
+    /**
+     * @return 0-based position after the last aligned query base
+     */
+    public int getQueryEnd() {
+        return queryEnd;
+    }
+
+    /**
+     * @return aligned reference region, on the strand of the window
+     */
+    public GenomeInterval getReference() {
+        return reference;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return CIGAR string of the aligned part of the query using <code>M</code>, <code>I</code>, and <code>D</code>
+     * operations, e.g. <code>20M2I10M</code>
+     */
+    public String getCigar() {
+        return cigar;
+    }
+
+    /**
+     * @return number of mismatched, inserted, and deleted bases of the aligned part of the query
+     */
+    public int getEditDistance() {
+        return editDistance;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ReferenceAlignment that = (ReferenceAlignment) o;
+        return queryBegin == that.queryBegin &&
+                queryEnd == that.queryEnd &&
+                score == that.score &&
+                editDistance == that.editDistance &&
+                Objects.equals(reference, that.reference) &&
+                Objects.equals(cigar, that.cigar);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(queryBegin, queryEnd, reference, score, cigar, editDistance);
+    }
+
+    @Override
+    public String toString() {
+        return "ReferenceAlignment{" +
+                "query=[" + queryBegin + "," + queryEnd + ")" +
+                ", reference=" + reference +
+                ", score=" + score +
+                ", cigar=" + cigar +
+                ", editDistance=" + editDistance + "}";
+    }
+}
@@ -0,0 +1,135 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import htsjdk.samtools.SAMException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Window of reference bases that grows on demand. The bases outside of the window are fetched from the accessor in
+ * chunks, each chunk in the same direction is twice as large as the previous one. Hence, walking <code>n</code> bases
+ * away from the window takes <code>O(log n)</code> queries.
+ * <p>
+ * The instance is not thread-safe.
+ * </p>
+ */
+final class ReferenceWindow {
+
+    static final int INITIAL_CHUNK = 64;
+
+    private final GenomeSequenceAccessor accessor;
+
+    private String contig;
+
+    private int contigLength;
+
+    /**
+     * Upper case bases of the window, <code>bases[0]</code> is the base at <code>start</code>.
+     */
+    private byte[] bases = new byte[0];
+
+    private int start, length;
+
+    private int leftChunk, rightChunk;
+
+    ReferenceWindow(GenomeSequenceAccessor accessor) {
+        this.accessor = accessor;
+    }
+
+    /**
+     * Drop the bases and start a new window on the contig. The bases are fetched lazily.
+     *
+     * @param contig       primary name of the contig
+     * @param contigLength length of the contig
+     * @param position     0-based position the window will start at
+     */
+    void reset(String contig, int contigLength, int position) {
+        this.contig = contig;
+        this.contigLength = contigLength;
+        this.start = position;
+        this.length = 0;
+        resetChunks();
+    }
+
+    /**
+     * Let the next extension start with the initial chunk size again.
+     */
+    void resetChunks() {
+        this.leftChunk = INITIAL_CHUNK;
+        this.rightChunk = INITIAL_CHUNK;
+    }
+
+    String getContig() {
+        return contig;
+    }
+
+    int getContigLength() {
+        return contigLength;
+    }
+
+    int getStart() {
+        return start;
+    }
+
+    int getEnd() {
+        return start + length;
+    }
+
+    /**
+     * @param position 0-based position on the contig
+     * @return upper case base at the position
+     * @throws SAMException if the position is outside of the contig or the bases cannot be fetched
+     */
+    byte base(int position) throws SAMException {
+        if (position < start) {
+            extendLeft(position);
+        } else if (position >= start + length) {
+            extendRight(position);
+        }
+        return bases[position - start];
+    }
+
+    private void extendLeft(int position) {
+        if (position < 0) {
+            throw new SAMException(String.format("Position %d is outside of contig `%s`", position, contig));
+        }
+        int newStart = Math.max(0, Math.min(position, start - leftChunk));
+        leftChunk *= 2;
+        byte[] chunk = fetch(newStart, start);
+        byte[] extended = new byte[chunk.length + length];
+        System.arraycopy(chunk, 0, extended, 0, chunk.length);
+        System.arraycopy(bases, 0, extended, chunk.length, length);
+        bases = extended;
+        start = newStart;
+        length = extended.length;
+    }
+
+    private void extendRight(int position) {
+        if (position >= contigLength) {
+            throw new SAMException(String.format("Position %d is outside of contig `%s` with length %d", position, contig, contigLength));
+        }
+        int end = start + length;
+        int newEnd = (int) Math.min(contigLength, Math.max(position + 1L, (long) end + rightChunk));
+        rightChunk *= 2;
+        byte[] chunk = fetch(end, newEnd);
+        if (bases.length < length + chunk.length) {
+            byte[] extended = new byte[Math.max(length + chunk.length, 2 * bases.length)];
+            System.arraycopy(bases, 0, extended, 0, length);
+            bases = extended;
+        }
+        System.arraycopy(chunk, 0, bases, length, chunk.length);
+        length += chunk.length;
+    }
+
+    /**
+     * Fetch the bases <code>[from, to)</code> in upper case.
+     */
+    private byte[] fetch(int from, int to) {
+        byte[] chunk = accessor.fetchSequence(contig, from + 1, to).getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < chunk.length; i++) {
+            if (chunk[i] >= 'a' && chunk[i] <= 'z') {
+                chunk[i] -= 'a' - 'A';
+            }
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,316 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.data.ReferenceDictionaryBuilder;
+import htsjdk.samtools.SAMException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This accessor fetches the sequences from an HTTP endpoint implementing
+ * <a href="https://samtools.github.io/hts-specs/refget.html">GA4GH refget v2 API</a>, hence no local fasta file is
+ * required.
+ * <p>
+ * The {@link ReferenceDictionary} is built from the metadata of the requested sequences. The contig is named by the
+ * requested identifier, if it is one of the aliases reported by the endpoint, or by the first alias otherwise. All
+ * aliases can be used to query the accessor.
+ * </p>
+ * <p>
+ * The sequences are fetched in aligned blocks of fixed size. The blocks needed to serve a query are requested
+ * concurrently over a shared HTTP/2 client and the fetched blocks are stored in a bounded cache. Concurrent queries
+ * for the same block share a single request.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class RefgetGenomeSequenceAccessor extends AbstractGenomeSequenceAccessor {
+
+    static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    static final long DEFAULT_CACHE_SIZE = 64L << 20;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefgetGenomeSequenceAccessor.class);
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private static final Pattern LENGTH = Pattern.compile("\"length\"\\s*:\\s*(\\d+)");
+
+    private static final Pattern MD5 = Pattern.compile("\"md5\"\\s*:\\s*\"([0-9a-fA-F]+)\"");
+
+    private static final Pattern ALIAS = Pattern.compile("\"alias\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final URI endpoint;
+
+    private final HttpClient client;
+
+    private final int blockSize;
+
+    private final ReferenceDictionary referenceDictionary;
+
+    /**
+     * MD5 digests of the contigs, indexed by contig ID.
+     */
+    private final String[] digests;
+
+    private final Cache<BlockKey, byte[]> blocks;
+
+    private final Map<BlockKey, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+
+    private RefgetGenomeSequenceAccessor(URI endpoint, HttpClient client, int blockSize, long cacheSize,
+                                         ReferenceDictionary referenceDictionary, String[] digests) {
+        this.endpoint = endpoint;
+        this.client = client;
+        this.blockSize = blockSize;
+        this.referenceDictionary = referenceDictionary;
+        this.digests = digests;
+        // Guava splits the maximum weight among the segments, a single segment allows to use the whole cache size
+        this.blocks = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(cacheSize)
+                .weigher((BlockKey key, byte[] bases) -> bases.length)
+                .build();
+    }
+
+    /**
+     * Create the accessor with default block and cache sizes.
+     *
+     * @param endpoint    base URI of the refget API, e.g. <code>http://localhost:8080</code>
+     * @param sequenceIds identifiers of the sequences to serve, either names or digests accepted by the endpoint
+     * @return the accessor
+     * @throws IOException if the metadata cannot be fetched
+     */
+    public static RefgetGenomeSequenceAccessor of(URI endpoint, List<String> sequenceIds) throws IOException {
+        return of(endpoint, sequenceIds, DEFAULT_BLOCK_SIZE, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Create the accessor.
+     *
+     * @param endpoint    base URI of the refget API, e.g. <code>http://localhost:8080</code> or
+     *                    <code>https://example.org/refget/</code>
+     * @param sequenceIds identifiers of the sequences to serve, either names or digests accepted by the endpoint
+     * @param blockSize   number of bases fetched by a single request
+     * @param cacheSize   maximum number of bases held in the cache
+     * @return the accessor
+     * @throws IOException if the metadata cannot be fetched
+     */
+    public static RefgetGenomeSequenceAccessor of(URI endpoint, List<String> sequenceIds, int blockSize, long cacheSize) throws IOException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException(String.format("Block size must be positive: %d", blockSize));
+        }
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException(String.format("Cache size must be non-negative: %d", cacheSize));
+        }
+        // the API paths are resolved relative to the endpoint, hence its base path must end with a slash
+        String base = endpoint.toString();
+        endpoint = base.endsWith("/") ? endpoint : URI.create(base + "/");
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(TIMEOUT)
+                .build();
+
+        // fetch all metadata concurrently
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>(sequenceIds.size());
+        for (String id : sequenceIds) {
+            HttpRequest request = HttpRequest.newBuilder(endpoint.resolve("sequence/" + encode(id) + "/metadata"))
+                    .timeout(TIMEOUT)
+                    .GET()
+                    .build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        ReferenceDictionaryBuilder rdb = new ReferenceDictionaryBuilder();
+        String[] digests = new String[sequenceIds.size()];
+        for (int i = 0; i < sequenceIds.size(); i++) {
+            String id = sequenceIds.get(i);
+            HttpResponse<String> response;
+            try {
+                response = responses.get(i).join();
+            } catch (CompletionException e) {
+                throw new IOException(String.format("Unable to fetch metadata of `%s` from %s", id, endpoint), e.getCause());
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException(String.format("Unable to fetch metadata of `%s` from %s: HTTP %d", id, endpoint, response.statusCode()));
+            }
+            String metadata = response.body();
+            Matcher length = LENGTH.matcher(metadata);
+            Matcher md5 = MD5.matcher(metadata);
+            if (!length.find() || !md5.find()) {
+                throw new IOException(String.format("Invalid metadata of `%s`: %s", id, metadata));
+            }
+            List<String> aliases = new ArrayList<>();
+            Matcher alias = ALIAS.matcher(metadata);
+            while (alias.find()) {
+                aliases.add(alias.group(1));
+            }
+
+            String name = aliases.isEmpty() || aliases.contains(id) ? id : aliases.get(0);
+            rdb.putContigID(name, i);
+            for (String a : aliases) {
+                rdb.putContigID(a, i);
+            }
+            rdb.putContigName(i, name);
+            rdb.putContigLength(i, Integer.parseInt(length.group(1)));
+            digests[i] = md5.group(1);
+        }
+        LOGGER.debug("Fetched metadata of {} sequences from {}", digests.length, endpoint);
+        return new RefgetGenomeSequenceAccessor(endpoint, client, blockSize, cacheSize, rdb.build(), digests);
+    }
+
+    private static String encode(String id) {
+        return URLEncoder.encode(id, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public ReferenceDictionary getReferenceDictionary() {
+        return referenceDictionary;
+    }
+
+    /**
+     * @return number of bases held in the block cache
+     */
+    public long getCachedBases() {
+        return blocks.asMap().values().stream().mapToLong(block -> block.length).sum();
+    }
+
+    /**
+     * Get sequence of nucleotides from given position specified by chromosome/contig name, starting position and ending
+     * position.
+     *
+     * @param chromosome any name of the contig
+     * @param begin      start position in 1-based numbering
+     * @param end        end chromosomal position in 1-based numbering
+     * @return nucleotide sequence
+     * @throws SAMException if the contig is unknown, the query is out of the contig bounds, or the sequence cannot
+     *                      be fetched
+     */
+    @Override
+    public String fetchSequence(String chromosome, int begin, int end) throws SAMException {
+        Integer contigId = referenceDictionary.getContigNameToID().get(chromosome);
+        if (contigId == null) {
+            throw new SAMException(String.format("Unknown contig `%s`", chromosome));
+        }
+        int length = referenceDictionary.getContigIDToLength().get(contigId);
+        if (begin < 1 || end > length || begin > end + 1) {
+            throw new SAMException(String.format("Query %s:%d-%d asks for data outside of contig with length %d",
+                    chromosome, begin, end, length));
+        }
+
+        // 0-based indices of the first and the last block
+        int first = (begin - 1) / blockSize, last = Math.max(first, (end - 1) / blockSize);
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(last - first + 1);
+        for (int block = first; block <= last; block++) {
+            futures.add(fetchBlock(new BlockKey(contigId, block), length));
+        }
+
+        byte[] bases = new byte[end - begin + 1];
+        int copied = 0;
+        try {
+            for (int i = 0; i < futures.size() && copied < bases.length; i++) {
+                byte[] block = futures.get(i).join();
+                int offset = i == 0 ? (begin - 1) - first * blockSize : 0;
+                int n = Math.min(block.length - offset, bases.length - copied);
+                System.arraycopy(block, offset, bases, copied, n);
+                copied += n;
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof SAMException
+                    ? (SAMException) e.getCause()
+                    : new SAMException(String.format("Unable to fetch %s:%d-%d from %s", chromosome, begin, end, endpoint), e.getCause());
+        }
+        return new String(bases, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Get the block from the cache, join the pending request for the block, or start a new request.
+     */
+    private CompletableFuture<byte[]> fetchBlock(BlockKey key, int contigLength) {
+        byte[] cached = blocks.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> current = pending.putIfAbsent(key, future);
+        if (current != null) {
+            return current;
+        }
+        // the block might have been loaded and its pending request removed since the first lookup
+        cached = blocks.getIfPresent(key);
+        if (cached != null) {
+            pending.remove(key, future);
+            future.complete(cached);
+            return future;
+        }
+
+        long start = (long) key.block * blockSize;
+        long end = Math.min(start + blockSize, contigLength);
+        HttpRequest request = HttpRequest.newBuilder(
+                endpoint.resolve(String.format("sequence/%s?start=%d&end=%d", digests[key.contigId], start, end)))
+                .timeout(TIMEOUT)
+                .GET()
+                .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, t) -> {
+                    if (t != null) {
+                        pending.remove(key);
+                        future.completeExceptionally(t);
+                    } else if (response.statusCode() != 200 || response.body().length != end - start) {
+                        pending.remove(key);
+                        future.completeExceptionally(new SAMException(String.format("Unable to fetch block %d of `%s`: HTTP %d",
+                                key.block, referenceDictionary.getContigIDToName().get(key.contigId), response.statusCode())));
+                    } else {
+                        blocks.put(key, response.body());
+                        pending.remove(key);
+                        future.complete(response.body());
+                    }
+                });
+        return future;
+    }
+
+    @Override
+    public void close() {
+        blocks.invalidateAll();
+    }
+
+    private static final class BlockKey {
+
+        private final int contigId;
+        private final int block;
+
+        private BlockKey(int contigId, int block) {
+            this.contigId = contigId;
+            this.block = block;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BlockKey blockKey = (BlockKey) o;
+            return contigId == blockKey.contigId && block == blockKey.block;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(contigId, block);
+        }
+    }
+}
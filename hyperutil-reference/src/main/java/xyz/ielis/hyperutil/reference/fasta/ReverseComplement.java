@@ -1,5 +1,6 @@
 package xyz.ielis.hyperutil.reference.fasta;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,6 +8,11 @@ class ReverseComplement {
 
     private static final Map<Character, Character> IUPAC = makeIupacMap();
 
+    /**
+     * Complements of the ASCII symbols, <code>N</code> for the non-IUPAC symbols.
+     */
+    private static final char[] COMPLEMENT = makeComplementTable();
+
     /**
      * Get reverse complement of a nucleotide sequence <code>seq</code>. The sequence is expected to consist of IUPAC
      * nucleotide symbols. Both upper/lower cases are recognized.
@@ -17,12 +23,64 @@ class ReverseComplement {
      * @return reverse complemented sequence
      */
     static String reverseComplement(String seq) {
-        char[] oldSeq = seq.toCharArray();
-        char[] newSeq = new char[oldSeq.length];
-        for (int i = 0; i < oldSeq.length; i++) {
-            newSeq[oldSeq.length - i - 1] = IUPAC.getOrDefault(oldSeq[i], 'N');
+        char[] chars = seq.toCharArray();
+        reverseComplement(chars, 0, chars.length);
+        return new String(chars);
+    }
+
+    /**
+     * Reverse complement the nucleotide sequence stored in <code>seq[from, to)</code> in place.
+     *
+     * @param seq  array with nucleotide sequence
+     * @param from index of the first base, inclusive
+     * @param to   index of the last base, exclusive
+     */
+    static void reverseComplement(char[] seq, int from, int to) {
+        int i = from, j = to - 1;
+        while (i < j) {
+            char tmp = complement(seq[i]);
+            seq[i++] = complement(seq[j]);
+            seq[j--] = tmp;
+        }
+        if (i == j) {
+            seq[i] = complement(seq[i]);
+        }
+    }
+
+    /**
+     * Reverse complement the nucleotide sequence stored as ASCII bytes in <code>seq[from, to)</code> in place.
+     *
+     * @param seq  array with nucleotide sequence
+     * @param from index of the first base, inclusive
+     * @param to   index of the last base, exclusive
+     */
+    static void reverseComplement(byte[] seq, int from, int to) {
+        int i = from, j = to - 1;
+        while (i < j) {
+            byte tmp = complement(seq[i]);
+            seq[i++] = complement(seq[j]);
+            seq[j--] = tmp;
+        }
+        if (i == j) {
+            seq[i] = complement(seq[i]);
+        }
+    }
+
+    private static byte complement(byte base) {
+        return base >= 0 ? (byte) COMPLEMENT[base] : (byte) 'N';
+    }
+
+    private static char complement(char base) {
+        return base < COMPLEMENT.length ? COMPLEMENT[base] : 'N';
+    }
+
+    private static char[] makeComplementTable() {
+        char[] table = new char[128];
+        Arrays.fill(table, 'N');
+        for (Map.Entry<Character, Character> entry : IUPAC.entrySet()) {
+            table[entry.getKey()] = entry.getValue();
         }
-        return new String(newSeq);
+        return table;
     }
 
     private static Map<Character, Character> makeIupacMap() {
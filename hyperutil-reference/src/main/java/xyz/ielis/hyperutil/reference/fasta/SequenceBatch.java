@@ -0,0 +1,203 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Columnar result of a batch query issued by {@link GenomeSequenceAccessor#fetchSequences(int[], int[], int[], boolean[])}.
+ * <p>
+ * Bases of all rows are stored in a single contiguous array, the bases of row <code>i</code> are located at
+ * <code>[offsets[i], offsets[i + 1])</code>. Each row has a status, the rows that could not be served are empty.
+ * </p>
+ * <p>
+ * The arrays are returned without copying, the caller must not modify them. The batch is immutable otherwise.
+ * </p>
+ */
+public final class SequenceBatch {
+
+    /**
+     * The row has been served.
+     */
+    public static final byte OK = 0;
+
+    /**
+     * The contig ID of the row is not present in the {@link de.charite.compbio.jannovar.data.ReferenceDictionary}.
+     */
+    public static final byte UNKNOWN_CONTIG = 1;
+
+    /**
+     * The coordinates of the row are invalid or outside of the contig bounds.
+     */
+    public static final byte OUT_OF_BOUNDS = 2;
+
+    /**
+     * The bases could not be read.
+     */
+    public static final byte ERROR = 3;
+
+    /**
+     * The row is outside of the regions served by the accessor.
+     *
+     * @see TargetedGenomeSequenceAccessor.OffTargetPolicy#REJECT
+     */
+    public static final byte REJECTED = 4;
+
+    private final byte[] bases;
+
+    private final int[] offsets;
+
+    private final byte[] status;
+
+    private SequenceBatch(byte[] bases, int[] offsets, byte[] status) {
+        this.bases = bases;
+        this.offsets = offsets;
+        this.status = status;
+    }
+
+    /**
+     * Check the columns of a batch query and create a builder for the result.
+     *
+     * @throws IllegalArgumentException if the arrays do not have the same length
+     */
+    static Builder newBuilder(int[] contigIds, int[] begins, int[] ends, boolean[] reverseStrand) {
+        if (begins.length != contigIds.length || ends.length != contigIds.length
+                || (reverseStrand != null && reverseStrand.length != contigIds.length)) {
+            throw new IllegalArgumentException(String.format("Columns must have the same length: %d contig IDs, %d begins, %d ends, %s strands",
+                    contigIds.length, begins.length, ends.length, reverseStrand == null ? "no" : String.valueOf(reverseStrand.length)));
+        }
+        long expectedBases = 0;
+        for (int i = 0; i < begins.length; i++) {
+            expectedBases += Math.max(0, ends[i] - begins[i]);
+        }
+        return new Builder(contigIds.length, (int) Math.min(expectedBases, 1 << 24));
+    }
+
+    /**
+     * @return number of rows of the batch
+     */
+    public int size() {
+        return status.length;
+    }
+
+    /**
+     * @return array with bases of all rows, the array may be longer than the last row's end offset
+     */
+    public byte[] getBases() {
+        return bases;
+    }
+
+    /**
+     * @return array with <code>size() + 1</code> offsets of the rows into the bases array
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * @return array with status of each row
+     */
+    public byte[] getStatus() {
+        return status;
+    }
+
+    public byte getStatus(int row) {
+        return status[row];
+    }
+
+    public boolean isOk(int row) {
+        return status[row] == OK;
+    }
+
+    public int getLength(int row) {
+        return offsets[row + 1] - offsets[row];
+    }
+
+    /**
+     * Decode bases of the row into a string. Use the arrays directly to avoid the allocation.
+     *
+     * @param row index of the row
+     * @return sequence of the row, empty string if the row has not been served
+     */
+    public String getSequence(int row) {
+        return new String(bases, offsets[row], getLength(row), StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String toString() {
+        return "SequenceBatch{" +
+                "rows=" + status.length +
+                ", bases=" + offsets[status.length] + "}";
+    }
+
+    /**
+     * Appends the rows into a growing array of bases.
+     */
+    static final class Builder {
+
+        private byte[] bases;
+
+        private final int[] offsets;
+
+        private final byte[] status;
+
+        private int row = 0;
+
+        Builder(int rows, int expectedBases) {
+            this.bases = new byte[Math.max(16, expectedBases)];
+            this.offsets = new int[rows + 1];
+            this.status = new byte[rows];
+        }
+
+        /**
+         * @return current number of bases
+         */
+        int position() {
+            return offsets[row];
+        }
+
+        /**
+         * Make sure there is room for <code>length</code> more bases in the array returned by {@link #buffer()}.
+         */
+        void ensureCapacity(int length) {
+            int required = offsets[row] + length;
+            if (required < 0) {
+                throw new IllegalStateException("Batch does not fit into a single array");
+            }
+            if (required > bases.length) {
+                bases = Arrays.copyOf(bases, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, 2L * bases.length)));
+            }
+        }
+
+        byte[] buffer() {
+            return bases;
+        }
+
+        /**
+         * Finish the current row, the bases have been written into {@link #buffer()}.
+         */
+        void commit(int length) {
+            status[row] = OK;
+            offsets[row + 1] = offsets[row] + length;
+            row++;
+        }
+
+        void append(byte[] rowBases) {
+            ensureCapacity(rowBases.length);
+            System.arraycopy(rowBases, 0, bases, offsets[row], rowBases.length);
+            commit(rowBases.length);
+        }
+
+        /**
+         * Finish the current row as empty row with a failure status.
+         */
+        void fail(byte rowStatus) {
+            status[row] = rowStatus;
+            offsets[row + 1] = offsets[row];
+            row++;
+        }
+
+        SequenceBatch build() {
+            return new SequenceBatch(bases, offsets, status);
+        }
+    }
+}
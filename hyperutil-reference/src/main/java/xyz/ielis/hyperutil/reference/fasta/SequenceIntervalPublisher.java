@@ -0,0 +1,204 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Flow.Publisher} that streams sequences of the given regions. Each region is split into chunks of at most
+ * <code>chunkSize</code> bases, the chunks are emitted in the order of the regions and in 5' to 3' direction of the
+ * region strand.
+ * <p>
+ * The chunks are fetched from the {@link GenomeSequenceAccessor} on the provided {@link Executor} in response to the
+ * subscriber demand. At most <code>prefetch</code> chunks are fetched ahead of the demand, hence a slow subscriber
+ * does not cause unbounded buffering.
+ * </p>
+ * <p>
+ * The publisher is cold, each subscriber receives all chunks. The subscription is terminated with
+ * {@link IllegalArgumentException} if a chunk cannot be fetched, e.g. because the region is located on an unknown
+ * contig.
+ * </p>
+ */
+public class SequenceIntervalPublisher implements Flow.Publisher<SequenceInterval> {
+
+    private final GenomeSequenceAccessor accessor;
+
+    private final List<GenomeInterval> regions;
+
+    private final int chunkSize;
+
+    private final int prefetch;
+
+    private final Executor executor;
+
+    private SequenceIntervalPublisher(GenomeSequenceAccessor accessor, List<GenomeInterval> regions, int chunkSize,
+                                      int prefetch, Executor executor) {
+        this.accessor = Objects.requireNonNull(accessor, "Accessor cannot be null");
+        this.regions = List.copyOf(regions);
+        this.executor = Objects.requireNonNull(executor, "Executor cannot be null");
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException(String.format("Chunk size must be positive: %d", chunkSize));
+        }
+        this.chunkSize = chunkSize;
+        if (prefetch < 1) {
+            throw new IllegalArgumentException(String.format("Prefetch must be positive: %d", prefetch));
+        }
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Create the publisher.
+     *
+     * @param accessor  accessor to fetch the sequences from
+     * @param regions   regions to stream, e.g. targets of a BED file, or whole contigs
+     * @param chunkSize maximum length of an emitted sequence
+     * @param prefetch  maximum number of chunks fetched ahead of the subscriber demand
+     * @param executor  executor to fetch the sequences and to signal the subscribers on
+     * @return the publisher
+     */
+    public static SequenceIntervalPublisher of(GenomeSequenceAccessor accessor, List<GenomeInterval> regions,
+                                               int chunkSize, int prefetch, Executor executor) {
+        return new SequenceIntervalPublisher(accessor, regions, chunkSize, prefetch, executor);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super SequenceInterval> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber cannot be null");
+        RegionSubscription subscription = new RegionSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        // start prefetching
+        subscription.schedule();
+    }
+
+    private final class RegionSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super SequenceInterval> subscriber;
+
+        private final AtomicLong requested = new AtomicLong();
+
+        /**
+         * Number of pending drain requests, the drain loop runs only if the value is positive.
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+
+        // accessed only from the drain loop
+        private final ArrayDeque<SequenceInterval> buffer = new ArrayDeque<>();
+        private int regionIdx = 0;
+        private int chunkBegin;
+        private boolean terminated = false;
+
+        private volatile boolean cancelled = false;
+
+        private volatile Throwable error = null;
+
+        private RegionSubscription(Flow.Subscriber<? super SequenceInterval> subscriber) {
+            this.subscriber = subscriber;
+            this.chunkBegin = regions.isEmpty() ? 0 : regions.get(0).getBeginPos();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException(String.format("Requested non-positive number of elements: %d", n));
+            } else {
+                requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            while (!terminated) {
+                if (cancelled) {
+                    terminate();
+                    return;
+                }
+                if (error != null) {
+                    terminate();
+                    subscriber.onError(error);
+                    return;
+                }
+
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted < demand && !buffer.isEmpty() && !cancelled) {
+                    subscriber.onNext(buffer.poll());
+                    emitted++;
+                }
+                if (emitted > 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+
+                if (!cancelled && buffer.size() < prefetch && hasNextChunk()) {
+                    try {
+                        buffer.add(fetchNextChunk());
+                    } catch (RuntimeException e) {
+                        error = e;
+                    }
+                    continue;
+                }
+                if (!cancelled && buffer.isEmpty() && !hasNextChunk()) {
+                    terminate();
+                    subscriber.onComplete();
+                    return;
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void terminate() {
+            terminated = true;
+            buffer.clear();
+        }
+
+        private boolean hasNextChunk() {
+            return regionIdx < regions.size();
+        }
+
+        private SequenceInterval fetchNextChunk() {
+            GenomeInterval region = regions.get(regionIdx);
+            int chunkEnd = Math.min(chunkBegin + chunkSize, region.getEndPos());
+            // begin and end are on the strand of the region
+            GenomeInterval chunk = new GenomeInterval(region.getRefDict(), region.getStrand(), region.getChr(), chunkBegin, chunkEnd);
+
+            if (chunkEnd == region.getEndPos()) {
+                regionIdx++;
+                if (regionIdx < regions.size()) {
+                    chunkBegin = regions.get(regionIdx).getBeginPos();
+                }
+            } else {
+                chunkBegin = chunkEnd;
+            }
+
+            Optional<SequenceInterval> sequence = accessor.fetchSequence(chunk);
+            if (sequence.isEmpty()) {
+                throw new IllegalArgumentException(String.format("Unable to fetch sequence for `%s`", chunk));
+            }
+            return sequence.get();
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Accessor decorator that keeps previously fetched {@link SequenceInterval}s in a per-contig interval index. A query
+ * that is fully contained in a stored interval is answered by {@link SequenceInterval#getSubsequence(GenomeInterval)}
+ * and does not reach the underlying accessor. Other queries are delegated and their results are stored.
+ * <p>
+ * Sequences that the caller already holds can be added to the store by {@link #put(SequenceInterval)}.
+ * </p>
+ * <p>
+ * The store is bounded by the total number of stored bases. The least recently used intervals are evicted when the
+ * bound is exceeded. Closing the store closes the underlying accessor.
+ * </p>
+ * <p>
+ * This class is thread-safe if the underlying accessor is thread-safe.
+ * </p>
+ */
+public class SequenceIntervalStore implements GenomeSequenceAccessor {
+
+    private final GenomeSequenceAccessor accessor;
+
+    private final long maxBases;
+
+    private final Map<Integer, ContigIndex> indices = new HashMap<>();
+
+    /**
+     * Entries in the order of access, the least recently used first.
+     */
+    private final LinkedHashMap<Entry, Entry> lru = new LinkedHashMap<>(16, .75f, true);
+
+    private long storedBases = 0;
+
+    private long hitCount = 0;
+
+    private long missCount = 0;
+
+    SequenceIntervalStore(GenomeSequenceAccessor accessor, long maxBases) {
+        this.accessor = Objects.requireNonNull(accessor, "Accessor cannot be null");
+        if (maxBases < 0) {
+            throw new IllegalArgumentException(String.format("Max bases must be non-negative: %d", maxBases));
+        }
+        this.maxBases = maxBases;
+    }
+
+    /**
+     * Create the store.
+     *
+     * @param accessor accessor to delegate the queries that cannot be answered from the store to
+     * @param maxBases maximum number of bases held by the store
+     * @return the store
+     */
+    public static SequenceIntervalStore of(GenomeSequenceAccessor accessor, long maxBases) {
+        return new SequenceIntervalStore(accessor, maxBases);
+    }
+
+    @Override
+    public ReferenceDictionary getReferenceDictionary() {
+        return accessor.getReferenceDictionary();
+    }
+
+    /**
+     * Get sequence for given <code>interval</code>, either from a stored interval that contains the query, or from the
+     * underlying accessor.
+     *
+     * @param interval query interval
+     * @return sequence interval or empty optional if the underlying accessor was not able to serve the query
+     */
+    @Override
+    public Optional<SequenceInterval> fetchSequence(GenomeInterval interval) {
+        Integer contigId = primaryContigId(interval);
+        if (contigId != null) {
+            GenomeInterval onFwd = interval.withStrand(Strand.FWD);
+            Optional<SequenceInterval> stored = lookup(contigId, onFwd.getBeginPos(), onFwd.getEndPos());
+            if (stored.isPresent()) {
+                Optional<String> subsequence = stored.get().getSubsequence(interval);
+                if (subsequence.isPresent()) {
+                    return Optional.of(SequenceInterval.of(interval, subsequence.get()));
+                }
+            }
+        }
+
+        Optional<SequenceInterval> fetched = accessor.fetchSequence(interval);
+        fetched.ifPresent(this::put);
+        return fetched;
+    }
+
+    /**
+     * Get sequence of nucleotides on the forward strand, using the stored intervals if possible.
+     *
+     * @param chromosome chromosome
+     * @param begin      start position in 1-based numbering
+     * @param end        end chromosomal position in 1-based numbering
+     * @return nucleotide sequence
+     */
+    @Override
+    public String fetchSequence(String chromosome, int begin, int end) {
+        Integer contigId = accessor.getReferenceDictionary().getContigNameToID().get(chromosome);
+        if (contigId != null) {
+            Optional<SequenceInterval> stored = lookup(contigId, begin - 1, end);
+            if (stored.isPresent()) {
+                GenomeInterval query = new GenomeInterval(accessor.getReferenceDictionary(), Strand.FWD, contigId, begin - 1, end);
+                Optional<String> subsequence = stored.get().getSubsequence(query);
+                if (subsequence.isPresent()) {
+                    return subsequence.get();
+                }
+            }
+        }
+        return accessor.fetchSequence(chromosome, begin, end);
+    }
+
+    /**
+     * Delegate the batch to the underlying accessor. The rows are neither looked up in nor added to the store, as the
+     * batch results are not {@link SequenceInterval}s.
+     */
+    @Override
+    public SequenceBatch fetchSequences(int[] contigIds, int[] begins, int[] ends, boolean[] reverseStrand) {
+        return accessor.fetchSequences(contigIds, begins, ends, reverseStrand);
+    }
+
+    /**
+     * Add the sequence interval into the store. The interval is not stored if its sequence is longer than the bound of
+     * the store or if it is already contained in a stored interval.
+     *
+     * @param sequenceInterval sequence to store
+     */
+    public void put(SequenceInterval sequenceInterval) {
+        if (sequenceInterval.isEmpty()) {
+            return;
+        }
+        Integer contigId = primaryContigId(sequenceInterval.getInterval());
+        int length = sequenceInterval.getSequence().length();
+        if (contigId == null || length > maxBases) {
+            return;
+        }
+        GenomeInterval onFwd = sequenceInterval.getInterval().withStrand(Strand.FWD);
+
+        synchronized (this) {
+            ContigIndex index = indices.computeIfAbsent(contigId, k -> new ContigIndex());
+            if (index.findContaining(onFwd.getBeginPos(), onFwd.getEndPos()) != null) {
+                return;
+            }
+            Entry entry = new Entry(contigId, onFwd.getBeginPos(), onFwd.getEndPos(), sequenceInterval);
+            index.add(entry);
+            lru.put(entry, entry);
+            storedBases += length;
+
+            Iterator<Entry> iterator = lru.keySet().iterator();
+            while (storedBases > maxBases && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                indices.get(eldest.contigId).remove(eldest);
+                storedBases -= eldest.sequenceInterval.getSequence().length();
+            }
+        }
+    }
+
+    private synchronized Optional<SequenceInterval> lookup(int contigId, int begin, int end) {
+        ContigIndex index = indices.get(contigId);
+        Entry entry = index == null ? null : index.findContaining(begin, end);
+        if (entry == null) {
+            missCount++;
+            return Optional.empty();
+        }
+        hitCount++;
+        lru.get(entry); // mark as recently used
+        return Optional.of(entry.sequenceInterval);
+    }
+
+    private Integer primaryContigId(GenomeInterval interval) {
+        String contigName = interval.getRefDict().getContigIDToName().get(interval.getChr());
+        return contigName == null ? null : accessor.getReferenceDictionary().getContigNameToID().get(contigName);
+    }
+
+    /**
+     * @return number of bases held by the store
+     */
+    public synchronized long getStoredBases() {
+        return storedBases;
+    }
+
+    /**
+     * @return number of queries answered from the store
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of queries delegated to the underlying accessor
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Remove all stored intervals.
+     */
+    public synchronized void clear() {
+        indices.clear();
+        lru.clear();
+        storedBases = 0;
+    }
+
+    @Override
+    public CompletableFuture<Void> getReadiness() {
+        return accessor.getReadiness();
+    }
+
+    @Override
+    public void close() throws IOException {
+        clear();
+        accessor.close();
+    }
+
+    private static final class Entry {
+
+        private final int contigId;
+        private final int begin;
+        private final int end;
+        private final SequenceInterval sequenceInterval;
+
+        private Entry(int contigId, int begin, int end, SequenceInterval sequenceInterval) {
+            this.contigId = contigId;
+            this.begin = begin;
+            this.end = end;
+            this.sequenceInterval = sequenceInterval;
+        }
+    }
+
+    /**
+     * Intervals of a single contig in an AVL tree ordered by begin and end coordinates. Each node is augmented with the
+     * entry with the greatest end in its subtree, hence the insertions, removals and containment queries take
+     * <code>O(log n)</code> time. The store does not hold two intervals with the same coordinates, since an interval
+     * contained in a stored interval is not added.
+     */
+    private static final class ContigIndex {
+
+        private Node root;
+
+        void add(Entry entry) {
+            root = insert(root, entry);
+        }
+
+        void remove(Entry entry) {
+            root = delete(root, entry);
+        }
+
+        /**
+         * @return the entry with the greatest end among the entries with begin less than or equal to <code>begin</code>
+         * if the entry ends at or after <code>end</code>, <code>null</code> otherwise
+         */
+        Entry findContaining(int begin, int end) {
+            Entry candidate = null;
+            Node node = root;
+            while (node != null) {
+                if (node.entry.begin <= begin) {
+                    // the node and its left subtree begin at or before the query
+                    candidate = greaterEnd(candidate, node.entry);
+                    if (node.left != null) {
+                        candidate = greaterEnd(candidate, node.left.max);
+                    }
+                    node = node.right;
+                } else {
+                    node = node.left;
+                }
+            }
+            return candidate != null && candidate.end >= end ? candidate : null;
+        }
+
+        private static int compare(Entry a, Entry b) {
+            return a.begin != b.begin ? Integer.compare(a.begin, b.begin) : Integer.compare(a.end, b.end);
+        }
+
+        private static Entry greaterEnd(Entry a, Entry b) {
+            return a == null || b.end > a.end ? b : a;
+        }
+
+        private static Node insert(Node node, Entry entry) {
+            if (node == null) {
+                return new Node(entry);
+            }
+            if (compare(entry, node.entry) < 0) {
+                node.left = insert(node.left, entry);
+            } else {
+                node.right = insert(node.right, entry);
+            }
+            return balance(node);
+        }
+
+        private static Node delete(Node node, Entry entry) {
+            if (node == null) {
+                return null;
+            }
+            int cmp = compare(entry, node.entry);
+            if (cmp < 0) {
+                node.left = delete(node.left, entry);
+            } else if (cmp > 0) {
+                node.right = delete(node.right, entry);
+            } else if (node.left == null || node.right == null) {
+                return node.left == null ? node.right : node.left;
+            } else {
+                // replace the entry by its successor
+                Node successor = node.right;
+                while (successor.left != null) {
+                    successor = successor.left;
+                }
+                node.entry = successor.entry;
+                node.right = delete(node.right, successor.entry);
+            }
+            return balance(node);
+        }
+
+        private static Node balance(Node node) {
+            node.update();
+            int factor = Node.height(node.left) - Node.height(node.right);
+            if (factor > 1) {
+                if (Node.height(node.left.left) < Node.height(node.left.right)) {
+                    node.left = rotateLeft(node.left);
+                }
+                return rotateRight(node);
+            }
+            if (factor < -1) {
+                if (Node.height(node.right.right) < Node.height(node.right.left)) {
+                    node.right = rotateRight(node.right);
+                }
+                return rotateLeft(node);
+            }
+            return node;
+        }
+
+        private static Node rotateRight(Node node) {
+            Node left = node.left;
+            node.left = left.right;
+            left.right = node;
+            node.update();
+            left.update();
+            return left;
+        }
+
+        private static Node rotateLeft(Node node) {
+            Node right = node.right;
+            node.right = right.left;
+            right.left = node;
+            node.update();
+            right.update();
+            return right;
+        }
+    }
+
+    private static final class Node {
+
+        private Entry entry;
+        private Node left;
+        private Node right;
+        private int height = 1;
+
+        /**
+         * Entry with the greatest end in the subtree.
+         */
+        private Entry max;
+
+        private Node(Entry entry) {
+            this.entry = entry;
+            this.max = entry;
+        }
+
+        private static int height(Node node) {
+            return node == null ? 0 : node.height;
+        }
+
+        private void update() {
+            height = 1 + Math.max(height(left), height(right));
+            max = entry;
+            if (left != null && left.max.end > max.end) {
+                max = left.max;
+            }
+            if (right != null && right.max.end > max.end) {
+                max = right.max;
+            }
+        }
+    }
+}
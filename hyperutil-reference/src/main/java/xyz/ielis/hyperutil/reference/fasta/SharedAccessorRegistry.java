@@ -0,0 +1,201 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide registry of the accessors shared by {@link SharedGenomeSequenceAccessor} handles. The underlying
+ * accessor is created when the first handle is acquired and closed when the last handle is closed.
+ * <p>
+ * The accessor is created outside of the registry lock, hence creating an accessor does not block acquiring the
+ * accessors for other keys. Concurrent requests for the same key wait for the single accessor being created.
+ * </p>
+ */
+final class SharedAccessorRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedAccessorRegistry.class);
+
+    private static final SharedAccessorRegistry INSTANCE = new SharedAccessorRegistry();
+
+    private final Map<Key, Entry> entries = new HashMap<>();
+
+    SharedAccessorRegistry() {
+        // package-private no-op
+    }
+
+    static SharedAccessorRegistry instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get a handle for the accessor registered under the key, creating the accessor if necessary.
+     *
+     * @param key     key of the accessor
+     * @param factory creates the accessor if there is none registered under the key
+     * @return new handle that must be closed to release the accessor
+     */
+    SharedGenomeSequenceAccessor acquire(Key key, Supplier<? extends GenomeSequenceAccessor> factory) {
+        Entry entry;
+        boolean create;
+        synchronized (this) {
+            entry = entries.get(key);
+            create = entry == null;
+            if (create) {
+                entry = new Entry(key);
+                entries.put(key, entry);
+            }
+            entry.references++;
+        }
+
+        if (create) {
+            try {
+                entry.accessor.complete(factory.get());
+                LOGGER.debug("Created shared accessor for `{}`", key);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    entries.remove(key, entry);
+                }
+                entry.accessor.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return new SharedGenomeSequenceAccessor(this, entry, entry.accessor.join());
+        } catch (CompletionException e) {
+            // another thread failed to create the accessor
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Release a reference to the accessor and close the accessor if there are no references left.
+     */
+    void release(Entry entry) {
+        GenomeSequenceAccessor accessor = null;
+        synchronized (this) {
+            if (--entry.references == 0) {
+                entries.remove(entry.key, entry);
+                accessor = entry.accessor.getNow(null);
+            }
+        }
+        if (accessor != null) {
+            try {
+                accessor.close();
+                LOGGER.debug("Closed shared accessor for `{}`", entry.key);
+            } catch (IOException e) {
+                LOGGER.warn("Error closing shared accessor for `{}`: {}", entry.key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return number of handles of the accessor registered under the key, <code>0</code> if there is no accessor
+     */
+    synchronized int getReferenceCount(Key key) {
+        Entry entry = entries.get(key);
+        return entry == null ? 0 : entry.references;
+    }
+
+    static final class Entry {
+
+        private final Key key;
+
+        private final CompletableFuture<GenomeSequenceAccessor> accessor = new CompletableFuture<>();
+
+        /**
+         * Guarded by the registry.
+         */
+        private int references;
+
+        private Entry(Key key) {
+            this.key = key;
+        }
+
+        Key getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * Identifies accessors that can be shared. The paths are canonical, hence different paths to the same file
+     * produce the same key.
+     */
+    static final class Key {
+
+        private final Path fastaPath;
+        private final Path fastaFaiPath;
+        private final Path fastaDictPath;
+        private final GenomeSequenceAccessor.Type type;
+        private final boolean requireMt;
+        private final Path softMaskIndexPath;
+        private final List<?> typeOptions;
+
+        private Key(Path fastaPath, Path fastaFaiPath, Path fastaDictPath, GenomeSequenceAccessor.Type type,
+                    boolean requireMt, Path softMaskIndexPath, List<?> typeOptions) {
+            this.fastaPath = fastaPath;
+            this.fastaFaiPath = fastaFaiPath;
+            this.fastaDictPath = fastaDictPath;
+            this.type = type;
+            this.requireMt = requireMt;
+            this.softMaskIndexPath = softMaskIndexPath;
+            this.typeOptions = typeOptions;
+        }
+
+        /**
+         * @param softMaskIndexPath path to soft-mask index or <code>null</code> if the case is not changed
+         * @param typeOptions       options specific to the accessor type, e.g. the memory budget, empty if the type has no
+         *                          options
+         * @throws IllegalArgumentException if the paths cannot be resolved
+         */
+        static Key of(Path fastaPath, Path fastaFaiPath, Path fastaDictPath, GenomeSequenceAccessor.Type type,
+                      boolean requireMt, Path softMaskIndexPath, List<?> typeOptions) {
+            return new Key(canonical(fastaPath), canonical(fastaFaiPath), canonical(fastaDictPath), type, requireMt,
+                    // the soft-mask index may not exist yet
+                    softMaskIndexPath == null ? null : softMaskIndexPath.toAbsolutePath().normalize(),
+                    List.copyOf(typeOptions));
+        }
+
+        private static Path canonical(Path path) {
+            try {
+                return path.toRealPath();
+            } catch (IOException e) {
+                throw new IllegalArgumentException(String.format("Unable to resolve `%s`", path), e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return requireMt == key.requireMt &&
+                    fastaPath.equals(key.fastaPath) &&
+                    fastaFaiPath.equals(key.fastaFaiPath) &&
+                    fastaDictPath.equals(key.fastaDictPath) &&
+                    type == key.type &&
+                    Objects.equals(softMaskIndexPath, key.softMaskIndexPath) &&
+                    typeOptions.equals(key.typeOptions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fastaPath, fastaFaiPath, fastaDictPath, type, requireMt, softMaskIndexPath, typeOptions);
+        }
+
+        @Override
+        public String toString() {
+            return fastaPath + " (" + type + ")";
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lightweight handle of an accessor shared by {@link SharedAccessorRegistry}. The queries are delegated to the shared
+ * accessor. Closing the handle releases the shared accessor, the handle must not be used afterwards.
+ * <p>
+ * This class is thread-safe if the shared accessor is thread-safe.
+ * </p>
+ *
+ * @see GenomeSequenceAccessorBuilder#setShared(boolean)
+ */
+final class SharedGenomeSequenceAccessor implements GenomeSequenceAccessor {
+
+    private final SharedAccessorRegistry registry;
+
+    private final SharedAccessorRegistry.Entry entry;
+
+    private final GenomeSequenceAccessor accessor;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    SharedGenomeSequenceAccessor(SharedAccessorRegistry registry, SharedAccessorRegistry.Entry entry, GenomeSequenceAccessor accessor) {
+        this.registry = registry;
+        this.entry = entry;
+        this.accessor = accessor;
+    }
+
+    SharedAccessorRegistry.Key getKey() {
+        return entry.getKey();
+    }
+
+    /**
+     * @return the shared accessor
+     */
+    GenomeSequenceAccessor getAccessor() {
+        return accessor;
+    }
+
+    private void checkOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("The shared accessor handle has been closed");
+        }
+    }
+
+    @Override
+    public ReferenceDictionary getReferenceDictionary() {
+        return accessor.getReferenceDictionary();
+    }
+
+    @Override
+    public String fetchSequence(String chromosome, int begin, int end) {
+        checkOpen();
+        return accessor.fetchSequence(chromosome, begin, end);
+    }
+
+    @Override
+    public Optional<SequenceInterval> fetchSequence(GenomeInterval interval) {
+        checkOpen();
+        return accessor.fetchSequence(interval);
+    }
+
+    @Override
+    public SequenceBatch fetchSequences(int[] contigIds, int[] begins, int[] ends, boolean[] reverseStrand) {
+        checkOpen();
+        return accessor.fetchSequences(contigIds, begins, ends, reverseStrand);
+    }
+
+    @Override
+    public CompletableFuture<Void> getReadiness() {
+        return accessor.getReadiness();
+    }
+
+    /**
+     * Release the shared accessor. Closing the handle repeatedly has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            registry.release(entry);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package xyz.ielis.hyperutil.reference.fasta;
 
+import htsjdk.samtools.SAMException;
 import htsjdk.samtools.reference.ReferenceSequence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.file.Path;
+import java.util.Arrays;
 
 /**
  * This accessor will hold sequence of a whole single chromosome in memory and thus it will be much quicker serving
@@ -28,16 +30,41 @@ public class SingleChromosomeGenomeSequenceAccessor extends SingleFastaGenomeSeq
     }
 
     SingleChromosomeGenomeSequenceAccessor(Path fastaPath, Path fastaFai, Path fastaDict, boolean requireMt) {
-        super(fastaPath, fastaFai, fastaDict, requireMt);
+        this(fastaPath, fastaFai, fastaDict, requireMt, null);
+    }
+
+    SingleChromosomeGenomeSequenceAccessor(Path fastaPath, Path fastaFai, Path fastaDict, boolean requireMt, SoftMaskIndex softMaskIndex) {
+        super(fastaPath, fastaFai, fastaDict, requireMt, softMaskIndex);
+    }
+
+    /**
+     * @return name of the contig held in memory or {@code null} if no contig has been loaded yet
+     */
+    synchronized String getLoadedContig() {
+        return referenceSequence == null ? null : referenceSequence.getName();
+    }
+
+    @Override
+    synchronized void preload(String chrom) {
+        load(chrom);
     }
 
     @Override
-    public synchronized String fetchSequence(String chromosome, int begin, int end) {
+    protected synchronized byte[] fetchBases(String chromosome, int begin, int end) {
+        load(chromosome);
+        if (begin < 1 || end > referenceSequence.length() || begin > end + 1) {
+            throw new SAMException(String.format("Query %s:%d-%d asks for data outside of contig with length %d",
+                    chromosome, begin, end, referenceSequence.length()));
+        }
+        return Arrays.copyOfRange(referenceSequence.getBases(), begin - 1, end);
+    }
+
+    private void load(String chromosome) {
         if (referenceSequence == null || !referenceSequence.getName().equals(chromosome)) {
             // the query does not ask for a string from the current referenceSequence, we need to load it into memory
+            LOGGER.debug("Loading contig `{}`", chromosome);
             referenceSequence = fasta.getSequence(chromosome);
         }
-        return referenceSequence.getBaseString().substring(begin - 1, end);
     }
 
 }
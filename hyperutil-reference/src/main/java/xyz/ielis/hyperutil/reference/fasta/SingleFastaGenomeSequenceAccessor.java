@@ -2,12 +2,11 @@ package xyz.ielis.hyperutil.reference.fasta;
 
 import de.charite.compbio.jannovar.data.ReferenceDictionary;
 import de.charite.compbio.jannovar.data.ReferenceDictionaryBuilder;
-import de.charite.compbio.jannovar.reference.GenomeInterval;
-import de.charite.compbio.jannovar.reference.Strand;
 import htsjdk.samtools.SAMException;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.reference.FastaSequenceIndex;
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.variant.utils.SAMSequenceDictionaryExtractor;
@@ -15,7 +14,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -32,12 +34,27 @@ import java.util.stream.Collectors;
  * Created by Daniel Danis on 11/18/19.
  * </p>
  */
-public class SingleFastaGenomeSequenceAccessor implements GenomeSequenceAccessor {
+public class SingleFastaGenomeSequenceAccessor extends AbstractGenomeSequenceAccessor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SingleFastaGenomeSequenceAccessor.class);
 
 
     protected final IndexedFastaSequenceFile fasta;
+
+    private final Path fastaPath;
+
+    private final FastaSequenceIndex fastaIndex;
+
+    /**
+     * Channel used to serve the batch queries directly, using the offsets from the fasta index.
+     */
+    private final FileChannel fastaChannel;
+
+    /**
+     * Fasta index entries of the contigs, indexed by contig ID.
+     */
+    private final FastaSequenceIndexEntry[] indexEntries;
+
     /**
      * True if all chromosomes in FASTA are prefixed with `chr` and false if all chromosomes are not prefixed.
      */
@@ -52,16 +69,43 @@ public class SingleFastaGenomeSequenceAccessor implements GenomeSequenceAccessor
 
     private final ReferenceDictionary referenceDictionary;
 
+    /**
+     * Index used to convert the soft-masked bases to upper case, <code>null</code> if the case should not be changed.
+     */
+    private final SoftMaskIndex softMaskIndex;
+
     SingleFastaGenomeSequenceAccessor(Path fastaPath, Path fastaFai, Path fastaDict) {
         this(fastaPath, fastaFai, fastaDict, true);
     }
 
     SingleFastaGenomeSequenceAccessor(Path fastaPath, Path fastaFai, Path fastaDict, boolean requireMt) {
-        this.fasta = new IndexedFastaSequenceFile(fastaPath, new FastaSequenceIndex(fastaFai));
+        this(fastaPath, fastaFai, fastaDict, requireMt, null);
+    }
+
+    SingleFastaGenomeSequenceAccessor(Path fastaPath, Path fastaFai, Path fastaDict, boolean requireMt, SoftMaskIndex softMaskIndex) {
+        this.fastaPath = fastaPath;
+        this.fastaIndex = new FastaSequenceIndex(fastaFai);
+        this.fasta = new IndexedFastaSequenceFile(fastaPath, fastaIndex);
         this.requireMt = requireMt;
+        this.softMaskIndex = softMaskIndex;
         this.sequenceDictionary = buildSequenceDictionary(fastaDict);
         this.usesPrefix = figureOutPrefix(sequenceDictionary);
         this.referenceDictionary = buildReferenceDictionary(sequenceDictionary);
+        this.indexEntries = sequenceDictionary.getSequences().stream()
+                .map(seq -> fastaIndex.getIndexEntry(seq.getSequenceName()))
+                .toArray(FastaSequenceIndexEntry[]::new);
+        try {
+            this.fastaChannel = FileChannel.open(fastaPath, StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new InvalidFastaFileException("Unable to open fasta file " + fastaPath, e);
+        }
+    }
+
+    /**
+     * @return offset of the 0-based position <code>pos</code> of the contig in the fasta file
+     */
+    private static long offset(FastaSequenceIndexEntry entry, long pos) {
+        return entry.getLocation() + pos / entry.getBasesPerLine() * entry.getBytesPerLine() + pos % entry.getBasesPerLine();
     }
 
     private static boolean figureOutPrefix(SAMSequenceDictionary sequenceDictionary) {
@@ -142,65 +186,173 @@ public class SingleFastaGenomeSequenceAccessor implements GenomeSequenceAccessor
         return rdb.build();
     }
 
+    @Override
+    public ReferenceDictionary getReferenceDictionary() {
+        return referenceDictionary;
+    }
+
+    /**
+     * @return path to the fasta file backing the accessor
+     */
+    public Path getFastaPath() {
+        return fastaPath;
+    }
+
+    /**
+     * @return index of the fasta file, the index can be used to locate the bases in the file
+     */
+    public FastaSequenceIndex getFastaIndex() {
+        return fastaIndex;
+    }
+
+    /**
+     * @return soft-mask index used to return the sequence in upper case or empty optional if the accessor returns the
+     * bases as they are in the fasta file
+     */
+    public Optional<SoftMaskIndex> getSoftMaskIndex() {
+        return Optional.ofNullable(softMaskIndex);
+    }
+
     /**
-     * Extract nucleotide sequence from reference genome fasta file that is lying inside given {@link GenomeInterval}.
+     * Get sequence of nucleotides from given position specified by chromosome/contig name, starting position and ending
+     * position. Case of nucleotides is not changed, unless the accessor has been configured to return upper case
+     * sequence.
      *
-     * @param query where the nucleotide sequence will be extracted from.
+     * @param chr   chromosome
+     * @param start start position in 1-based numbering
+     * @param end   end chromosomal position in 1-based numbering
      * @return nucleotide sequence
      */
     @Override
-    public Optional<SequenceInterval> fetchSequence(GenomeInterval query) {
-        String queryContigName = query.getRefDict().getContigIDToName().get(query.getChr());
-        if (!referenceDictionary.getContigNameToID().containsKey(queryContigName)) {
-            LOGGER.warn("Unknown chromosome `{}`", queryContigName);
-            return Optional.empty();
+    public String fetchSequence(String chr, int start, int end) throws SAMException {
+        String chrom = fastaContigName(chr);
+        byte[] bases = fetchBases(chrom, start, end);
+        if (softMaskIndex != null) {
+            softMaskIndex.uppercase(chrom, start - 1, bases, 0, bases.length);
         }
+        return new String(bases);
+    }
 
-        // the name we use for contig in FASTA file
-        int primaryContigId = referenceDictionary.getContigNameToID().get(queryContigName);
-        String primaryContigName = referenceDictionary.getContigIDToName().get(primaryContigId);
-        GenomeInterval onStrand = query.withStrand(Strand.FWD);
-        final String seq;
-        try {
-            seq = fetchSequence(primaryContigName, onStrand.getBeginPos() + 1, onStrand.getEndPos());
-        } catch (SAMException e) {
-            LOGGER.warn("Error getting sequence for query `{}`: {}", query, e.getMessage());
-            return Optional.empty();
+    /**
+     * Resolve the contig name to the name used in the fasta file. Both prefixed (<code>chr1</code>) and unprefixed
+     * (<code>1</code>) names, as well as the mitochondrial aliases, are resolved through the {@link ReferenceDictionary}.
+     *
+     * @param chr contig name
+     * @return name of the contig in the fasta file, or the name prefixed according to the fasta file if the contig is
+     * not known
+     */
+    String fastaContigName(String chr) {
+        Integer contigId = getReferenceDictionary().getContigNameToID().get(chr);
+        if (contigId != null && contigId < indexEntries.length) {
+            return indexEntries[contigId].getContig();
         }
-        switch (query.getStrand()) {
-            case FWD:
-                return Optional.of(SequenceIntervalDefault.of(query, seq));
-            case REV:
-                return Optional.of(SequenceIntervalDefault.of(query, SequenceIntervalDefault.reverseComplement(seq)));
-            default:
-                throw new IllegalArgumentException(String.format("Unknown strand `%s`", query.getStrand()));
+        if (usesPrefix) {
+            return chr.startsWith("chr") ? chr : "chr" + chr;
         }
+        return chr.startsWith("chr") ? chr.substring(3) : chr;
     }
 
+    /**
+     * Fetch sequences of many intervals at once. The bases are read straight from the fasta file into the batch, using
+     * the offsets from the fasta index. The case of the bases is handled the same way as in
+     * {@link #fetchSequence(String, int, int)}.
+     *
+     * @see GenomeSequenceAccessor#fetchSequences(int[], int[], int[], boolean[])
+     */
     @Override
-    public ReferenceDictionary getReferenceDictionary() {
-        return referenceDictionary;
+    public SequenceBatch fetchSequences(int[] contigIds, int[] begins, int[] ends, boolean[] reverseStrand) {
+        SequenceBatch.Builder batch = SequenceBatch.newBuilder(contigIds, begins, ends, reverseStrand);
+        // holds the bases with line terminators of the rows spanning multiple lines
+        ByteBuffer raw = ByteBuffer.allocate(1 << 12);
+        for (int i = 0; i < contigIds.length; i++) {
+            int contigId = contigIds[i], begin = begins[i], end = ends[i];
+            if (contigId < 0 || contigId >= indexEntries.length) {
+                batch.fail(SequenceBatch.UNKNOWN_CONTIG);
+                continue;
+            }
+            FastaSequenceIndexEntry entry = indexEntries[contigId];
+            if (begin < 0 || begin > end || end > entry.getSize()) {
+                batch.fail(SequenceBatch.OUT_OF_BOUNDS);
+                continue;
+            }
+            int length = end - begin;
+            batch.ensureCapacity(length);
+            byte[] bases = batch.buffer();
+            int position = batch.position();
+            try {
+                long from = offset(entry, begin);
+                int rawLength = length == 0 ? 0 : (int) (offset(entry, end - 1) + 1 - from);
+                if (rawLength == length) {
+                    // no line terminators within the row, read right into the batch
+                    read(ByteBuffer.wrap(bases, position, length), from);
+                } else {
+                    if (raw.capacity() < rawLength) {
+                        raw = ByteBuffer.allocate(rawLength);
+                    }
+                    raw.clear().limit(rawLength);
+                    read(raw, from);
+                    int basesPerLine = entry.getBasesPerLine();
+                    int copied = 0;
+                    for (long p = begin; p < end; ) {
+                        long lineEnd = Math.min(end, (p / basesPerLine + 1) * basesPerLine);
+                        System.arraycopy(raw.array(), (int) (offset(entry, p) - from), bases, position + copied, (int) (lineEnd - p));
+                        copied += (int) (lineEnd - p);
+                        p = lineEnd;
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Error reading {}:{}-{}: {}", entry.getContig(), begin, end, e.getMessage());
+                batch.fail(SequenceBatch.ERROR);
+                continue;
+            }
+            if (softMaskIndex != null) {
+                softMaskIndex.uppercase(entry.getContig(), begin, bases, position, length);
+            }
+            if (reverseStrand != null && reverseStrand[i]) {
+                ReverseComplement.reverseComplement(bases, position, position + length);
+            }
+            batch.commit(length);
+        }
+        return batch.build();
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = fastaChannel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException(String.format("Unexpected end of fasta file at %d", position));
+            }
+            position += read;
+        }
     }
 
     /**
-     * Get sequence of nucleotides from given position specified by chromosome/contig name, starting position and ending
-     * position. Case of nucleotides is not changed.
+     * Load the contig into memory of the accessor, if the accessor holds contigs in memory. The file pages of the
+     * contig are expected to be in the page cache already, hence this accessor does nothing.
      *
-     * @param chr   chromosome
+     * @param chrom name of the FASTA contig
+     */
+    void preload(String chrom) {
+        // no-op
+    }
+
+    /**
+     * Get bases of the FASTA contig. The returned array is owned by the caller and can be modified.
+     *
+     * @param chrom contig name as used in the FASTA file
      * @param start start position in 1-based numbering
      * @param end   end chromosomal position in 1-based numbering
-     * @return nucleotide sequence
+     * @return array with bases
+     * @throws SAMException if the query cannot be served
      */
-    @Override
-    public String fetchSequence(String chr, int start, int end) throws SAMException {
-        // Fasta from UCSC has prefix chr, hence we need to have it there from now on
-        String chrom = (chr.startsWith("chr")) ? chr : "chr" + chr;
+    protected byte[] fetchBases(String chrom, int start, int end) throws SAMException {
         ReferenceSequence referenceSequence = fasta.getSubsequenceAt(chrom, start, end);
-        return new String(referenceSequence.getBases());
+        return referenceSequence.getBases();
     }
 
     @Override
     public void close() throws IOException {
+        this.fastaChannel.close();
         this.fasta.close();
     }
 }
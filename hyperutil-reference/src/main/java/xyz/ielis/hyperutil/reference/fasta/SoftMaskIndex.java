@@ -0,0 +1,443 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Index of soft-masked (lowercase) runs of a fasta file. The repeat regions are usually soft-masked in the reference
+ * genome fasta files, the index allows to answer the mask queries in <code>O(log n)</code> without reading the bases.
+ * <p>
+ * The index is built by scanning the fasta file with {@link #build(Path)} and it can be stored next to the fasta file
+ * using {@link #write(Path)}. By convention, index of <code>some.fa</code> is stored at <code>some.fa.mask</code>. The
+ * stored index records the size of the fasta file and the contig lengths, a stored index that does not match the fasta
+ * file is rebuilt.
+ * </p>
+ * <p>
+ * Runs are stored in 0-based half-open coordinates on the forward strand. Contigs of the query intervals are resolved
+ * through the {@link ReferenceDictionary} of the interval, hence any alias of the
+ * contig is recognized (e.g. <code>MT</code> for <code>chrM</code>). Other contigs are looked up by name, both the
+ * prefixed (<code>chr1</code>) and the unprefixed (<code>1</code>) names are recognized.
+ * </p>
+ * <p>
+ * This class is immutable and thread-safe.
+ * </p>
+ */
+public class SoftMaskIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SoftMaskIndex.class);
+
+    /**
+     * Magic number of the serialized index, `HUSM` in ASCII.
+     */
+    private static final int MAGIC = 0x4855534D;
+
+    private static final int VERSION = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Map<String, Runs> runsByContig;
+
+    /**
+     * Size of the indexed fasta file in bytes.
+     */
+    private final long fastaSize;
+
+    private SoftMaskIndex(Map<String, Runs> runsByContig, long fastaSize) {
+        this.runsByContig = runsByContig;
+        this.fastaSize = fastaSize;
+    }
+
+    /**
+     * Build the index by scanning the fasta file.
+     *
+     * @param fastaPath path to the fasta file
+     * @return the index
+     * @throws InvalidFastaFileException if the file cannot be read
+     */
+    public static SoftMaskIndex build(Path fastaPath) {
+        LOGGER.debug("Building soft-mask index for `{}`", fastaPath);
+        Map<String, Runs> runs = new LinkedHashMap<>();
+        long fastaSize;
+        try (InputStream is = Files.newInputStream(fastaPath)) {
+            fastaSize = Files.size(fastaPath);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            RunsBuilder current = null;
+            StringBuilder header = null;
+            boolean lineStart = true;
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (header != null) {
+                        // reading the contig name
+                        if (b == '\n') {
+                            current = new RunsBuilder(parseContigName(header));
+                            header = null;
+                            lineStart = true;
+                        } else {
+                            header.append((char) b);
+                        }
+                        continue;
+                    }
+                    if (b == '>' && lineStart) {
+                        if (current != null) {
+                            runs.put(current.contig, current.build());
+                        }
+                        header = new StringBuilder();
+                        continue;
+                    }
+                    lineStart = b == '\n';
+                    if (b == '\n' || b == '\r') {
+                        continue;
+                    }
+                    if (current == null) {
+                        throw new InvalidFastaFileException(String.format("Sequence data found before the first header in `%s`", fastaPath));
+                    }
+                    current.add(b >= 'a' && b <= 'z');
+                }
+            }
+            if (current != null) {
+                runs.put(current.contig, current.build());
+            }
+        } catch (IOException e) {
+            throw new InvalidFastaFileException(String.format("Error reading fasta file `%s`", fastaPath), e);
+        }
+        return new SoftMaskIndex(Map.copyOf(runs), fastaSize);
+    }
+
+    private static String parseContigName(StringBuilder header) {
+        String line = header.toString().trim();
+        int whitespace = 0;
+        while (whitespace < line.length() && !Character.isWhitespace(line.charAt(whitespace))) {
+            whitespace++;
+        }
+        return line.substring(0, whitespace);
+    }
+
+    /**
+     * Read the index that has been previously stored by {@link #write(Path)}.
+     *
+     * @param indexPath path to the stored index
+     * @return the index
+     * @throws IOException if the file cannot be read or if it is not a soft-mask index
+     */
+    public static SoftMaskIndex read(Path indexPath) throws IOException {
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath), BUFFER_SIZE))) {
+            if (is.readInt() != MAGIC) {
+                throw new IOException(String.format("`%s` is not a soft-mask index", indexPath));
+            }
+            int version = is.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported soft-mask index version %d in `%s`", version, indexPath));
+            }
+            long fastaSize = is.readLong();
+            int contigCount = is.readInt();
+            Map<String, Runs> runs = new HashMap<>(contigCount * 2);
+            for (int i = 0; i < contigCount; i++) {
+                String contig = is.readUTF();
+                int length = is.readInt();
+                int n = is.readInt();
+                int[] begins = new int[n], ends = new int[n];
+                int previousEnd = 0;
+                for (int j = 0; j < n; j++) {
+                    // stored as the gap preceding the run and the run length
+                    begins[j] = previousEnd + is.readInt();
+                    ends[j] = begins[j] + is.readInt();
+                    previousEnd = ends[j];
+                }
+                runs.put(contig, new Runs(length, begins, ends));
+            }
+            return new SoftMaskIndex(Map.copyOf(runs), fastaSize);
+        }
+    }
+
+    /**
+     * Load the index from <code>indexPath</code> if the file exists and matches the fasta file. Otherwise build the
+     * index and try to store it at <code>indexPath</code>.
+     *
+     * @param fastaPath  path to the fasta file
+     * @param fastaIndex index of the fasta file
+     * @param indexPath  path to the index
+     * @return the index
+     */
+    public static SoftMaskIndex readOrBuild(Path fastaPath, FastaSequenceIndex fastaIndex, Path indexPath) {
+        if (Files.isRegularFile(indexPath)) {
+            try {
+                LOGGER.debug("Reading soft-mask index from `{}`", indexPath);
+                SoftMaskIndex index = read(indexPath);
+                if (index.matches(fastaPath, fastaIndex)) {
+                    return index;
+                }
+                LOGGER.warn("Soft-mask index at `{}` does not match `{}`, rebuilding", indexPath, fastaPath);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to read soft-mask index from `{}`, rebuilding: {}", indexPath, e.getMessage());
+            }
+        }
+        SoftMaskIndex index = build(fastaPath);
+        try {
+            index.write(indexPath);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to store soft-mask index at `{}`: {}", indexPath, e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Store the index.
+     *
+     * @param indexPath where to store the index
+     * @throws IOException if the index cannot be written
+     */
+    public void write(Path indexPath) throws IOException {
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath), BUFFER_SIZE))) {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeLong(fastaSize);
+            os.writeInt(runsByContig.size());
+            for (Map.Entry<String, Runs> entry : runsByContig.entrySet()) {
+                os.writeUTF(entry.getKey());
+                Runs runs = entry.getValue();
+                os.writeInt(runs.length);
+                os.writeInt(runs.size());
+                int previousEnd = 0;
+                for (int i = 0; i < runs.size(); i++) {
+                    os.writeInt(runs.begins[i] - previousEnd);
+                    os.writeInt(runs.ends[i] - runs.begins[i]);
+                    previousEnd = runs.ends[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * @param fastaPath  path to the fasta file
+     * @param fastaIndex index of the fasta file
+     * @return true if the index has been built from a fasta file with the same size, contig names and contig lengths
+     */
+    boolean matches(Path fastaPath, FastaSequenceIndex fastaIndex) throws IOException {
+        if (Files.size(fastaPath) != fastaSize || fastaIndex.size() != runsByContig.size()) {
+            return false;
+        }
+        for (FastaSequenceIndexEntry entry : fastaIndex) {
+            Runs runs = runsByContig.get(entry.getContig());
+            if (runs == null || runs.length != entry.getSize()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return names of the indexed contigs
+     */
+    public Set<String> getContigNames() {
+        return runsByContig.keySet();
+    }
+
+    /**
+     * @param interval query interval
+     * @return true if at least one base of the <code>interval</code> is soft-masked
+     */
+    public boolean isMasked(GenomeInterval interval) {
+        GenomeInterval onFwd = interval.withStrand(Strand.FWD);
+        Runs runs = runsFor(onFwd);
+        int idx = runs.firstEndingAfter(onFwd.getBeginPos());
+        return idx < runs.size() && runs.begins[idx] < onFwd.getEndPos();
+    }
+
+    /**
+     * @param interval query interval
+     * @return fraction of soft-masked bases of the <code>interval</code>, <code>0</code> for an empty interval
+     */
+    public double maskedFraction(GenomeInterval interval) {
+        if (interval.length() == 0) {
+            return 0.;
+        }
+        GenomeInterval onFwd = interval.withStrand(Strand.FWD);
+        Runs runs = runsFor(onFwd);
+        long masked = runs.maskedBefore(onFwd.getEndPos()) - runs.maskedBefore(onFwd.getBeginPos());
+        return (double) masked / interval.length();
+    }
+
+    /**
+     * @param interval query interval
+     * @return soft-masked runs that overlap with the <code>interval</code>, as intervals on the forward strand
+     */
+    public List<GenomeInterval> overlappingMaskedRuns(GenomeInterval interval) {
+        GenomeInterval onFwd = interval.withStrand(Strand.FWD);
+        Runs runs = runsFor(onFwd);
+        List<GenomeInterval> overlapping = new ArrayList<>();
+        for (int i = runs.firstEndingAfter(onFwd.getBeginPos()); i < runs.size() && runs.begins[i] < onFwd.getEndPos(); i++) {
+            overlapping.add(new GenomeInterval(onFwd.getRefDict(), Strand.FWD, onFwd.getChr(), runs.begins[i], runs.ends[i]));
+        }
+        return overlapping;
+    }
+
+    /**
+     * Convert soft-masked bases of the array to upper case. Only the bases within the masked runs are visited.
+     *
+     * @param contig contig name
+     * @param begin  0-based position of the first base of the array region on the forward strand
+     * @param bases  array with bases
+     * @param offset offset of the first base in the array
+     * @param length number of bases
+     */
+    void uppercase(String contig, int begin, byte[] bases, int offset, int length) {
+        Runs runs = runsFor(contig);
+        if (runs == null) {
+            return;
+        }
+        int end = begin + length;
+        for (int i = runs.firstEndingAfter(begin); i < runs.size() && runs.begins[i] < end; i++) {
+            int from = offset + Math.max(runs.begins[i], begin) - begin;
+            int to = offset + Math.min(runs.ends[i], end) - begin;
+            for (int j = from; j < to; j++) {
+                byte b = bases[j];
+                if (b >= 'a' && b <= 'z') {
+                    bases[j] = (byte) (b - ('a' - 'A'));
+                }
+            }
+        }
+    }
+
+    private Runs runsFor(GenomeInterval interval) {
+        ReferenceDictionary rd = interval.getRefDict();
+        String contig = rd.getContigIDToName().get(interval.getChr());
+        Runs runs = contig == null ? null : runsByContig.get(contig);
+        if (runs == null) {
+            // the fasta file may use an alias of the contig, e.g. chrM for MT
+            for (Map.Entry<String, Integer> alias : rd.getContigNameToID().entrySet()) {
+                if (alias.getValue() == interval.getChr() && runsByContig.containsKey(alias.getKey())) {
+                    runs = runsByContig.get(alias.getKey());
+                    break;
+                }
+            }
+        }
+        if (runs == null) {
+            runs = runsFor(contig);
+        }
+        if (runs == null) {
+            throw new IllegalArgumentException(String.format("Unknown contig `%s`", contig));
+        }
+        return runs;
+    }
+
+    private Runs runsFor(String contig) {
+        if (contig == null) {
+            return null;
+        }
+        Runs runs = runsByContig.get(contig);
+        if (runs == null) {
+            runs = runsByContig.get(contig.startsWith("chr") ? contig.substring(3) : "chr" + contig);
+        }
+        return runs;
+    }
+
+    /**
+     * Masked runs of a single contig.
+     */
+    private static final class Runs {
+
+        /**
+         * Length of the contig.
+         */
+        private final int length;
+        private final int[] begins;
+        private final int[] ends;
+        /**
+         * <code>cumulative[i]</code> is the number of masked bases in the runs preceding the i-th run.
+         */
+        private final long[] cumulative;
+
+        private Runs(int length, int[] begins, int[] ends) {
+            this.length = length;
+            this.begins = begins;
+            this.ends = ends;
+            this.cumulative = new long[begins.length + 1];
+            for (int i = 0; i < begins.length; i++) {
+                cumulative[i + 1] = cumulative[i] + ends[i] - begins[i];
+            }
+        }
+
+        int size() {
+            return begins.length;
+        }
+
+        /**
+         * @return index of the first run that ends after the position, or {@link #size()} if there is no such run
+         */
+        int firstEndingAfter(int pos) {
+            int lo = 0, hi = ends.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ends[mid] <= pos) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * @return number of masked bases preceding the 0-based position
+         */
+        long maskedBefore(int pos) {
+            int idx = firstEndingAfter(pos);
+            long masked = cumulative[idx];
+            if (idx < size() && begins[idx] < pos) {
+                masked += pos - begins[idx];
+            }
+            return masked;
+        }
+    }
+
+    private static final class RunsBuilder {
+
+        private final String contig;
+
+        private int[] begins = new int[16];
+        private int[] ends = new int[16];
+        private int size = 0;
+
+        private int position = 0;
+        private boolean inRun = false;
+
+        private RunsBuilder(String contig) {
+            this.contig = contig;
+        }
+
+        void add(boolean masked) {
+            if (masked && !inRun) {
+                if (size == begins.length) {
+                    begins = Arrays.copyOf(begins, size * 2);
+                    ends = Arrays.copyOf(ends, size * 2);
+                }
+                begins[size] = position;
+                inRun = true;
+            } else if (!masked && inRun) {
+                ends[size++] = position;
+                inRun = false;
+            }
+            position++;
+        }
+
+        Runs build() {
+            if (inRun) {
+                ends[size++] = position;
+                inRun = false;
+            }
+            return new Runs(position, Arrays.copyOf(begins, size), Arrays.copyOf(ends, size));
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import htsjdk.samtools.SAMException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * This accessor holds in memory only the target regions, e.g. exome or gene panel targets, extended by padding. The
+ * padded target regions are read from a BED file and merged, the bases of the merged regions are stored in a single
+ * array. Each contig has a sorted index of its regions.
+ * <p>
+ * The queries within a merged region are served from memory. The queries outside of the regions are served from the
+ * fasta file or rejected, depending on {@link OffTargetPolicy}.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class TargetedGenomeSequenceAccessor extends SingleFastaGenomeSequenceAccessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TargetedGenomeSequenceAccessor.class);
+
+    private final OffTargetPolicy offTargetPolicy;
+
+    private final int padding;
+
+    /**
+     * Bases of all merged regions.
+     */
+    private final byte[] bases;
+
+    /**
+     * Regions of the contigs, indexed by contig ID, <code>null</code> for the contigs without targets.
+     */
+    private final ContigTargets[] targets;
+
+    private final int targetCount;
+
+    TargetedGenomeSequenceAccessor(Path fastaPath, Path fastaFai, Path fastaDict, boolean requireMt, SoftMaskIndex softMaskIndex,
+                                   Path targetRegionsPath, int padding, OffTargetPolicy offTargetPolicy) {
+        super(fastaPath, fastaFai, fastaDict, requireMt, softMaskIndex);
+        if (padding < 0) {
+            closeQuietly();
+            throw new IllegalArgumentException(String.format("Padding must be non-negative: %d", padding));
+        }
+        this.padding = padding;
+        this.offTargetPolicy = offTargetPolicy;
+
+        List<GenomeInterval> regions;
+        try {
+            regions = BedReader.read(targetRegionsPath, getReferenceDictionary());
+        } catch (IOException e) {
+            closeQuietly();
+            throw new IllegalArgumentException(String.format("Unable to read target regions from `%s`", targetRegionsPath), e);
+        }
+        int[][] merged = merge(regions, padding, getReferenceDictionary());
+        int[] contigIds = merged[0], begins = merged[1], ends = merged[2];
+        this.targetCount = contigIds.length;
+
+        // the batch holds the bases of all regions in a single array, in the order of the regions
+        SequenceBatch batch = super.fetchSequences(contigIds, begins, ends, null);
+        for (int i = 0; i < contigIds.length; i++) {
+            if (!batch.isOk(i)) {
+                closeQuietly();
+                throw new InvalidFastaFileException(String.format("Unable to load target region [%d, %d) of contig %d",
+                        begins[i], ends[i], contigIds[i]));
+            }
+        }
+        // the batch buffer grows ahead of the bases, keep only the loaded bases
+        this.bases = Arrays.copyOf(batch.getBases(), batch.getOffsets()[contigIds.length]);
+        this.targets = index(contigIds, begins, ends, batch.getOffsets(), getReferenceDictionary());
+        LOGGER.debug("Loaded {} bases of {} padded target regions", batch.getOffsets()[contigIds.length], targetCount);
+    }
+
+    /**
+     * Pad and merge the regions.
+     *
+     * @return contig IDs, begins and ends of the merged regions sorted by contig ID and begin
+     */
+    private static int[][] merge(List<GenomeInterval> regions, int padding, ReferenceDictionary rd) {
+        List<GenomeInterval> sorted = new ArrayList<>(regions);
+        sorted.sort(Comparator.comparingInt(GenomeInterval::getChr).thenComparingInt(GenomeInterval::getBeginPos));
+        int[] contigIds = new int[sorted.size()], begins = new int[sorted.size()], ends = new int[sorted.size()];
+        int n = 0;
+        for (GenomeInterval region : sorted) {
+            int contigId = region.getChr();
+            int begin = Math.max(0, region.getBeginPos() - padding);
+            int end = (int) Math.min(rd.getContigIDToLength().get(contigId), (long) region.getEndPos() + padding);
+            if (n > 0 && contigIds[n - 1] == contigId && begin <= ends[n - 1]) {
+                ends[n - 1] = Math.max(ends[n - 1], end);
+            } else {
+                contigIds[n] = contigId;
+                begins[n] = begin;
+                ends[n] = end;
+                n++;
+            }
+        }
+        return new int[][]{Arrays.copyOf(contigIds, n), Arrays.copyOf(begins, n), Arrays.copyOf(ends, n)};
+    }
+
+    private static ContigTargets[] index(int[] contigIds, int[] begins, int[] ends, int[] offsets, ReferenceDictionary rd) {
+        int maxContigId = rd.getContigIDToName().keySet().stream().mapToInt(Integer::intValue).max().orElse(-1);
+        ContigTargets[] targets = new ContigTargets[maxContigId + 1];
+        for (int from = 0; from < contigIds.length; ) {
+            int to = from;
+            while (to < contigIds.length && contigIds[to] == contigIds[from]) {
+                to++;
+            }
+            targets[contigIds[from]] = new ContigTargets(Arrays.copyOfRange(begins, from, to),
+                    Arrays.copyOfRange(ends, from, to), Arrays.copyOfRange(offsets, from, to));
+            from = to;
+        }
+        return targets;
+    }
+
+    private void closeQuietly() {
+        try {
+            super.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error closing the accessor: {}", e.getMessage());
+        }
+    }
+
+    public OffTargetPolicy getOffTargetPolicy() {
+        return offTargetPolicy;
+    }
+
+    public int getPadding() {
+        return padding;
+    }
+
+    /**
+     * @return number of the merged padded target regions
+     */
+    public int getTargetCount() {
+        return targetCount;
+    }
+
+    /**
+     * @return number of bases held in memory
+     */
+    public long getTargetedBases() {
+        return Arrays.stream(targets).filter(Objects::nonNull).mapToLong(ContigTargets::bases).sum();
+    }
+
+    /**
+     * @return offset of the region <code>[begin, end)</code> into the bases array or <code>-1</code> if the region is
+     * not contained in a merged target region
+     */
+    private int find(int contigId, int begin, int end) {
+        if (contigId < 0 || contigId >= targets.length || targets[contigId] == null) {
+            return -1;
+        }
+        ContigTargets contig = targets[contigId];
+        // the last region starting at or before the begin
+        int idx = Arrays.binarySearch(contig.begins, begin);
+        if (idx < 0) {
+            idx = -idx - 2;
+        }
+        if (idx < 0 || end > contig.ends[idx]) {
+            return -1;
+        }
+        return contig.offsets[idx] + begin - contig.begins[idx];
+    }
+
+    /**
+     * Get sequence of nucleotides from given position specified by chromosome/contig name, starting position and ending
+     * position. The sequences within the target regions are served from memory.
+     *
+     * @param chr   chromosome
+     * @param start start position in 1-based numbering
+     * @param end   end chromosomal position in 1-based numbering
+     * @return nucleotide sequence
+     * @throws SAMException if the query is outside of the target regions and the off-target queries are rejected
+     */
+    @Override
+    public String fetchSequence(String chr, int start, int end) throws SAMException {
+        Integer contigId = getReferenceDictionary().getContigNameToID().get(chr);
+        if (contigId != null && start >= 1 && start <= end + 1) {
+            int offset = find(contigId, start - 1, end);
+            if (offset >= 0) {
+                return new String(bases, offset, end - start + 1, StandardCharsets.US_ASCII);
+            }
+        }
+        if (offTargetPolicy == OffTargetPolicy.REJECT) {
+            throw new SAMException(String.format("Query %s:%d-%d is outside of the target regions", chr, start, end));
+        }
+        return super.fetchSequence(chr, start, end);
+    }
+
+    /**
+     * Fetch sequences of many intervals at once. The rows within the target regions are copied from memory. The rows
+     * outside of the target regions are read from the fasta file or get {@link SequenceBatch#REJECTED} status.
+     *
+     * @see GenomeSequenceAccessor#fetchSequences(int[], int[], int[], boolean[])
+     */
+    @Override
+    public SequenceBatch fetchSequences(int[] contigIds, int[] begins, int[] ends, boolean[] reverseStrand) {
+        SequenceBatch.Builder batch = SequenceBatch.newBuilder(contigIds, begins, ends, reverseStrand);
+        for (int i = 0; i < contigIds.length; i++) {
+            int offset = begins[i] <= ends[i] ? find(contigIds[i], begins[i], ends[i]) : -1;
+            if (offset >= 0) {
+                int length = ends[i] - begins[i];
+                batch.ensureCapacity(length);
+                int position = batch.position();
+                System.arraycopy(bases, offset, batch.buffer(), position, length);
+                if (reverseStrand != null && reverseStrand[i]) {
+                    ReverseComplement.reverseComplement(batch.buffer(), position, position + length);
+                }
+                batch.commit(length);
+            } else if (offTargetPolicy == OffTargetPolicy.REJECT) {
+                batch.fail(SequenceBatch.REJECTED);
+            } else {
+                SequenceBatch row = super.fetchSequences(new int[]{contigIds[i]}, new int[]{begins[i]}, new int[]{ends[i]},
+                        reverseStrand == null ? null : new boolean[]{reverseStrand[i]});
+                if (row.isOk(0)) {
+                    batch.append(Arrays.copyOfRange(row.getBases(), row.getOffsets()[0], row.getOffsets()[1]));
+                } else {
+                    batch.fail(row.getStatus(0));
+                }
+            }
+        }
+        return batch.build();
+    }
+
+    /**
+     * What to do with the queries outside of the target regions.
+     */
+    public enum OffTargetPolicy {
+        /**
+         * Read the sequence from the fasta file.
+         */
+        FALLBACK,
+        /**
+         * Reject the query, {@link GenomeSequenceAccessor#fetchSequence(GenomeInterval)} returns an empty optional.
+         */
+        REJECT
+    }
+
+    private static final class ContigTargets {
+
+        private final int[] begins;
+        private final int[] ends;
+        private final int[] offsets;
+
+        private ContigTargets(int[] begins, int[] ends, int[] offsets) {
+            this.begins = begins;
+            this.ends = ends;
+            this.offsets = offsets;
+        }
+
+        private long bases() {
+            long total = 0;
+            for (int i = 0; i < begins.length; i++) {
+                total += ends[i] - begins[i];
+            }
+            return total;
+        }
+    }
+}
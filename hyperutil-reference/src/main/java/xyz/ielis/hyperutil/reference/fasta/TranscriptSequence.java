@@ -0,0 +1,77 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.reference.TranscriptModel;
+
+import java.util.Objects;
+
+/**
+ * Spliced sequences of a {@link TranscriptModel} assembled by {@link TranscriptSequenceAssembler}. The sequences are
+ * on the strand of the transcript. CDS and protein sequences are empty for non-coding transcripts.
+ */
+public final class TranscriptSequence {
+
+    private final TranscriptModel transcript;
+
+    private final String cdna;
+
+    private final String cds;
+
+    private final String protein;
+
+    TranscriptSequence(TranscriptModel transcript, String cdna, String cds, String protein) {
+        this.transcript = transcript;
+        this.cdna = cdna;
+        this.cds = cds;
+        this.protein = protein;
+    }
+
+    public TranscriptModel getTranscript() {
+        return transcript;
+    }
+
+    /**
+     * @return sequence of the exons in the transcript order
+     */
+    public String getCdna() {
+        return cdna;
+    }
+
+    /**
+     * @return coding part of the cDNA sequence, including the stop codon
+     */
+    public String getCds() {
+        return cds;
+    }
+
+    /**
+     * @return translation of the CDS, stop codons are represented by <code>*</code> and codons with non-ACGT bases by
+     * <code>X</code>
+     */
+    public String getProtein() {
+        return protein;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TranscriptSequence that = (TranscriptSequence) o;
+        return Objects.equals(transcript, that.transcript) &&
+                Objects.equals(cdna, that.cdna) &&
+                Objects.equals(cds, that.cds) &&
+                Objects.equals(protein, that.protein);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(transcript, cdna, cds, protein);
+    }
+
+    @Override
+    public String toString() {
+        return "TX_SEQ{" + transcript.getAccession() +
+                ", cDNA=" + cdna.length() + "bp" +
+                ", CDS=" + cds.length() + "bp" +
+                ", protein=" + protein.length() + "aa}";
+    }
+}
@@ -0,0 +1,195 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import de.charite.compbio.jannovar.reference.TranscriptModel;
+import htsjdk.samtools.SAMException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Assembles spliced cDNA, CDS and protein sequences of {@link TranscriptModel}s.
+ * <p>
+ * The exons are fetched from the accessor in a single pass, the neighboring exons that are less than
+ * {@value #MAX_GAP} bases apart are fetched by a single query. The exon sequences are copied into a single buffer that
+ * is reverse complemented once for the transcripts on {@link Strand#REV}. The CDS is translated using the standard
+ * genetic code, the codons are looked up in a table indexed by a 6-bit code of the codon.
+ * </p>
+ * <p>
+ * This class is thread-safe if the underlying accessor is thread-safe.
+ * </p>
+ */
+public class TranscriptSequenceAssembler {
+
+    /**
+     * Exons separated by introns shorter than this are fetched by a single query.
+     */
+    static final int MAX_GAP = 1 << 16;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TranscriptSequenceAssembler.class);
+
+    /**
+     * Amino acids of the standard genetic code indexed by <code>16 * b1 + 4 * b2 + b3</code>, where the bases are coded
+     * as <code>A=0, C=1, G=2, T=3</code>.
+     */
+    private static final char[] CODON_TABLE = ("KNKNTTTTRSRSIIMI" + "QHQHPPPPRRRRLLLL" + "EDEDAAAAGGGGVVVV" + "*Y*YSSSS*CWCLFLF").toCharArray();
+
+    /**
+     * 2-bit codes of the ASCII bases, <code>-1</code> for the non-ACGT symbols.
+     */
+    private static final byte[] BASE_CODES = makeBaseCodes();
+
+    private final GenomeSequenceAccessor accessor;
+
+    private TranscriptSequenceAssembler(GenomeSequenceAccessor accessor) {
+        this.accessor = Objects.requireNonNull(accessor, "Accessor cannot be null");
+    }
+
+    /**
+     * @param accessor accessor to fetch the exon sequences from
+     * @return the assembler
+     */
+    public static TranscriptSequenceAssembler of(GenomeSequenceAccessor accessor) {
+        return new TranscriptSequenceAssembler(accessor);
+    }
+
+    private static byte[] makeBaseCodes() {
+        byte[] codes = new byte[128];
+        Arrays.fill(codes, (byte) -1);
+        String bases = "ACGT";
+        for (byte i = 0; i < bases.length(); i++) {
+            codes[bases.charAt(i)] = i;
+            codes[Character.toLowerCase(bases.charAt(i))] = i;
+        }
+        codes['U'] = 3;
+        codes['u'] = 3;
+        return codes;
+    }
+
+    /**
+     * Translate nucleotide sequence <code>seq[from, to)</code> into the protein sequence using the standard genetic code.
+     * The trailing incomplete codon is ignored.
+     *
+     * @param seq  array with nucleotide sequence
+     * @param from index of the first base of the first codon
+     * @param to   index past the last base
+     * @return protein sequence, stop codons are represented by <code>*</code> and codons with non-ACGT bases by
+     * <code>X</code>
+     */
+    static String translate(char[] seq, int from, int to) {
+        char[] protein = new char[(to - from) / 3];
+        for (int i = 0; i < protein.length; i++) {
+            int pos = from + 3 * i;
+            int code = (baseCode(seq[pos]) << 4) | (baseCode(seq[pos + 1]) << 2) | baseCode(seq[pos + 2]);
+            // the sign bit of a negative base code survives the shifts, hence the codon code is negative as well
+            protein[i] = code < 0 ? 'X' : CODON_TABLE[code];
+        }
+        return new String(protein);
+    }
+
+    private static int baseCode(char base) {
+        return base < BASE_CODES.length ? BASE_CODES[base] : -1;
+    }
+
+    /**
+     * Assemble sequences of the transcript.
+     *
+     * @param transcript transcript to assemble
+     * @return the sequences or empty optional if the exons could not be fetched
+     */
+    public Optional<TranscriptSequence> assemble(TranscriptModel transcript) {
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        String contigName = transcript.getTXRegion().getRefDict().getContigIDToName().get(transcript.getChr());
+        Integer contigId = rd.getContigNameToID().get(contigName);
+        if (contigId == null) {
+            LOGGER.warn("Unknown chromosome `{}` of transcript `{}`", contigName, transcript.getAccession());
+            return Optional.empty();
+        }
+        String primaryContigName = rd.getContigIDToName().get(contigId);
+
+        // exons on FWD strand in the genomic order
+        List<GenomeInterval> exons = transcript.getExonRegions().stream()
+                .map(exon -> exon.withStrand(Strand.FWD))
+                .sorted(Comparator.comparingInt(GenomeInterval::getBeginPos))
+                .collect(Collectors.toList());
+        int length = exons.stream().mapToInt(GenomeInterval::length).sum();
+
+        char[] cdna = new char[length];
+        try {
+            fetchExons(primaryContigName, exons, cdna);
+        } catch (SAMException e) {
+            LOGGER.warn("Error getting sequence of transcript `{}`: {}", transcript.getAccession(), e.getMessage());
+            return Optional.empty();
+        }
+
+        // coordinates of CDS in the cDNA on FWD strand
+        int cdsBegin = 0, cdsEnd = 0;
+        if (transcript.isCoding()) {
+            GenomeInterval cds = transcript.getCDSRegion().withStrand(Strand.FWD);
+            cdsBegin = cdnaOffset(exons, cds.getBeginPos());
+            cdsEnd = cdnaOffset(exons, cds.getEndPos());
+            if (cdsBegin < 0 || cdsEnd < cdsBegin) {
+                LOGGER.warn("CDS of transcript `{}` is not located within the exons", transcript.getAccession());
+                cdsBegin = cdsEnd = 0;
+            }
+        }
+
+        if (transcript.getStrand() == Strand.REV) {
+            ReverseComplement.reverseComplement(cdna, 0, cdna.length);
+            int begin = length - cdsEnd;
+            cdsEnd = length - cdsBegin;
+            cdsBegin = begin;
+        }
+
+        String cds = new String(cdna, cdsBegin, cdsEnd - cdsBegin);
+        String protein = translate(cdna, cdsBegin, cdsEnd);
+        return Optional.of(new TranscriptSequence(transcript, new String(cdna), cds, protein));
+    }
+
+    /**
+     * Fetch the exon sequences, coalescing the exons that are close to each other, and copy them into the buffer.
+     */
+    private void fetchExons(String contig, List<GenomeInterval> exons, char[] buffer) {
+        int offset = 0;
+        int i = 0;
+        while (i < exons.size()) {
+            // find the exons that are fetched by a single query
+            int j = i + 1;
+            while (j < exons.size() && exons.get(j).getBeginPos() - exons.get(j - 1).getEndPos() < MAX_GAP) {
+                j++;
+            }
+            int begin = exons.get(i).getBeginPos();
+            int end = exons.get(j - 1).getEndPos();
+            String sequence = accessor.fetchSequence(contig, begin + 1, end);
+            for (int k = i; k < j; k++) {
+                GenomeInterval exon = exons.get(k);
+                sequence.getChars(exon.getBeginPos() - begin, exon.getEndPos() - begin, buffer, offset);
+                offset += exon.length();
+            }
+            i = j;
+        }
+    }
+
+    /**
+     * @return offset of the FWD strand position in the cDNA on FWD strand or <code>-1</code> if the position is not
+     * located within the exons
+     */
+    private static int cdnaOffset(List<GenomeInterval> exons, int pos) {
+        int offset = 0;
+        for (GenomeInterval exon : exons) {
+            if (exon.getBeginPos() <= pos && pos <= exon.getEndPos()) {
+                return offset + pos - exon.getBeginPos();
+            }
+            offset += exon.length();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,131 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class AdaptiveGenomeSequenceAccessorTest {
+
+    private static final Path FASTA = Paths.get(AdaptiveGenomeSequenceAccessorTest.class.getResource("small_hg19.fa").getPath());
+    private static final Path FASTA_FAI = Paths.get(AdaptiveGenomeSequenceAccessorTest.class.getResource("small_hg19.fa.fai").getPath());
+    private static final Path FASTA_DICT = Paths.get(AdaptiveGenomeSequenceAccessorTest.class.getResource("small_hg19.fa.dict").getPath());
+
+    private static final String[] CONTIGS = {"chr1", "chr2", "chrM"};
+    private static final int[] LENGTHS = {10001, 10001, 1000};
+
+    private SingleFastaGenomeSequenceAccessor reference;
+
+    @BeforeEach
+    public void setUp() {
+        reference = new SingleFastaGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        reference.close();
+    }
+
+    private static AdaptiveGenomeSequenceAccessor makeAccessor(long memoryBudget) {
+        return new AdaptiveGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT, true, null, memoryBudget);
+    }
+
+    @Test
+    public void sequencesAreTheSameForAllStrategies() throws Exception {
+        try (AdaptiveGenomeSequenceAccessor accessor = makeAccessor(8 << 10)) {
+            for (AdaptiveGenomeSequenceAccessor.Strategy strategy : AdaptiveGenomeSequenceAccessor.Strategy.values()) {
+                accessor.setStrategy(strategy);
+                assertThat(accessor.fetchSequence("chr1", 61, 70), is("caatgagccc"));
+                assertThat(accessor.fetchSequence("chrM", 61, 70), is("CGTCTGGGGG"));
+                // spans several pages
+                assertThat(accessor.fetchSequence("chr2", 1000, 4000), is(reference.fetchSequence("chr2", 1000, 4000)));
+                assertThat(accessor.fetchSequence("chr2", 9990, 10001), is(reference.fetchSequence("chr2", 9990, 10001)));
+            }
+        }
+    }
+
+    @Test
+    public void queriesOutsideOfContigFailForAllStrategies() throws Exception {
+        try (AdaptiveGenomeSequenceAccessor accessor = makeAccessor(1 << 20)) {
+            for (AdaptiveGenomeSequenceAccessor.Strategy strategy : AdaptiveGenomeSequenceAccessor.Strategy.values()) {
+                accessor.setStrategy(strategy);
+                assertThat(accessor.fetchSequence(new GenomeInterval(accessor.getReferenceDictionary(), Strand.FWD, 2, 990, 1010))
+                        .isPresent(), is(false));
+            }
+        }
+    }
+
+    @Test
+    public void sortedQueriesUseContigCache() throws Exception {
+        try (AdaptiveGenomeSequenceAccessor accessor = makeAccessor(1 << 20)) {
+            for (int i = 0; i < AdaptiveGenomeSequenceAccessor.EPOCH; i++) {
+                int start = 1 + 9 * i;
+                assertThat(accessor.fetchSequence("chr1", start, start + 10), is(reference.fetchSequence("chr1", start, start + 10)));
+            }
+            assertThat(accessor.getStrategy(), is(AdaptiveGenomeSequenceAccessor.Strategy.CONTIG));
+        }
+    }
+
+    @Test
+    public void contigLargerThanQuarterOfBudgetIsLoadedOnce() throws Exception {
+        // chr1 takes more than a quarter of the budget
+        try (AdaptiveGenomeSequenceAccessor accessor = makeAccessor(12_000)) {
+            accessor.setStrategy(AdaptiveGenomeSequenceAccessor.Strategy.CONTIG);
+            for (int i = 0; i < 5; i++) {
+                int start = 1 + 1000 * i;
+                assertThat(accessor.fetchSequence("chr1", start, start + 10), is(reference.fetchSequence("chr1", start, start + 10)));
+            }
+            assertThat(accessor.getContigLoadCount(), is(1L));
+            assertThat(accessor.isContigCached("chr1"), is(true));
+        }
+    }
+
+    @Test
+    public void contigCacheIsReleasedWhenStrategyIsSwitched() throws Exception {
+        try (AdaptiveGenomeSequenceAccessor accessor = makeAccessor(1 << 20)) {
+            accessor.setStrategy(AdaptiveGenomeSequenceAccessor.Strategy.CONTIG);
+            accessor.fetchSequence("chr1", 61, 70);
+            assertThat(accessor.isContigCached("chr1"), is(true));
+
+            accessor.setStrategy(AdaptiveGenomeSequenceAccessor.Strategy.PAGE);
+            assertThat(accessor.isContigCached("chr1"), is(false));
+            assertThat(accessor.fetchSequence("chr1", 61, 70), is("caatgagccc"));
+            assertThat(accessor.isContigCached("chr1"), is(false));
+        }
+    }
+
+    @Test
+    public void scatteredQueriesWithSmallBudgetUseDirectReads() throws Exception {
+        Random random = new Random(17);
+        try (AdaptiveGenomeSequenceAccessor accessor = makeAccessor(4 << 10)) {
+            accessor.setStrategy(AdaptiveGenomeSequenceAccessor.Strategy.PAGE);
+            for (int i = 0; i < AdaptiveGenomeSequenceAccessor.EPOCH; i++) {
+                int contig = random.nextInt(CONTIGS.length);
+                int start = 1 + random.nextInt(LENGTHS[contig] - 20);
+                assertThat(accessor.fetchSequence(CONTIGS[contig], start, start + 10),
+                        is(reference.fetchSequence(CONTIGS[contig], start, start + 10)));
+            }
+            assertThat(accessor.getStrategy(), is(AdaptiveGenomeSequenceAccessor.Strategy.DIRECT));
+        }
+    }
+
+    @Test
+    public void localQueriesOnLargeContigUsePageCache() throws Exception {
+        Random random = new Random(17);
+        try (AdaptiveGenomeSequenceAccessor accessor = makeAccessor(8 << 10)) {
+            for (int i = 0; i < AdaptiveGenomeSequenceAccessor.EPOCH; i++) {
+                int start = 1 + random.nextInt(LENGTHS[0] - 20);
+                assertThat(accessor.fetchSequence("chr1", start, start + 10), is(reference.fetchSequence("chr1", start, start + 10)));
+            }
+            assertThat(accessor.getStrategy(), is(AdaptiveGenomeSequenceAccessor.Strategy.PAGE));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import htsjdk.samtools.SAMException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class GenomeCursorTest {
+
+    private static final Path FASTA = Paths.get(GenomeCursorTest.class.getResource("small_hg19.fa").getPath());
+    private static final Path FASTA_FAI = Paths.get(GenomeCursorTest.class.getResource("small_hg19.fa.fai").getPath());
+    private static final Path FASTA_DICT = Paths.get(GenomeCursorTest.class.getResource("small_hg19.fa.dict").getPath());
+
+    private SingleFastaGenomeSequenceAccessor accessor;
+
+    private GenomeCursor instance;
+
+    @BeforeEach
+    public void setUp() {
+        accessor = new SingleFastaGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT, true);
+        instance = GenomeCursor.of(accessor, 100, 200);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        accessor.close();
+    }
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertThat(instance.getCapacity(), is(256));
+    }
+
+    @Test
+    public void walkContigReadsEachBaseOnce() {
+        String chr1 = accessor.fetchSequence("chr1", 1, 10_001);
+
+        for (int pos = 0; pos < 10_001; pos++) {
+            assertThat(instance.getBase(0, pos), is((byte) chr1.charAt(pos)));
+            assertThat(instance.getBufferedBases(), is(lessThanOrEqualTo(instance.getCapacity())));
+        }
+
+        assertThat(instance.getReadBases(), is(10_001L));
+    }
+
+    @Test
+    public void slidingWindowAcrossTheRingBoundary() {
+        String chr2 = accessor.fetchSequence("chr2", 1, 10_001);
+
+        for (int begin = 0; begin + 50 <= 10_001; begin += 7) {
+            assertThat(instance.getSequence(1, begin, begin + 50), is(chr2.substring(begin, begin + 50)));
+        }
+
+        // no base is read twice
+        assertThat(instance.getReadBases(), is(lessThanOrEqualTo(10_001L)));
+    }
+
+    @Test
+    public void copyIntoArray() {
+        byte[] target = new byte[12];
+
+        instance.copy(2, 60, 70, target, 1);
+
+        assertThat(new String(target, 1, 10), is("CGTCTGGGGG"));
+    }
+
+    @Test
+    public void releasedBasesCannotBeQueried() {
+        instance.getSequence(0, 60, 70);
+        instance.release(65);
+
+        assertThat(instance.getWatermark(), is(65));
+        assertThat(instance.getSequence(0, 65, 70), is("agccc"));
+        assertThrows(IllegalArgumentException.class, () -> instance.getBase(0, 64));
+    }
+
+    @Test
+    public void farQuerySkipsBasesInBetween() {
+        instance.getBase(0, 10);
+        long read = instance.getReadBases();
+
+        assertThat(instance.getSequence(0, 5_000, 5_010), is(accessor.fetchSequence("chr1", 5_001, 5_010)));
+        assertThat(instance.getWatermark(), is(5_000));
+        assertThat(instance.getReadBases() - read, is(lessThanOrEqualTo(256L)));
+    }
+
+    @Test
+    public void switchingContigResetsTheCursor() {
+        instance.getSequence(0, 9_000, 9_010);
+
+        assertThat(instance.getSequence(2, 60, 70), is("CGTCTGGGGG"));
+        assertThat(instance.getContigId(), is(2));
+        assertThat(instance.getWatermark(), is(0));
+    }
+
+    @Test
+    public void invalidQueries() {
+        assertThrows(SAMException.class, () -> instance.getBase(100, 0));
+        assertThrows(SAMException.class, () -> instance.getBase(2, 1000));
+        assertThrows(IllegalArgumentException.class, () -> instance.getSequence(0, 0, 300));
+        assertThrows(IllegalArgumentException.class, () -> GenomeCursor.of(accessor, 100, 50));
+    }
+}
@@ -1,9 +1,13 @@
 package xyz.ielis.hyperutil.reference.fasta;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -41,6 +45,18 @@ public class GenomeSequenceAccessorBuilderTest {
         assertThat(accessor, is(instanceOf(SingleChromosomeGenomeSequenceAccessor.class)));
     }
 
+    @Test
+    public void buildAutoAccessor() {
+        GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setType(GenomeSequenceAccessor.Type.AUTO)
+                .setMemoryBudget(1 << 20)
+                .build();
+
+        assertThat(accessor, is(instanceOf(AdaptiveGenomeSequenceAccessor.class)));
+        assertThat(((AdaptiveGenomeSequenceAccessor) accessor).getMemoryBudget(), is(1L << 20));
+    }
+
     @Test
     public void buildWithDefaultArguments() {
         final GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder()
@@ -50,6 +66,88 @@ public class GenomeSequenceAccessorBuilderTest {
         assertThat(accessor, is(instanceOf(SingleFastaGenomeSequenceAccessor.class)));
     }
 
+    @Test
+    public void buildUppercaseAccessor(@TempDir Path tempDir) throws Exception {
+        Path maskPath = tempDir.resolve("small_hg19.fa.mask");
+        try (GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setType(GenomeSequenceAccessor.Type.SINGLE_CHROMOSOME)
+                .setUppercase(true)
+                .setSoftMaskIndexPath(maskPath)
+                .build()) {
+            assertThat(accessor.fetchSequence("chr1", 61, 70), is("CAATGAGCCC"));
+        }
+        assertThat(maskPath.toFile().isFile(), is(true));
+    }
+
+    @Test
+    public void preloadContigs() throws Exception {
+        try (GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setType(GenomeSequenceAccessor.Type.AUTO)
+                .setPreloadContigs(List.of("2", "chrM"))
+                .setPreloadThreads(2)
+                .build()) {
+            assertThat(accessor.getReadiness().isDone(), is(true));
+            assertThat(((AdaptiveGenomeSequenceAccessor) accessor).getStrategy(), is(AdaptiveGenomeSequenceAccessor.Strategy.CONTIG));
+            assertThat(accessor.fetchSequence("chr2", 61, 70), is("TCTGCTGTGT"));
+        }
+    }
+
+    @Test
+    public void preloadedContigLargerThanQuarterOfBudgetIsKept() throws Exception {
+        try (GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setType(GenomeSequenceAccessor.Type.AUTO)
+                .setMemoryBudget(12_000)
+                .setPreloadContigs(List.of("chr1"))
+                .build()) {
+            AdaptiveGenomeSequenceAccessor adaptive = (AdaptiveGenomeSequenceAccessor) accessor;
+            assertThat(adaptive.getStrategy(), is(AdaptiveGenomeSequenceAccessor.Strategy.CONTIG));
+            assertThat(adaptive.isContigCached("chr1"), is(true));
+
+            assertThat(accessor.fetchSequence("chr1", 61, 70), is("caatgagccc"));
+            assertThat(adaptive.getContigLoadCount(), is(1L));
+        }
+    }
+
+    @Test
+    public void singleChromosomeAccessorLoadsOnlyTheLastPreloadedContig() throws Exception {
+        try (GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setType(GenomeSequenceAccessor.Type.SINGLE_CHROMOSOME)
+                .setPreloadContigs(List.of("chr1", "chrM", "chr2"))
+                .setPreloadThreads(3)
+                .build()) {
+            assertThat(((SingleChromosomeGenomeSequenceAccessor) accessor).getLoadedContig(), is("chr2"));
+            assertThat(accessor.fetchSequence("chr2", 61, 70), is("TCTGCTGTGT"));
+        }
+    }
+
+    @Test
+    public void preloadRegionsInBackground(@TempDir Path tempDir) throws Exception {
+        Path bed = tempDir.resolve("regions.bed");
+        Files.write(bed, List.of("track name=regions", "chr1\t0\t100", "chr1\t50\t5000\tsecond", "chrUn\t0\t10", "chrM\t900\t1000"));
+        try (GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setType(GenomeSequenceAccessor.Type.SINGLE_CHROMOSOME)
+                .setPreloadRegionsPath(bed)
+                .setPreloadAsync(true)
+                .build()) {
+            accessor.getReadiness().get(10, TimeUnit.SECONDS);
+            assertThat(accessor.fetchSequence("chrM", 61, 70), is("CGTCTGGGGG"));
+        }
+    }
+
+    @Test
+    public void failsWhenPreloadingUnknownContig() {
+        assertThrows(IllegalArgumentException.class,
+                () -> GenomeSequenceAccessorBuilder.builder()
+                        .setFastaPath(FASTA)
+                        .setPreloadContigs(List.of("chr3"))
+                        .build());
+    }
+
     @Test
     public void failsWhenNonExistingFileIsUsed() {
         assertThrows(IllegalArgumentException.class,
@@ -58,6 +156,88 @@ public class GenomeSequenceAccessorBuilderTest {
                         .build());
     }
 
+    @Test
+    public void sharedAccessorsShareUnderlyingAccessor() throws Exception {
+        SharedGenomeSequenceAccessor first = (SharedGenomeSequenceAccessor) GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setShared(true)
+                .build();
+        // different path to the same files
+        SharedGenomeSequenceAccessor second = (SharedGenomeSequenceAccessor) GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA.getParent().resolve(".").resolve(FASTA.getFileName()))
+                .setFastaFaiPath(FASTA_FAI)
+                .setFastaDictPath(FASTA_DICT)
+                .setShared(true)
+                .build();
+        SharedAccessorRegistry registry = SharedAccessorRegistry.instance();
+
+        assertThat(second.getAccessor(), is(sameInstance(first.getAccessor())));
+        assertThat(second.getReferenceDictionary(), is(sameInstance(first.getReferenceDictionary())));
+        assertThat(registry.getReferenceCount(first.getKey()), is(2));
+
+        first.close();
+        first.close();
+        assertThat(registry.getReferenceCount(first.getKey()), is(1));
+        assertThat(second.fetchSequence("chr1", 61, 70), is("caatgagccc"));
+        assertThrows(IllegalStateException.class, () -> first.fetchSequence("chr1", 61, 70));
+
+        second.close();
+        assertThat(registry.getReferenceCount(first.getKey()), is(0));
+
+        try (SharedGenomeSequenceAccessor third = (SharedGenomeSequenceAccessor) GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setShared(true)
+                .build()) {
+            assertThat(third.getAccessor(), is(not(sameInstance(first.getAccessor()))));
+            assertThat(third.fetchSequence("chr1", 61, 70), is("caatgagccc"));
+        }
+    }
+
+    @Test
+    public void sharedAccessorsOfDifferentTypesAreNotShared() {
+        try (SharedGenomeSequenceAccessor fasta = (SharedGenomeSequenceAccessor) GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setShared(true)
+                .build();
+             SharedGenomeSequenceAccessor chromosome = (SharedGenomeSequenceAccessor) GenomeSequenceAccessorBuilder.builder()
+                     .setFastaPath(FASTA)
+                     .setType(GenomeSequenceAccessor.Type.SINGLE_CHROMOSOME)
+                     .setShared(true)
+                     .build()) {
+            assertThat(fasta.getAccessor(), is(instanceOf(SingleFastaGenomeSequenceAccessor.class)));
+            assertThat(chromosome.getAccessor(), is(instanceOf(SingleChromosomeGenomeSequenceAccessor.class)));
+            assertThat(fasta.getKey(), is(not(chromosome.getKey())));
+        }
+    }
+
+    @Test
+    public void buildTargetedAccessor(@TempDir Path tempDir) throws Exception {
+        Path bed = tempDir.resolve("targets.bed");
+        Files.write(bed, List.of("chr1\t100\t200", "chr2\t60\t70"));
+
+        try (GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setType(GenomeSequenceAccessor.Type.TARGETED)
+                .setTargetRegionsPath(bed)
+                .setTargetPadding(5)
+                .setOffTargetPolicy(TargetedGenomeSequenceAccessor.OffTargetPolicy.REJECT)
+                .build()) {
+            assertThat(accessor, is(instanceOf(TargetedGenomeSequenceAccessor.class)));
+            TargetedGenomeSequenceAccessor targeted = (TargetedGenomeSequenceAccessor) accessor;
+            assertThat(targeted.getTargetedBases(), is(110L + 20L));
+            assertThat(accessor.fetchSequence("chr2", 61, 70), is("TCTGCTGTGT"));
+        }
+    }
+
+    @Test
+    public void failsWhenTargetRegionsAreNotSet() {
+        assertThrows(IllegalArgumentException.class,
+                () -> GenomeSequenceAccessorBuilder.builder()
+                        .setFastaPath(FASTA)
+                        .setType(GenomeSequenceAccessor.Type.TARGETED)
+                        .build());
+    }
+
     @Test
     public void failsWhenFaiIsNotPresent() {
         assertThrows(IllegalArgumentException.class,
@@ -0,0 +1,144 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.GenomePosition;
+import de.charite.compbio.jannovar.reference.GenomeVariant;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HaplotypeGenomeSequenceAccessorTest {
+
+    private static final Path FASTA = Paths.get(HaplotypeGenomeSequenceAccessorTest.class.getResource("small_hg19.fa").getPath());
+    private static final Path FASTA_FAI = Paths.get(HaplotypeGenomeSequenceAccessorTest.class.getResource("small_hg19.fa.fai").getPath());
+    private static final Path FASTA_DICT = Paths.get(HaplotypeGenomeSequenceAccessorTest.class.getResource("small_hg19.fa.dict").getPath());
+
+    private SingleFastaGenomeSequenceAccessor reference;
+
+    private ReferenceDictionary rd;
+
+    @BeforeEach
+    public void setUp() {
+        reference = new SingleFastaGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT, true);
+        rd = reference.getReferenceDictionary();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        reference.close();
+    }
+
+    private GenomeVariant variant(int contig, int pos, String ref, String alt) {
+        return new GenomeVariant(new GenomePosition(rd, Strand.FWD, contig, pos), ref, alt);
+    }
+
+    private HaplotypeGenomeSequenceAccessor makeHaplotype() {
+        // chr1:61-70 is `caatgagccc`
+        return HaplotypeGenomeSequenceAccessor.of(reference, List.of(
+                variant(0, 62, "A", "G"), // SNV
+                variant(0, 63, "TG", ""), // deletion
+                variant(0, 67, "", "TTT") // insertion
+        ));
+    }
+
+    @Test
+    public void fetchSequence() {
+        HaplotypeGenomeSequenceAccessor haplotype = makeHaplotype();
+
+        assertThat(haplotype.fetchSequence("chr1", 61, 71), is("caGagTTTccc"));
+        assertThat(haplotype.fetchSequence("chr1", 1, 60), is(reference.fetchSequence("chr1", 1, 60)));
+        assertThat(haplotype.fetchSequence("chr1", 67, 68), is("TT"));
+        // contig without variants
+        assertThat(haplotype.fetchSequence("chr2", 61, 70), is("TCTGCTGTGT"));
+    }
+
+    @Test
+    public void fetchSequenceForGenomeInterval() {
+        HaplotypeGenomeSequenceAccessor haplotype = makeHaplotype();
+        GenomeInterval query = new GenomeInterval(haplotype.getReferenceDictionary(), Strand.FWD, 0, 60, 71);
+
+        Optional<SequenceInterval> seq = haplotype.fetchSequence(query);
+        assertThat(seq.isPresent(), is(true));
+        assertThat(seq.get().getSequence(), is("caGagTTTccc"));
+
+        seq = haplotype.fetchSequence(query.withStrand(Strand.REV));
+        assertThat(seq.isPresent(), is(true));
+        assertThat(seq.get().getSequence(), is("gggAAActCtg"));
+    }
+
+    @Test
+    public void fetchSequences() {
+        HaplotypeGenomeSequenceAccessor haplotype = makeHaplotype();
+
+        SequenceBatch batch = haplotype.fetchSequences(new int[]{0, 1, 0, 100, 0}, new int[]{60, 60, 60, 0, 10_000},
+                new int[]{71, 70, 71, 10, 10_003}, new boolean[]{false, false, true, false, false});
+        assertThat(batch.getSequence(0), is("caGagTTTccc"));
+        // contig without variants
+        assertThat(batch.getSequence(1), is("TCTGCTGTGT"));
+        assertThat(batch.getSequence(2), is("gggAAActCtg"));
+        assertThat(batch.getStatus(3), is(SequenceBatch.UNKNOWN_CONTIG));
+        assertThat(batch.getStatus(4), is(SequenceBatch.OUT_OF_BOUNDS));
+
+        // no variants on the queried contigs
+        batch = haplotype.fetchSequences(new int[]{1, 2}, new int[]{60, 60}, new int[]{70, 70}, null);
+        assertThat(batch.getSequence(0), is("TCTGCTGTGT"));
+        assertThat(batch.getSequence(1), is("CGTCTGGGGG"));
+    }
+
+    @Test
+    public void contigLengthIsAdjusted() {
+        HaplotypeGenomeSequenceAccessor haplotype = makeHaplotype();
+
+        assertThat(haplotype.getReferenceDictionary().getContigIDToLength().get(0), is(10_002));
+        assertThat(haplotype.getReferenceDictionary().getContigIDToLength().get(1), is(10_001));
+        assertThat(haplotype.fetchSequence("chr1", 9_943, 10_002), is(reference.fetchSequence("chr1", 9_942, 10_001)));
+        assertThat(haplotype.fetchSequence(new GenomeInterval(haplotype.getReferenceDictionary(), Strand.FWD, 0, 9_990, 10_003)).isPresent(), is(false));
+    }
+
+    @Test
+    public void distantVariantsAreAppliedToLongQuery() {
+        HaplotypeGenomeSequenceAccessor haplotype = HaplotypeGenomeSequenceAccessor.of(reference, List.of(
+                variant(0, 100, reference.fetchSequence("chr1", 101, 101), "G"),
+                variant(0, 9_000, reference.fetchSequence("chr1", 9_001, 9_005), "A")));
+
+        String ref = reference.fetchSequence("chr1", 91, 9_010);
+        String expected = ref.substring(0, 10) + "G" + ref.substring(11, 8_910) + "A" + ref.substring(8_915);
+        assertThat(haplotype.fetchSequence("chr1", 91, 9_006), is(expected));
+    }
+
+    @Test
+    public void toAlternate() {
+        HaplotypeGenomeSequenceAccessor haplotype = makeHaplotype();
+
+        assertThat(haplotype.toAlternate(new GenomePosition(rd, Strand.FWD, 0, 50)).getPos(), is(50));
+        assertThat(haplotype.toAlternate(new GenomePosition(rd, Strand.FWD, 0, 64)).getPos(), is(63)); // deleted base
+        assertThat(haplotype.toAlternate(new GenomePosition(rd, Strand.FWD, 0, 67)).getPos(), is(68)); // after insertion
+        assertThat(haplotype.toAlternate(new GenomePosition(rd, Strand.FWD, 0, 500)).getPos(), is(501));
+
+        GenomeInterval alt = haplotype.toAlternate(new GenomeInterval(rd, Strand.FWD, 0, 60, 70));
+        assertThat(alt.getBeginPos(), is(60));
+        assertThat(alt.getEndPos(), is(71));
+        assertThat(haplotype.fetchSequence(alt).get().getSequence(), is("caGagTTTccc"));
+
+        GenomeInterval upToInsertion = haplotype.toAlternate(new GenomeInterval(rd, Strand.FWD, 0, 60, 67));
+        assertThat(haplotype.fetchSequence(upToInsertion).get().getSequence(), is("caGag"));
+    }
+
+    @Test
+    public void overlappingVariantsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> HaplotypeGenomeSequenceAccessor.of(reference, List.of(
+                variant(0, 62, "AT", ""),
+                variant(0, 63, "T", "C"))));
+    }
+}
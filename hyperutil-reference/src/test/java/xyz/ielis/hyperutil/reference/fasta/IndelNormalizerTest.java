@@ -0,0 +1,149 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.GenomePosition;
+import de.charite.compbio.jannovar.reference.GenomeVariant;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class IndelNormalizerTest {
+
+    private static final Path FASTA = Paths.get(IndelNormalizerTest.class.getResource("small_hg19.fa").getPath());
+    private static final Path FASTA_FAI = Paths.get(IndelNormalizerTest.class.getResource("small_hg19.fa.fai").getPath());
+    private static final Path FASTA_DICT = Paths.get(IndelNormalizerTest.class.getResource("small_hg19.fa.dict").getPath());
+
+    private SingleFastaGenomeSequenceAccessor accessor;
+
+    private ReferenceDictionary rd;
+
+    private IndelNormalizer instance;
+
+    @BeforeEach
+    public void setUp() {
+        accessor = new SingleFastaGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT, true);
+        rd = accessor.getReferenceDictionary();
+        instance = IndelNormalizer.of(accessor);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        accessor.close();
+    }
+
+    /**
+     * @return variant at 0-based position on chr2
+     */
+    private GenomeVariant chr2(int pos, String ref, String alt) {
+        return new GenomeVariant(new GenomePosition(rd, Strand.FWD, 1, pos), ref, alt);
+    }
+
+    @Test
+    public void normalizeHomopolymerDeletion() {
+        // chr2:3993-4003 is a run of 10 Ts preceded by C
+        NormalizedVariant normalized = instance.normalize(chr2(3998, "T", "")).orElseThrow();
+
+        assertThat(normalized.getVariant(), is(chr2(3993, "T", "")));
+        assertThat(normalized.getEquivalentRange(), is(new GenomeInterval(rd, Strand.FWD, 1, 3993, 4003)));
+        assertThat(normalized.getRepeatUnit(), is("T"));
+        assertThat(normalized.isIndel(), is(true));
+        assertThat(normalized.getVcfPosition(), is(3993));
+        assertThat(normalized.getVcfRef(), is("CT"));
+        assertThat(normalized.getVcfAlt(), is("C"));
+    }
+
+    @Test
+    public void normalizeDinucleotideDeletion() {
+        // soft-masked `aatatatatatt` at chr2:5068-5080, VCF-like representation with padding base is trimmed first
+        NormalizedVariant normalized = instance.normalize(chr2(5072, "TAT", "T")).orElseThrow();
+
+        assertThat(normalized.getVariant(), is(chr2(5069, "AT", "")));
+        assertThat(normalized.getEquivalentRange(), is(new GenomeInterval(rd, Strand.FWD, 1, 5069, 5079)));
+        assertThat(normalized.getRepeatUnit(), is("AT"));
+        assertThat(normalized.getVcfPosition(), is(5069));
+        assertThat(normalized.getVcfRef(), is("AAT"));
+        assertThat(normalized.getVcfAlt(), is("A"));
+    }
+
+    @Test
+    public void normalizeDinucleotideInsertion() {
+        // `TTTCTCTCTCTCTG` at chr2:9129-9143
+        NormalizedVariant normalized = instance.normalize(chr2(9136, "", "CT")).orElseThrow();
+
+        assertThat(normalized.getVariant(), is(chr2(9131, "", "TC")));
+        assertThat(normalized.getEquivalentRange(), is(new GenomeInterval(rd, Strand.FWD, 1, 9131, 9142)));
+        assertThat(normalized.getRepeatUnit(), is("TC"));
+        assertThat(normalized.getVcfPosition(), is(9131));
+        assertThat(normalized.getVcfRef(), is("T"));
+        assertThat(normalized.getVcfAlt(), is("TTC"));
+    }
+
+    @Test
+    public void normalizeMultipleUnitDeletion() {
+        NormalizedVariant normalized = instance.normalize(chr2(9133, "TCTC", "")).orElseThrow();
+
+        assertThat(normalized.getVariant(), is(chr2(9131, "TCTC", "")));
+        assertThat(normalized.getRepeatUnit(), is("TC"));
+        assertThat(normalized.getEquivalentRange(), is(new GenomeInterval(rd, Strand.FWD, 1, 9131, 9142)));
+    }
+
+    @Test
+    public void normalizeVariantOnReverseStrand() {
+        GenomeVariant variant = chr2(3998, "T", "");
+
+        assertThat(instance.normalize(variant.withStrand(Strand.REV)), is(instance.normalize(variant)));
+    }
+
+    @Test
+    public void snvIsNotShifted() {
+        NormalizedVariant normalized = instance.normalize(chr2(60, "T", "G")).orElseThrow();
+
+        assertThat(normalized.isIndel(), is(false));
+        assertThat(normalized.getRepeatUnit(), is(""));
+        assertThat(normalized.getEquivalentRange(), is(new GenomeInterval(rd, Strand.FWD, 1, 60, 61)));
+        assertThat(normalized.getVcfPosition(), is(61));
+        assertThat(normalized.getVcfRef(), is("T"));
+        assertThat(normalized.getVcfAlt(), is("G"));
+    }
+
+    @Test
+    public void refMismatchIsNotNormalized() {
+        assertThat(instance.normalize(chr2(60, "A", "G")).isPresent(), is(false));
+        assertThat(instance.normalize(chr2(3998, "TA", "")).isPresent(), is(false));
+    }
+
+    @Test
+    public void unknownContigIsNotNormalized() {
+        GenomeVariant variant = new GenomeVariant(new GenomePosition(rd, Strand.FWD, 100, 10), "A", "");
+
+        assertThat(instance.normalize(variant).isPresent(), is(false));
+    }
+
+    @Test
+    public void normalizeAllMatchesSingleVariants() {
+        List<GenomeVariant> variants = List.of(
+                new GenomeVariant(new GenomePosition(rd, Strand.FWD, 0, 100), "A", ""),
+                chr2(60, "T", "G"),
+                chr2(3998, "T", ""),
+                chr2(3998, "TA", ""),
+                chr2(5072, "TAT", "T"),
+                chr2(9136, "", "CT"),
+                chr2(9133, "TCTC", ""),
+                new GenomeVariant(new GenomePosition(rd, Strand.FWD, 2, 10), "", "G"));
+
+        List<Optional<NormalizedVariant>> batch = instance.normalizeAll(variants);
+
+        assertThat(batch, is(variants.stream().map(instance::normalize).collect(Collectors.toList())));
+    }
+}
@@ -0,0 +1,242 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MinimizerIndexTest {
+
+    private static final Path FASTA = Paths.get(MinimizerIndexTest.class.getResource("small_hg19.fa").getPath());
+    private static final Path FASTA_FAI = Paths.get(MinimizerIndexTest.class.getResource("small_hg19.fa.fai").getPath());
+    private static final Path FASTA_DICT = Paths.get(MinimizerIndexTest.class.getResource("small_hg19.fa.dict").getPath());
+
+    private static final Path FASTA_2 = Paths.get(MinimizerIndexTest.class.getResource("small_hg19_2.fa").getPath());
+    private static final Path FASTA_2_FAI = Paths.get(MinimizerIndexTest.class.getResource("small_hg19_2.fa.fai").getPath());
+    private static final Path FASTA_2_DICT = Paths.get(MinimizerIndexTest.class.getResource("small_hg19_2.fa.dict").getPath());
+
+    private static SingleFastaGenomeSequenceAccessor accessor;
+
+    private static MinimizerIndex index;
+
+    @BeforeAll
+    public static void setUpBeforeClass() throws Exception {
+        accessor = new SingleFastaGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT, true);
+        index = MinimizerIndex.build(accessor, MinimizerIndex.DEFAULT_K, MinimizerIndex.DEFAULT_W, 2);
+    }
+
+    @AfterAll
+    public static void tearDownAfterClass() throws Exception {
+        accessor.close();
+    }
+
+    @Test
+    public void findExactOnForwardStrand() {
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        String query = accessor.fetchSequence("chr2", 61, 90);
+
+        List<GenomeInterval> occurrences = index.findExact(query);
+
+        assertThat(occurrences, hasItem(new GenomeInterval(rd, Strand.FWD, 1, 60, 90)));
+    }
+
+    @Test
+    public void findExactOnReverseStrand() {
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        // soft-masked bases are found as well
+        String query = ReverseComplement.reverseComplement(accessor.fetchSequence("chr1", 61, 85));
+
+        List<GenomeInterval> occurrences = index.findExact(query);
+
+        GenomeInterval expected = new GenomeInterval(rd, Strand.FWD, 0, 60, 85).withStrand(Strand.REV);
+        assertThat(occurrences, hasItem(expected));
+        assertThat(accessor.fetchSequence(expected).get().getSequence().toUpperCase(), is(query.toUpperCase()));
+    }
+
+    @Test
+    public void findExactMatchesBruteForceSearch() throws Exception {
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        MinimizerIndex small = MinimizerIndex.build(accessor, 8, 3, 1);
+        Random random = new Random(42);
+        int queried = 0;
+        while (queried < 200) {
+            int contigId = random.nextInt(3);
+            int length = small.getMinimumQueryLength() + random.nextInt(20);
+            int begin = random.nextInt(rd.getContigIDToLength().get(contigId) - length);
+            String query = accessor.fetchSequence(rd.getContigIDToName().get(contigId), begin + 1, begin + length);
+            if (query.toUpperCase().indexOf('N') >= 0) {
+                continue;
+            }
+            if (random.nextBoolean()) {
+                query = ReverseComplement.reverseComplement(query);
+            }
+            assertThat(query, small.findExact(query), is(bruteForce(query)));
+            queried++;
+        }
+    }
+
+    @Test
+    public void isUnique() {
+        assertThat(index.isUnique(accessor.fetchSequence("chrM", 61, 90)), is(true));
+        // the sequence is not present in the reference
+        assertThat(index.isUnique("ACGTACGTACGTACGTACGTACGTACGT"), is(false));
+    }
+
+    @Test
+    public void queryWithAmbiguousBasesIsNotFound() {
+        String query = accessor.fetchSequence("chr2", 61, 110);
+        String masked = query.substring(0, 25) + 'N' + query.substring(26);
+
+        assertThat(index.findExact(masked), is(empty()));
+        assertThat(index.findExact("NNNNNNNNNNNNNNNNNNNNNNNNN"), is(empty()));
+    }
+
+    @Test
+    public void failsWhenQueryIsTooShort() {
+        assertThat(index.getMinimumQueryLength(), is(20));
+        assertThrows(IllegalArgumentException.class, () -> index.findExact("TCTGCTGTGT"));
+    }
+
+    @Test
+    public void failsWithInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> MinimizerIndex.build(accessor, 32, 5, 1));
+        assertThrows(IllegalArgumentException.class, () -> MinimizerIndex.build(accessor, 15, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> MinimizerIndex.build(accessor, 15, 5, 0));
+    }
+
+    @Test
+    public void buildIsIndependentOfThreadCount() throws Exception {
+        MinimizerIndex single = MinimizerIndex.build(accessor, MinimizerIndex.DEFAULT_K, MinimizerIndex.DEFAULT_W, 1);
+
+        assertThat(single.getEntryCount(), is(index.getEntryCount()));
+    }
+
+    @Test
+    public void writeAndRead(@TempDir Path tempDir) throws Exception {
+        Path indexPath = tempDir.resolve("small_hg19.fa.mmi");
+        index.write(indexPath);
+
+        MinimizerIndex read = MinimizerIndex.read(indexPath, accessor);
+
+        assertThat(read.getK(), is(index.getK()));
+        assertThat(read.getW(), is(index.getW()));
+        assertThat(read.getEntryCount(), is(index.getEntryCount()));
+        String query = accessor.fetchSequence("chr2", 5001, 5040);
+        assertThat(read.findExact(query), is(index.findExact(query)));
+        query = ReverseComplement.reverseComplement(query);
+        assertThat(read.findExact(query), is(index.findExact(query)));
+    }
+
+    @Test
+    public void readFailsWhenContigsDoNotMatch(@TempDir Path tempDir) throws Exception {
+        Path indexPath = tempDir.resolve("small_hg19.fa.mmi");
+        index.write(indexPath);
+
+        try (SingleFastaGenomeSequenceAccessor other = new SingleFastaGenomeSequenceAccessor(FASTA_2, FASTA_2_FAI, FASTA_2_DICT, false)) {
+            assertThrows(IOException.class, () -> MinimizerIndex.read(indexPath, other));
+        }
+    }
+
+    @Test
+    public void readOrBuild(@TempDir Path tempDir) throws Exception {
+        Path indexPath = tempDir.resolve("small_hg19.fa.mmi");
+
+        MinimizerIndex built = MinimizerIndex.readOrBuild(indexPath, accessor, 12, 4, 2);
+        assertThat(indexPath.toFile().isFile(), is(true));
+
+        MinimizerIndex read = MinimizerIndex.readOrBuild(indexPath, accessor, 12, 4, 2);
+        assertThat(read.getEntryCount(), is(built.getEntryCount()));
+
+        // different parameters rebuild the index
+        MinimizerIndex rebuilt = MinimizerIndex.readOrBuild(indexPath, accessor, 13, 4, 2);
+        assertThat(rebuilt.getK(), is(13));
+    }
+
+    @Test
+    public void corruptIndexIsRebuilt(@TempDir Path tempDir) throws Exception {
+        Path indexPath = tempDir.resolve("small_hg19.fa.mmi");
+        index.write(indexPath);
+        byte[] bytes = Files.readAllBytes(indexPath);
+
+        // negative number of entries, stored after the header and the chr1, chr2 and chrM contigs
+        int entryCountOffset = 5 * Integer.BYTES + Long.BYTES + 3 * (2 + 4 + Integer.BYTES);
+        assertThat(ByteBuffer.wrap(bytes).getInt(entryCountOffset), is(index.getEntryCount()));
+        ByteBuffer.wrap(bytes).putInt(entryCountOffset, -1);
+        Files.write(indexPath, bytes);
+        assertThrows(IOException.class, () -> MinimizerIndex.read(indexPath, accessor));
+
+        // fewer entries than stored in the buckets
+        ByteBuffer.wrap(bytes).putInt(entryCountOffset, 10);
+        Files.write(indexPath, bytes);
+        assertThrows(IOException.class, () -> MinimizerIndex.read(indexPath, accessor));
+
+        // more entries than the file can hold
+        ByteBuffer.wrap(bytes).putInt(entryCountOffset, Integer.MAX_VALUE);
+        Files.write(indexPath, bytes);
+        assertThrows(IOException.class, () -> MinimizerIndex.read(indexPath, accessor));
+
+        // truncated file
+        Files.write(indexPath, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IOException.class, () -> MinimizerIndex.read(indexPath, accessor));
+
+        MinimizerIndex rebuilt = MinimizerIndex.readOrBuild(indexPath, accessor, index.getK(), index.getW(), 2);
+        assertThat(rebuilt.getEntryCount(), is(index.getEntryCount()));
+    }
+
+    @Test
+    public void indexOfDifferentFastaFileIsRebuilt(@TempDir Path tempDir) throws Exception {
+        Path indexPath = tempDir.resolve("small_hg19.fa.mmi");
+        index.write(indexPath);
+        byte[] bytes = Files.readAllBytes(indexPath);
+
+        // fasta file size, stored after the magic number, the version, k and w
+        int fastaSizeOffset = 4 * Integer.BYTES;
+        assertThat(ByteBuffer.wrap(bytes).getLong(fastaSizeOffset), is(Files.size(FASTA)));
+        ByteBuffer.wrap(bytes).putLong(fastaSizeOffset, Files.size(FASTA) + 1);
+        Files.write(indexPath, bytes);
+        assertThrows(IOException.class, () -> MinimizerIndex.read(indexPath, accessor));
+
+        MinimizerIndex rebuilt = MinimizerIndex.readOrBuild(indexPath, accessor, index.getK(), index.getW(), 2);
+        assertThat(rebuilt.getEntryCount(), is(index.getEntryCount()));
+        assertThat(MinimizerIndex.read(indexPath, accessor).getEntryCount(), is(index.getEntryCount()));
+    }
+
+    /**
+     * Find the occurrences by scanning the contigs.
+     */
+    private static List<GenomeInterval> bruteForce(String query) {
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        String upper = query.toUpperCase();
+        String reverse = ReverseComplement.reverseComplement(upper);
+        List<GenomeInterval> occurrences = new ArrayList<>();
+        for (int contigId = 0; contigId < 3; contigId++) {
+            String contig = accessor.fetchSequence(rd.getContigIDToName().get(contigId), 1, rd.getContigIDToLength().get(contigId)).toUpperCase();
+            for (int i = 0; i + upper.length() <= contig.length(); i++) {
+                if (contig.startsWith(upper, i)) {
+                    occurrences.add(new GenomeInterval(rd, Strand.FWD, contigId, i, i + upper.length()));
+                }
+                if (contig.startsWith(reverse, i)) {
+                    occurrences.add(new GenomeInterval(rd, Strand.FWD, contigId, i, i + upper.length()).withStrand(Strand.REV));
+                }
+            }
+        }
+        return occurrences;
+    }
+}
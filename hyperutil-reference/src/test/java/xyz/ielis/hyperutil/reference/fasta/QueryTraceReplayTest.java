@@ -0,0 +1,130 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class QueryTraceReplayTest {
+
+    private static final Path FASTA = Paths.get(QueryTraceReplayTest.class.getResource("small_hg19.fa").getPath());
+
+    private static Path writeTrace(Path tempDir) throws Exception {
+        Path tracePath = tempDir.resolve("trace.bin");
+        GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder().setFastaPath(FASTA).build();
+        try (RecordingGenomeSequenceAccessor recording = RecordingGenomeSequenceAccessor.of(accessor, tracePath)) {
+            ReferenceDictionary rd = recording.getReferenceDictionary();
+            for (int i = 0; i < 100; i++) {
+                recording.fetchSequence(new GenomeInterval(rd, Strand.FWD, i % 3, 5 * i, 5 * i + 50));
+            }
+            recording.fetchSequence(new GenomeInterval(rd, Strand.FWD, 1, 60, 70).withStrand(Strand.REV));
+            recording.fetchSequence("chr2", 61, 70);
+        }
+        return tracePath;
+    }
+
+    @Test
+    public void recordTrace(@TempDir Path tempDir) throws Exception {
+        QueryTrace trace = QueryTrace.read(writeTrace(tempDir));
+
+        assertThat(trace.size(), is(102));
+        assertThat(trace.getContigName(trace.getContig(0)), is("chr1"));
+        assertThat(trace.getBegin(1), is(5));
+        assertThat(trace.getEnd(1), is(55));
+
+        // the interval is stored on the forward strand
+        assertThat(trace.getContigName(trace.getContig(100)), is("chr2"));
+        assertThat(trace.getBegin(100), is(60));
+        assertThat(trace.getEnd(100), is(70));
+        assertThat(trace.getStrand(100), is(Strand.REV));
+
+        assertThat(trace.getBegin(101), is(60));
+        assertThat(trace.getEnd(101), is(70));
+        assertThat(trace.getStrand(101), is(Strand.FWD));
+        assertThat(trace.getThread(101), is(Thread.currentThread().getId()));
+        assertThat(trace.getTimestamp(101), is(greaterThanOrEqualTo(trace.getTimestamp(0))));
+    }
+
+    @Test
+    public void recordBatch(@TempDir Path tempDir) throws Exception {
+        Path tracePath = tempDir.resolve("trace.bin");
+        GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder().setFastaPath(FASTA).build();
+        try (RecordingGenomeSequenceAccessor recording = RecordingGenomeSequenceAccessor.of(accessor, tracePath)) {
+            SequenceBatch batch = recording.fetchSequences(new int[]{0, 100, 2}, new int[]{60, 0, 10}, new int[]{70, 10, 30},
+                    new boolean[]{false, false, true});
+            assertThat(batch.getSequence(0), is("caatgagccc"));
+        }
+        QueryTrace trace = QueryTrace.read(tracePath);
+
+        // the row with unknown contig is not recorded
+        assertThat(trace.size(), is(2));
+        assertThat(trace.getContigName(trace.getContig(0)), is("chr1"));
+        assertThat(trace.getBegin(0), is(60));
+        assertThat(trace.getEnd(0), is(70));
+        assertThat(trace.getStrand(0), is(Strand.FWD));
+        assertThat(trace.getContigName(trace.getContig(1)), is("chrM"));
+        assertThat(trace.getBegin(1), is(10));
+        assertThat(trace.getEnd(1), is(30));
+        assertThat(trace.getStrand(1), is(Strand.REV));
+    }
+
+    @Test
+    public void replay(@TempDir Path tempDir) throws Exception {
+        Path tracePath = writeTrace(tempDir);
+        Path targets = tempDir.resolve("targets.bed");
+        Files.write(targets, List.of("chr1\t0\t100", "chr2\t50\t80"));
+        GenomeSequenceAccessorBuilder builder = GenomeSequenceAccessorBuilder.builder()
+                .setFastaPath(FASTA)
+                .setTargetRegionsPath(targets);
+
+        for (GenomeSequenceAccessor.Type type : GenomeSequenceAccessor.Type.values()) {
+            QueryTraceReplay.Report report = QueryTraceReplay.replay(tracePath, builder, type, QueryTraceReplay.Pace.MAXIMUM, 2);
+            assertThat(report.getQueryCount(), is(102));
+            assertThat(report.getFailureCount(), is(0L));
+            assertThat(report.getP50(), is(lessThanOrEqualTo(report.getP99())));
+            assertThat(report.getP99(), is(lessThanOrEqualTo(report.getP999())));
+            assertThat(report.getThroughput(), is(greaterThan(0.)));
+        }
+
+        QueryTraceReplay.Report report = QueryTraceReplay.replay(tracePath, builder, GenomeSequenceAccessor.Type.SINGLE_FASTA,
+                QueryTraceReplay.Pace.ORIGINAL, 1);
+        assertThat(report.getQueryCount(), is(102));
+        assertThat(report.getFailureCount(), is(0L));
+    }
+
+    @Test
+    public void replayDoesNotModifyTheBuilder(@TempDir Path tempDir) throws Exception {
+        Path tracePath = writeTrace(tempDir);
+        GenomeSequenceAccessorBuilder builder = GenomeSequenceAccessorBuilder.builder().setFastaPath(FASTA);
+
+        QueryTraceReplay.replay(tracePath, builder, GenomeSequenceAccessor.Type.AUTO, QueryTraceReplay.Pace.MAXIMUM, 1);
+
+        try (GenomeSequenceAccessor accessor = builder.build()) {
+            assertThat(accessor, is(not(instanceOf(AdaptiveGenomeSequenceAccessor.class))));
+        }
+    }
+
+    @Test
+    public void invalidRecordsAreReplayedAsFailures(@TempDir Path tempDir) throws Exception {
+        Path tracePath = tempDir.resolve("trace.bin");
+        GenomeSequenceAccessor accessor = GenomeSequenceAccessorBuilder.builder().setFastaPath(FASTA).build();
+        try (RecordingGenomeSequenceAccessor recording = RecordingGenomeSequenceAccessor.of(accessor, tracePath)) {
+            // valid, reversed, past the contig end and negative begin
+            recording.fetchSequences(new int[]{0, 0, 1, 2}, new int[]{60, 70, 9990, -5}, new int[]{70, 60, 20000, 10}, null);
+        }
+
+        QueryTraceReplay.Report report = QueryTraceReplay.replay(tracePath, GenomeSequenceAccessorBuilder.builder().setFastaPath(FASTA),
+                GenomeSequenceAccessor.Type.SINGLE_FASTA, QueryTraceReplay.Pace.MAXIMUM, 1);
+        assertThat(report.getQueryCount(), is(4));
+        assertThat(report.getFailureCount(), is(3L));
+    }
+}
@@ -0,0 +1,169 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ReferenceAlignerTest {
+
+    private static final Path FASTA = Paths.get(ReferenceAlignerTest.class.getResource("small_hg19.fa").getPath());
+    private static final Path FASTA_FAI = Paths.get(ReferenceAlignerTest.class.getResource("small_hg19.fa.fai").getPath());
+    private static final Path FASTA_DICT = Paths.get(ReferenceAlignerTest.class.getResource("small_hg19.fa.dict").getPath());
+
+    private SingleFastaGenomeSequenceAccessor accessor;
+
+    private ReferenceDictionary rd;
+
+    private ReferenceAligner instance;
+
+    @BeforeEach
+    public void setUp() {
+        accessor = new SingleFastaGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT, true);
+        rd = accessor.getReferenceDictionary();
+        instance = ReferenceAligner.of(accessor);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        accessor.close();
+    }
+
+    /**
+     * @return chr2 bases <code>[begin, end)</code>
+     */
+    private String chr2(int begin, int end) {
+        return accessor.fetchSequence("chr2", begin + 1, end);
+    }
+
+    @Test
+    public void alignExactMatch() {
+        GenomeInterval window = new GenomeInterval(rd, Strand.FWD, 1, 900, 1200);
+
+        ReferenceAlignment alignment = instance.align(chr2(1000, 1050), window).orElseThrow();
+
+        assertThat(alignment.getReference(), is(new GenomeInterval(rd, Strand.FWD, 1, 1000, 1050)));
+        assertThat(alignment.getQueryBegin(), is(0));
+        assertThat(alignment.getQueryEnd(), is(50));
+        assertThat(alignment.getCigar(), is("50M"));
+        assertThat(alignment.getScore(), is(50));
+        assertThat(alignment.getEditDistance(), is(0));
+    }
+
+    @Test
+    public void alignIsCaseInsensitive() {
+        GenomeInterval window = new GenomeInterval(rd, Strand.FWD, 1, 900, 1200);
+
+        ReferenceAlignment alignment = instance.align(chr2(1000, 1050).toLowerCase(), window).orElseThrow();
+
+        assertThat(alignment.getCigar(), is("50M"));
+    }
+
+    @Test
+    public void alignMismatch() {
+        GenomeInterval window = new GenomeInterval(rd, Strand.FWD, 1, 900, 1200);
+        char[] query = chr2(1000, 1050).toCharArray();
+        query[25] = query[25] == 'A' ? 'C' : 'A';
+
+        ReferenceAlignment alignment = instance.align(new String(query), window).orElseThrow();
+
+        assertThat(alignment.getCigar(), is("50M"));
+        assertThat(alignment.getScore(), is(50 - 1 - 4));
+        assertThat(alignment.getEditDistance(), is(1));
+    }
+
+    @Test
+    public void alignDeletion() {
+        GenomeInterval window = new GenomeInterval(rd, Strand.FWD, 1, 900, 1200);
+        String query = chr2(1000, 1030) + chr2(1033, 1063);
+
+        ReferenceAlignment alignment = instance.align(query, window).orElseThrow();
+
+        assertThat(alignment.getReference(), is(new GenomeInterval(rd, Strand.FWD, 1, 1000, 1063)));
+        assertThat(alignment.getCigar().matches("\\d+M3D\\d+M"), is(true));
+        assertThat(alignment.getScore(), is(60 - 6 - 3));
+        assertThat(alignment.getEditDistance(), is(3));
+    }
+
+    @Test
+    public void alignInsertion() {
+        GenomeInterval window = new GenomeInterval(rd, Strand.FWD, 1, 900, 1200);
+        String query = chr2(1000, 1030) + "GG" + chr2(1030, 1060);
+
+        ReferenceAlignment alignment = instance.align(query, window).orElseThrow();
+
+        assertThat(alignment.getReference(), is(new GenomeInterval(rd, Strand.FWD, 1, 1000, 1060)));
+        assertThat(alignment.getCigar().matches("\\d+M2I\\d+M"), is(true));
+        assertThat(alignment.getScore(), is(60 - 6 - 2));
+        assertThat(alignment.getEditDistance(), is(2));
+    }
+
+    @Test
+    public void alignToReverseStrandWindow() {
+        GenomeInterval window = new GenomeInterval(rd, Strand.FWD, 1, 900, 1200).withStrand(Strand.REV);
+        String query = ReverseComplement.reverseComplement(chr2(1000, 1040));
+
+        ReferenceAlignment alignment = instance.align(query, window).orElseThrow();
+
+        assertThat(alignment.getReference(), is(new GenomeInterval(rd, Strand.FWD, 1, 1000, 1040).withStrand(Strand.REV)));
+        assertThat(alignment.getCigar(), is("40M"));
+    }
+
+    @Test
+    public void alignToUnknownContig() {
+        GenomeInterval window = new GenomeInterval(rd, Strand.FWD, 100, 900, 1200);
+
+        assertThat(instance.align("ACGT", window).isPresent(), is(false));
+    }
+
+    @Test
+    public void alignAllInParallel() throws Exception {
+        List<String> queries = new ArrayList<>();
+        List<GenomeInterval> windows = new ArrayList<>();
+        for (int begin = 100; begin < 9_800; begin += 37) {
+            queries.add(chr2(begin, begin + 20) + "T" + chr2(begin + 22, begin + 60));
+            windows.add(new GenomeInterval(rd, Strand.FWD, 1, begin - 50, begin + 110));
+        }
+
+        List<Optional<ReferenceAlignment>> sequential = instance.alignAll(queries, windows);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Optional<ReferenceAlignment>> parallel = instance.alignAll(queries, windows, executor, 3);
+            assertThat(parallel, is(sequential));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(sequential.stream().allMatch(Optional::isPresent), is(true));
+    }
+
+    @Test
+    public void workerReusesMatricesAcrossProblemSizes() {
+        ReferenceAligner.Worker worker = instance.newWorker();
+        // a long query grows the matrices, the following short query reuses them
+        for (int length : new int[]{200, 20, 500, 30}) {
+            String query = chr2(3_000, 3_000 + length);
+            GenomeInterval window = new GenomeInterval(rd, Strand.FWD, 1, 2_950, 3_050 + length);
+            assertThat(worker.align(query, window), is(instance.align(query, window)));
+            assertThat(worker.align(query, window).get().getCigar(), is(length + "M"));
+        }
+    }
+
+    @Test
+    public void alignAllFailsWhenBatchSizesDiffer() {
+        assertThrows(IllegalArgumentException.class, () -> instance.alignAll(List.of("ACGT"), List.of()));
+    }
+}
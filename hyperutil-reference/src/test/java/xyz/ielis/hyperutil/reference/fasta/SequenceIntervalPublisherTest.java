@@ -0,0 +1,165 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class SequenceIntervalPublisherTest {
+
+    private static final Path FASTA = Paths.get(SequenceIntervalPublisherTest.class.getResource("small_hg19.fa").getPath());
+    private static final Path FASTA_FAI = Paths.get(SequenceIntervalPublisherTest.class.getResource("small_hg19.fa.fai").getPath());
+    private static final Path FASTA_DICT = Paths.get(SequenceIntervalPublisherTest.class.getResource("small_hg19.fa.dict").getPath());
+
+    private CountingAccessor accessor;
+
+    private ReferenceDictionary rd;
+
+    @BeforeEach
+    public void setUp() {
+        accessor = new CountingAccessor();
+        rd = accessor.getReferenceDictionary();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        accessor.close();
+    }
+
+    @Test
+    public void emitsChunksOfAllRegions() throws Exception {
+        GenomeInterval first = new GenomeInterval(rd, Strand.FWD, 0, 100, 350);
+        GenomeInterval second = new GenomeInterval(rd, Strand.FWD, 1, 500, 700).withStrand(Strand.REV);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SequenceIntervalPublisher publisher = SequenceIntervalPublisher.of(accessor, List.of(first, second), 100, 2, executor);
+            CollectingSubscriber subscriber = new CollectingSubscriber(1);
+            publisher.subscribe(subscriber);
+
+            assertThat(subscriber.done.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(subscriber.error, is(nullValue()));
+            assertThat(subscriber.items.stream().map(si -> si.getSequence().length()).collect(Collectors.toList()),
+                    contains(100, 100, 50, 100, 100));
+
+            String firstSeq = subscriber.items.subList(0, 3).stream().map(SequenceInterval::getSequence).collect(Collectors.joining());
+            assertThat(firstSeq, is(accessor.fetchSequence(first).get().getSequence()));
+            String secondSeq = subscriber.items.subList(3, 5).stream().map(SequenceInterval::getSequence).collect(Collectors.joining());
+            assertThat(secondSeq, is(accessor.fetchSequence(second).get().getSequence()));
+            assertThat(subscriber.items.get(3).getInterval().getStrand(), is(Strand.REV));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void prefetchIsBoundedByDemand() {
+        GenomeInterval contig = new GenomeInterval(rd, Strand.FWD, 0, 0, 10_001);
+        SequenceIntervalPublisher publisher = SequenceIntervalPublisher.of(accessor, List.of(contig), 1_000, 3, Runnable::run);
+        CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        publisher.subscribe(subscriber);
+
+        assertThat(accessor.count, is(3));
+        assertThat(subscriber.items, is(empty()));
+
+        subscriber.subscription.request(2);
+        assertThat(subscriber.items, hasSize(2));
+        assertThat(accessor.count, is(5));
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertThat(subscriber.items, hasSize(11));
+        assertThat(subscriber.done.getCount(), is(0L));
+    }
+
+    @Test
+    public void cancelStopsFetching() {
+        GenomeInterval contig = new GenomeInterval(rd, Strand.FWD, 0, 0, 10_001);
+        SequenceIntervalPublisher publisher = SequenceIntervalPublisher.of(accessor, List.of(contig), 1_000, 2, Runnable::run);
+        CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+        int count = accessor.count;
+
+        subscriber.subscription.request(10);
+        assertThat(subscriber.items, hasSize(1));
+        assertThat(accessor.count, is(count));
+        assertThat(subscriber.done.getCount(), is(1L));
+    }
+
+    @Test
+    public void unknownContigTerminatesWithError() {
+        GenomeInterval unknown = new GenomeInterval(rd, Strand.FWD, 100, 0, 100);
+        SequenceIntervalPublisher publisher = SequenceIntervalPublisher.of(accessor, List.of(unknown), 1_000, 2, Runnable::run);
+        CollectingSubscriber subscriber = new CollectingSubscriber(1);
+        publisher.subscribe(subscriber);
+
+        assertThat(subscriber.error, is(instanceOf(IllegalArgumentException.class)));
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<SequenceInterval> {
+
+        private final long requestOnSubscribe;
+        private final List<SequenceInterval> items = new ArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+        private volatile Throwable error;
+
+        private CollectingSubscriber(long requestOnSubscribe) {
+            this.requestOnSubscribe = requestOnSubscribe;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (requestOnSubscribe > 0) {
+                subscription.request(requestOnSubscribe);
+            }
+        }
+
+        @Override
+        public void onNext(SequenceInterval item) {
+            items.add(item);
+            if (requestOnSubscribe > 0) {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+
+    private static class CountingAccessor extends SingleFastaGenomeSequenceAccessor {
+
+        private volatile int count = 0;
+
+        CountingAccessor() {
+            super(FASTA, FASTA_FAI, FASTA_DICT, true);
+        }
+
+        @Override
+        public String fetchSequence(String chr, int start, int end) {
+            count++;
+            return super.fetchSequence(chr, start, end);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class SequenceIntervalStoreTest {
+
+    private static final Path FASTA = Paths.get(SequenceIntervalStoreTest.class.getResource("small_hg19.fa").getPath());
+    private static final Path FASTA_FAI = Paths.get(SequenceIntervalStoreTest.class.getResource("small_hg19.fa.fai").getPath());
+    private static final Path FASTA_DICT = Paths.get(SequenceIntervalStoreTest.class.getResource("small_hg19.fa.dict").getPath());
+
+    private CountingAccessor accessor;
+
+    private SequenceIntervalStore store;
+
+    private ReferenceDictionary rd;
+
+    @BeforeEach
+    public void setUp() {
+        accessor = new CountingAccessor();
+        store = SequenceIntervalStore.of(accessor, 1_000);
+        rd = accessor.getReferenceDictionary();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    public void containedQueriesAreAnsweredFromStore() {
+        Optional<SequenceInterval> parent = store.fetchSequence(new GenomeInterval(rd, Strand.FWD, 0, 0, 200));
+        assertThat(parent.isPresent(), is(true));
+        assertThat(accessor.count, is(1));
+
+        GenomeInterval query = new GenomeInterval(rd, Strand.FWD, 0, 60, 70);
+        assertThat(store.fetchSequence(query).get().getSequence(), is("caatgagccc"));
+        assertThat(store.fetchSequence(query.withStrand(Strand.REV)).get().getSequence(), is("gggctcattg"));
+        assertThat(store.fetchSequence(query.withStrand(Strand.REV)).get().getInterval(), is(query.withStrand(Strand.REV)));
+        assertThat(store.fetchSequence("chr1", 61, 70), is("caatgagccc"));
+        assertThat(accessor.count, is(1));
+        assertThat(store.getHitCount(), is(4L));
+
+        // not contained in the stored interval
+        store.fetchSequence(new GenomeInterval(rd, Strand.FWD, 0, 150, 250));
+        assertThat(accessor.count, is(2));
+    }
+
+    @Test
+    public void reverseStrandParentIsUsed() {
+        GenomeInterval parentInterval = new GenomeInterval(rd, Strand.FWD, 0, 50, 80).withStrand(Strand.REV);
+        store.put(accessor.fetchSequence(parentInterval).get());
+        int count = accessor.count;
+
+        GenomeInterval query = new GenomeInterval(rd, Strand.FWD, 0, 60, 70);
+        assertThat(store.fetchSequence(query).get().getSequence(), is("caatgagccc"));
+        assertThat(store.fetchSequence(query.withStrand(Strand.REV)).get().getSequence(), is("gggctcattg"));
+        assertThat(accessor.count, is(count));
+    }
+
+    @Test
+    public void leastRecentlyUsedIntervalsAreEvicted() {
+        store.fetchSequence(new GenomeInterval(rd, Strand.FWD, 0, 0, 600));
+        store.fetchSequence(new GenomeInterval(rd, Strand.FWD, 1, 0, 300));
+        assertThat(store.getStoredBases(), is(900L));
+
+        store.fetchSequence(new GenomeInterval(rd, Strand.FWD, 0, 1_000, 1_300));
+        // the first interval is evicted
+        assertThat(store.getStoredBases(), is(600L));
+        int count = accessor.count;
+        store.fetchSequence(new GenomeInterval(rd, Strand.FWD, 0, 10, 20));
+        assertThat(accessor.count, is(count + 1));
+        store.fetchSequence(new GenomeInterval(rd, Strand.FWD, 1, 10, 20));
+        assertThat(accessor.count, is(count + 1));
+    }
+
+    @Test
+    public void containmentMatchesBruteForceSearch() throws Exception {
+        Random random = new Random(42);
+        List<int[]> stored = new ArrayList<>();
+        try (SequenceIntervalStore large = SequenceIntervalStore.of(accessor, 1_000_000)) {
+            for (int i = 0; i < 2_000; i++) {
+                int begin = random.nextInt(2_000);
+                int end = begin + 1 + random.nextInt(i < 500 ? 100 : 20);
+                boolean contained = stored.stream().anyMatch(iv -> iv[0] <= begin && end <= iv[1]);
+                int count = accessor.count;
+
+                Optional<SequenceInterval> si = large.fetchSequence(new GenomeInterval(rd, Strand.FWD, 0, begin, end));
+
+                assertThat(si.get().getSequence(), is(accessor.fetchSequence("chr1", begin + 1, end)));
+                assertThat(accessor.count, is(contained ? count + 1 : count + 2));
+                if (!contained) {
+                    stored.add(new int[]{begin, end});
+                }
+            }
+        }
+    }
+
+    @Test
+    public void queriesAreCorrectWhileEvicting() throws Exception {
+        Random random = new Random(42);
+        try (SequenceIntervalStore small = SequenceIntervalStore.of(accessor, 500)) {
+            for (int i = 0; i < 2_000; i++) {
+                int begin = random.nextInt(2_000);
+                int end = begin + 1 + random.nextInt(100);
+
+                Optional<SequenceInterval> si = small.fetchSequence(new GenomeInterval(rd, Strand.FWD, 0, begin, end));
+
+                assertThat(si.get().getSequence(), is(accessor.fetchSequence("chr1", begin + 1, end)));
+                assertThat(small.getStoredBases(), is(lessThanOrEqualTo(500L)));
+            }
+        }
+    }
+
+    private static class CountingAccessor extends SingleFastaGenomeSequenceAccessor {
+
+        private int count = 0;
+
+        CountingAccessor() {
+            super(FASTA, FASTA_FAI, FASTA_DICT, true);
+        }
+
+        @Override
+        public String fetchSequence(String chr, int start, int end) {
+            count++;
+            return super.fetchSequence(chr, start, end);
+        }
+    }
+}
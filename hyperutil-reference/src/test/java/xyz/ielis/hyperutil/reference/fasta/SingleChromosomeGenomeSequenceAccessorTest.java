@@ -41,6 +41,18 @@ public class SingleChromosomeGenomeSequenceAccessorTest {
         assertThat(seq, is("TCTGCTGTGT"));
     }
 
+    @Test
+    public void fetchSequenceFromUnprefixedFasta() throws Exception {
+        Path fasta = Paths.get(SingleChromosomeGenomeSequenceAccessor.class.getResource("small_b37.fa").getPath());
+        Path fai = Paths.get(SingleChromosomeGenomeSequenceAccessor.class.getResource("small_b37.fa.fai").getPath());
+        Path dict = Paths.get(SingleChromosomeGenomeSequenceAccessor.class.getResource("small_b37.fa.dict").getPath());
+        try (SingleChromosomeGenomeSequenceAccessor unprefixed = new SingleChromosomeGenomeSequenceAccessor(fasta, fai, dict, false)) {
+            assertThat(unprefixed.fetchSequence("1", 61, 70), is("caatgagccc"));
+            // the prefixed name is resolved to the fasta contig as well
+            assertThat(unprefixed.fetchSequence("chr1", 61, 70), is("caatgagccc"));
+        }
+    }
+
     @Test
     public void testConcurrency() throws Exception {
         ExecutorService executor = Executors.newFixedThreadPool(3);
@@ -125,4 +125,81 @@ public class SingleFastaGenomeSequenceAccessorTest {
         SingleFastaGenomeSequenceAccessor accessor = new SingleFastaGenomeSequenceAccessor(FASTA_2, FASTA_2_FAI, FASTA_2_DICT, false);
         assertThat(accessor.getReferenceDictionary().getContigNameToID().keySet(), hasItems("chr1", "1", "chr2", "2"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void fetchSequences() {
+        int[] contigIds = {0, 1, 2, 0, 1};
+        int[] begins = {60, 60, 0, 55, 100};
+        int[] ends = {70, 70, 1000, 185, 100};
+        boolean[] reverse = {false, true, false, true, false};
+
+        SequenceBatch batch = accessor.fetchSequences(contigIds, begins, ends, reverse);
+
+        assertThat(batch.size(), is(5));
+        assertThat(batch.getSequence(0), is("caatgagccc"));
+        assertThat(batch.getSequence(1), is("ACACAGCAGA"));
+        assertThat(batch.getSequence(2), is(accessor.fetchSequence("chrM", 1, 1000)));
+        assertThat(batch.getSequence(3), is(ReverseComplement.reverseComplement(accessor.fetchSequence("chr1", 56, 185))));
+        assertThat(batch.getSequence(4), is(""));
+        for (int i = 0; i < batch.size(); i++) {
+            assertThat(batch.isOk(i), is(true));
+        }
+        assertThat(batch.getOffsets()[5], is(10 + 10 + 1000 + 130));
+    }
+
+    @Test
+    public void fetchSequencesMatchesDefaultImplementation() {
+        int[] contigIds = {0, 1, 2, 1};
+        int[] begins = {0, 9_000, 500, 59};
+        int[] ends = {10_001, 10_001, 620, 61};
+        boolean[] reverse = {true, false, true, false};
+
+        SequenceBatch direct = accessor.fetchSequences(contigIds, begins, ends, reverse);
+        // wrapper that implements only the abstract methods
+        GenomeSequenceAccessor wrapper = new GenomeSequenceAccessor() {
+            @Override
+            public ReferenceDictionary getReferenceDictionary() {
+                return accessor.getReferenceDictionary();
+            }
+
+            @Override
+            public String fetchSequence(String chromosome, int begin, int end) {
+                return accessor.fetchSequence(chromosome, begin, end);
+            }
+
+            @Override
+            public Optional<SequenceInterval> fetchSequence(GenomeInterval interval) {
+                return accessor.fetchSequence(interval);
+            }
+
+            @Override
+            public void close() {
+                // no-op
+            }
+        };
+        SequenceBatch generic = wrapper.fetchSequences(contigIds, begins, ends, reverse);
+
+        for (int i = 0; i < contigIds.length; i++) {
+            assertThat(direct.getSequence(i), is(generic.getSequence(i)));
+        }
+    }
+
+    @Test
+    public void fetchSequencesWithInvalidRows() {
+        SequenceBatch batch = accessor.fetchSequences(new int[]{100, 0, 2, 0, 1}, new int[]{0, 70, 990, -1, 10},
+                new int[]{10, 60, 1001, 10, 20}, null);
+
+        assertThat(batch.getStatus(0), is(SequenceBatch.UNKNOWN_CONTIG));
+        assertThat(batch.getStatus(1), is(SequenceBatch.OUT_OF_BOUNDS));
+        assertThat(batch.getStatus(2), is(SequenceBatch.OUT_OF_BOUNDS));
+        assertThat(batch.getStatus(3), is(SequenceBatch.OUT_OF_BOUNDS));
+        assertThat(batch.getStatus(4), is(SequenceBatch.OK));
+        assertThat(batch.getLength(0), is(0));
+        assertThat(batch.getSequence(4), is(accessor.fetchSequence("chr2", 11, 20)));
+    }
+
+    @Test
+    public void fetchSequencesFailsWhenColumnsHaveDifferentLength() {
+        assertThrows(IllegalArgumentException.class, () -> accessor.fetchSequences(new int[]{0, 1}, new int[]{0}, new int[]{10}, null));
+    }
+}
@@ -0,0 +1,147 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.data.ReferenceDictionaryBuilder;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SoftMaskIndexTest {
+
+    private static final Path FASTA = Paths.get(SoftMaskIndexTest.class.getResource("small_hg19.fa").getPath());
+    private static final Path FASTA_FAI = Paths.get(SoftMaskIndexTest.class.getResource("small_hg19.fa.fai").getPath());
+    private static final Path FASTA_DICT = Paths.get(SoftMaskIndexTest.class.getResource("small_hg19.fa.dict").getPath());
+    private static final Path FASTA_2 = Paths.get(SoftMaskIndexTest.class.getResource("small_hg19_2.fa").getPath());
+
+    private static SingleFastaGenomeSequenceAccessor ACCESSOR;
+
+    private static SoftMaskIndex INDEX;
+
+    private static ReferenceDictionary RD;
+
+    @BeforeAll
+    public static void setUpBefore() {
+        ACCESSOR = new SingleFastaGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT, true);
+        RD = ACCESSOR.getReferenceDictionary();
+        INDEX = SoftMaskIndex.build(FASTA);
+    }
+
+    @AfterAll
+    public static void tearDownAfter() throws Exception {
+        ACCESSOR.close();
+    }
+
+    private static long countLowercase(String seq) {
+        return seq.chars().filter(Character::isLowerCase).count();
+    }
+
+    @Test
+    public void queriesMatchCaseOfBases() {
+        Random random = new Random(13);
+        for (int i = 0; i < 1_000; i++) {
+            int contig = random.nextInt(3);
+            int contigLength = RD.getContigIDToLength().get(contig);
+            int begin = random.nextInt(contigLength);
+            int end = Math.min(contigLength, begin + 1 + random.nextInt(300));
+            GenomeInterval query = new GenomeInterval(RD, Strand.FWD, contig, begin, end);
+            String seq = ACCESSOR.fetchSequence(query).get().getSequence();
+
+            long lowercase = countLowercase(seq);
+            assertThat(INDEX.isMasked(query), is(lowercase > 0));
+            assertThat(INDEX.maskedFraction(query), is(closeTo((double) lowercase / seq.length(), 1E-9)));
+            assertThat(INDEX.maskedFraction(query.withStrand(Strand.REV)), is(closeTo((double) lowercase / seq.length(), 1E-9)));
+            long inRuns = INDEX.overlappingMaskedRuns(query).stream()
+                    .mapToLong(run -> run.intersection(query).length())
+                    .sum();
+            assertThat(inRuns, is(lowercase));
+        }
+    }
+
+    @Test
+    public void overlappingMaskedRuns() {
+        // chr1:61-70 is `caatgagccc`
+        GenomeInterval query = new GenomeInterval(RD, Strand.FWD, 0, 60, 70);
+        List<GenomeInterval> runs = INDEX.overlappingMaskedRuns(query);
+        assertThat(runs, hasSize(1));
+        assertThat(runs.get(0).contains(query), is(true));
+        assertThat(INDEX.maskedFraction(query), is(1.));
+
+        // chr2:61-70 is `TCTGCTGTGT`
+        query = new GenomeInterval(RD, Strand.FWD, 1, 60, 70);
+        assertThat(INDEX.isMasked(query), is(false));
+        assertThat(INDEX.overlappingMaskedRuns(query), is(empty()));
+    }
+
+    @Test
+    public void contigIsResolvedThroughAliases() {
+        // the fasta file uses chr1 and chrM, the primary names are a RefSeq accession and MT
+        ReferenceDictionaryBuilder rdb = new ReferenceDictionaryBuilder();
+        rdb.putContigID("NC_000001.10", 0);
+        rdb.putContigID("chr1", 0);
+        rdb.putContigName(0, "NC_000001.10");
+        rdb.putContigLength(0, 10_001);
+        rdb.putContigID("MT", 2);
+        rdb.putContigID("chrM", 2);
+        rdb.putContigName(2, "MT");
+        rdb.putContigLength(2, 1000);
+        ReferenceDictionary aliased = rdb.build();
+
+        GenomeInterval query = new GenomeInterval(aliased, Strand.FWD, 0, 60, 70);
+        assertThat(INDEX.isMasked(query), is(true));
+        assertThat(INDEX.overlappingMaskedRuns(query), hasSize(1));
+        assertThat(INDEX.isMasked(new GenomeInterval(aliased, Strand.FWD, 2, 0, 1000)), is(false));
+    }
+
+    @Test
+    public void writeAndRead(@TempDir Path tempDir) throws Exception {
+        Path indexPath = tempDir.resolve("small_hg19.fa.mask");
+        INDEX.write(indexPath);
+        SoftMaskIndex index = SoftMaskIndex.read(indexPath);
+
+        assertThat(index.getContigNames(), containsInAnyOrder("chr1", "chr2", "chrM"));
+        for (int contig = 0; contig < 3; contig++) {
+            GenomeInterval whole = new GenomeInterval(RD, Strand.FWD, contig, 0, RD.getContigIDToLength().get(contig));
+            assertThat(index.overlappingMaskedRuns(whole), is(INDEX.overlappingMaskedRuns(whole)));
+        }
+    }
+
+    @Test
+    public void readOrBuildRebuildsIndexOfDifferentFasta(@TempDir Path tempDir) throws Exception {
+        Path indexPath = tempDir.resolve("small_hg19.fa.mask");
+        // stale index, e.g. the fasta file has been replaced
+        SoftMaskIndex.build(FASTA_2).write(indexPath);
+
+        SoftMaskIndex index = SoftMaskIndex.readOrBuild(FASTA, new FastaSequenceIndex(FASTA_FAI), indexPath);
+        assertThat(index.getContigNames(), containsInAnyOrder("chr1", "chr2", "chrM"));
+        assertThat(index.matches(FASTA, new FastaSequenceIndex(FASTA_FAI)), is(true));
+
+        // the rebuilt index has been stored and it is used from now on
+        assertThat(SoftMaskIndex.read(indexPath).matches(FASTA, new FastaSequenceIndex(FASTA_FAI)), is(true));
+    }
+
+    @Test
+    public void uppercase() {
+        byte[] bases = ACCESSOR.fetchSequence("chr1", 51, 80).getBytes();
+        INDEX.uppercase("chr1", 50, bases, 0, bases.length);
+        assertThat(new String(bases), is(ACCESSOR.fetchSequence("chr1", 51, 80).toUpperCase()));
+    }
+
+    @Test
+    public void unknownContig() {
+        GenomeInterval query = new GenomeInterval(RD, Strand.FWD, 100, 60, 70);
+        assertThrows(IllegalArgumentException.class, () -> INDEX.isMasked(query));
+    }
+}
@@ -0,0 +1,161 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import htsjdk.samtools.SAMException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TargetedGenomeSequenceAccessorTest {
+
+    private static final Path FASTA = Paths.get(TargetedGenomeSequenceAccessorTest.class.getResource("small_hg19.fa").getPath());
+    private static final Path FASTA_FAI = Paths.get(TargetedGenomeSequenceAccessorTest.class.getResource("small_hg19.fa.fai").getPath());
+    private static final Path FASTA_DICT = Paths.get(TargetedGenomeSequenceAccessorTest.class.getResource("small_hg19.fa.dict").getPath());
+
+    @TempDir
+    public Path tempDir;
+
+    private Path targets;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        targets = tempDir.resolve("targets.bed");
+        // the first two chr1 regions overlap after padding, chr5 is not present in the fasta
+        Files.write(targets, List.of("track name=targets",
+                "chr1\t100\t200",
+                "chr1\t220\t300",
+                "chr1\t5000\t5100",
+                "chr2\t50\t80",
+                "chr5\t0\t100"));
+    }
+
+    private TargetedGenomeSequenceAccessor makeAccessor(int padding, TargetedGenomeSequenceAccessor.OffTargetPolicy policy) {
+        return new TargetedGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT, true, null, targets, padding, policy);
+    }
+
+    @Test
+    public void targetsArePaddedAndMerged() throws Exception {
+        try (TargetedGenomeSequenceAccessor accessor = makeAccessor(10, TargetedGenomeSequenceAccessor.OffTargetPolicy.FALLBACK)) {
+            // chr1:[90,310), chr1:[4990,5110), chr2:[40,90)
+            assertThat(accessor.getTargetCount(), is(3));
+            assertThat(accessor.getTargetedBases(), is(220L + 120L + 50L));
+            assertThat(accessor.getPadding(), is(10));
+        }
+    }
+
+    @Test
+    public void paddingIsClampedToContigBounds() throws Exception {
+        try (TargetedGenomeSequenceAccessor accessor = makeAccessor(100, TargetedGenomeSequenceAccessor.OffTargetPolicy.REJECT)) {
+            // chr1:[0,400), chr1:[4900,5200), chr2:[0,180)
+            assertThat(accessor.getTargetCount(), is(3));
+            assertThat(accessor.getTargetedBases(), is(400L + 300L + 180L));
+            assertThat(accessor.fetchSequence("chr2", 1, 10), is(fromFile("chr2", 1, 10)));
+        }
+    }
+
+    @Test
+    public void fetchSequenceInsideTargets() throws Exception {
+        try (TargetedGenomeSequenceAccessor accessor = makeAccessor(0, TargetedGenomeSequenceAccessor.OffTargetPolicy.REJECT)) {
+            assertThat(accessor.fetchSequence("chr2", 61, 70), is("TCTGCTGTGT"));
+            assertThat(accessor.fetchSequence("chr1", 101, 200), is(fromFile("chr1", 101, 200)));
+            assertThat(accessor.fetchSequence("chr1", 5001, 5001), is(fromFile("chr1", 5001, 5001)));
+            // region spanning the gap between two targets
+            assertThrows(SAMException.class, () -> accessor.fetchSequence("chr1", 190, 230));
+        }
+    }
+
+    @Test
+    public void offTargetQueriesFallBackToFile() throws Exception {
+        try (TargetedGenomeSequenceAccessor accessor = makeAccessor(0, TargetedGenomeSequenceAccessor.OffTargetPolicy.FALLBACK)) {
+            assertThat(accessor.fetchSequence("chr1", 61, 70), is("caatgagccc"));
+            assertThat(accessor.fetchSequence("chr1", 190, 230), is(fromFile("chr1", 190, 230)));
+            assertThat(accessor.fetchSequence("chrM", 61, 70), is("CGTCTGGGGG"));
+        }
+    }
+
+    @Test
+    public void offTargetQueriesAreRejected() throws Exception {
+        try (TargetedGenomeSequenceAccessor accessor = makeAccessor(0, TargetedGenomeSequenceAccessor.OffTargetPolicy.REJECT)) {
+            assertThrows(SAMException.class, () -> accessor.fetchSequence("chr1", 61, 70));
+            assertThrows(SAMException.class, () -> accessor.fetchSequence("chrM", 61, 70));
+
+            ReferenceDictionary rd = accessor.getReferenceDictionary();
+            Optional<SequenceInterval> rejected = accessor.fetchSequence(new GenomeInterval(rd, Strand.FWD, 0, 60, 70));
+            assertThat(rejected.isPresent(), is(false));
+
+            Optional<SequenceInterval> served = accessor.fetchSequence(new GenomeInterval(rd, Strand.FWD, 1, 60, 70).withStrand(Strand.REV));
+            assertThat(served.isPresent(), is(true));
+            assertThat(served.get().getSequence(), is("ACACAGCAGA"));
+        }
+    }
+
+    @Test
+    public void fetchSequences() throws Exception {
+        try (TargetedGenomeSequenceAccessor accessor = makeAccessor(0, TargetedGenomeSequenceAccessor.OffTargetPolicy.FALLBACK);
+             SingleFastaGenomeSequenceAccessor file = new SingleFastaGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT, true)) {
+            int[] contigIds = {1, 0, 0, 2, 0, 7};
+            int[] begins = {60, 150, 190, 60, 9990, 0};
+            int[] ends = {70, 160, 230, 70, 10010, 10};
+            boolean[] reverse = {false, true, false, true, false, false};
+
+            SequenceBatch batch = accessor.fetchSequences(contigIds, begins, ends, reverse);
+            SequenceBatch expected = file.fetchSequences(contigIds, begins, ends, reverse);
+
+            assertThat(batch.size(), is(6));
+            for (int i = 0; i < batch.size(); i++) {
+                assertThat(batch.getStatus(i), is(expected.getStatus(i)));
+                assertThat(batch.getSequence(i), is(expected.getSequence(i)));
+            }
+            assertThat(batch.getStatus(4), is(SequenceBatch.OUT_OF_BOUNDS));
+            assertThat(batch.getStatus(5), is(SequenceBatch.UNKNOWN_CONTIG));
+        }
+    }
+
+    @Test
+    public void fetchSequencesRejectsOffTargetRows() throws Exception {
+        try (TargetedGenomeSequenceAccessor accessor = makeAccessor(0, TargetedGenomeSequenceAccessor.OffTargetPolicy.REJECT)) {
+            SequenceBatch batch = accessor.fetchSequences(new int[]{1, 0, 2}, new int[]{60, 60, 60}, new int[]{70, 70, 70}, null);
+
+            assertThat(batch.getSequence(0), is("TCTGCTGTGT"));
+            assertThat(batch.getStatus(1), is(SequenceBatch.REJECTED));
+            assertThat(batch.getStatus(2), is(SequenceBatch.REJECTED));
+            assertThat(batch.getLength(1), is(0));
+        }
+    }
+
+    @Test
+    public void emptyTargets() throws Exception {
+        Files.write(targets, List.of("track name=empty"), StandardCharsets.UTF_8);
+        try (TargetedGenomeSequenceAccessor accessor = makeAccessor(50, TargetedGenomeSequenceAccessor.OffTargetPolicy.FALLBACK)) {
+            assertThat(accessor.getTargetCount(), is(0));
+            assertThat(accessor.getTargetedBases(), is(0L));
+            assertThat(accessor.fetchSequence("chr2", 61, 70), is("TCTGCTGTGT"));
+        }
+    }
+
+    @Test
+    public void missingTargetsFile() {
+        Path missing = tempDir.resolve("missing.bed");
+        assertThrows(IllegalArgumentException.class, () -> new TargetedGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT, true, null,
+                missing, 0, TargetedGenomeSequenceAccessor.OffTargetPolicy.FALLBACK));
+    }
+
+    private static String fromFile(String chr, int start, int end) throws Exception {
+        try (SingleFastaGenomeSequenceAccessor file = new SingleFastaGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT, true)) {
+            return file.fetchSequence(chr, start, end);
+        }
+    }
+}
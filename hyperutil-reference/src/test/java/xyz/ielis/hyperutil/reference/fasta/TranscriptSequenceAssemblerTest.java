@@ -0,0 +1,100 @@
+package xyz.ielis.hyperutil.reference.fasta;
+
+import com.google.common.collect.ImmutableList;
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import de.charite.compbio.jannovar.reference.TranscriptModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TranscriptSequenceAssemblerTest {
+
+    private static final Path FASTA = Paths.get(TranscriptSequenceAssemblerTest.class.getResource("small_hg19.fa").getPath());
+    private static final Path FASTA_FAI = Paths.get(TranscriptSequenceAssemblerTest.class.getResource("small_hg19.fa.fai").getPath());
+    private static final Path FASTA_DICT = Paths.get(TranscriptSequenceAssemblerTest.class.getResource("small_hg19.fa.dict").getPath());
+
+    private SingleFastaGenomeSequenceAccessor accessor;
+
+    private TranscriptSequenceAssembler assembler;
+
+    @BeforeEach
+    public void setUp() {
+        accessor = new SingleFastaGenomeSequenceAccessor(FASTA, FASTA_FAI, FASTA_DICT);
+        assembler = TranscriptSequenceAssembler.of(accessor);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        accessor.close();
+    }
+
+    private static TranscriptModel makeTranscript(ReferenceDictionary rd, Strand strand, int cdsBegin, int cdsEnd, int[]... exons) {
+        ImmutableList.Builder<GenomeInterval> builder = ImmutableList.builder();
+        for (int[] exon : exons) {
+            builder.add(new GenomeInterval(rd, Strand.FWD, 1, exon[0], exon[1]).withStrand(strand));
+        }
+        GenomeInterval tx = new GenomeInterval(rd, Strand.FWD, 1, exons[0][0], exons[exons.length - 1][1]).withStrand(strand);
+        GenomeInterval cds = new GenomeInterval(rd, Strand.FWD, 1, cdsBegin, cdsEnd).withStrand(strand);
+        return new TranscriptModel("NM_1", "GENE", tx, cds, builder.build(), "", "GENE_ID", 1, false, false);
+    }
+
+    @Test
+    public void assembleFwdTranscript() {
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        // the second intron is long enough to be fetched separately
+        TranscriptModel tx = makeTranscript(rd, Strand.FWD, 105, 9005,
+                new int[]{100, 120}, new int[]{200, 230}, new int[]{9000, 9010});
+
+        TranscriptSequence sequence = assembler.assemble(tx).get();
+
+        String expected = accessor.fetchSequence("chr2", 101, 120)
+                + accessor.fetchSequence("chr2", 201, 230)
+                + accessor.fetchSequence("chr2", 9001, 9010);
+        assertThat(sequence.getCdna(), is(expected));
+        assertThat(sequence.getCds(), is(expected.substring(5, 55)));
+        char[] cds = sequence.getCds().toCharArray();
+        assertThat(sequence.getProtein(), is(TranscriptSequenceAssembler.translate(cds, 0, cds.length)));
+        assertThat(sequence.getProtein().length(), is(16));
+    }
+
+    @Test
+    public void assembleRevTranscript() {
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        TranscriptModel tx = makeTranscript(rd, Strand.REV, 105, 215,
+                new int[]{100, 120}, new int[]{200, 230});
+
+        TranscriptSequence sequence = assembler.assemble(tx).get();
+
+        String onFwd = accessor.fetchSequence("chr2", 101, 120) + accessor.fetchSequence("chr2", 201, 230);
+        String expected = SequenceIntervalDefault.reverseComplement(onFwd);
+        assertThat(sequence.getCdna(), is(expected));
+        // CDS is [105, 215) on FWD strand, 15 bases of the second exon precede it on REV strand
+        assertThat(sequence.getCds(), is(expected.substring(15, 45)));
+        assertThat(sequence.getProtein().length(), is(10));
+    }
+
+    @Test
+    public void transcriptOutsideOfContigIsNotAssembled() {
+        ReferenceDictionary rd = accessor.getReferenceDictionary();
+        TranscriptModel tx = makeTranscript(rd, Strand.FWD, 9995, 10005, new int[]{9990, 10010});
+
+        assertThat(assembler.assemble(tx).isPresent(), is(false));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"ATGGCCTAA,MA*", "atgtggtga,MW*", "ATGNNNTG,MX", "AUGUUU,MF", "'',''"})
+    public void translate(String nucleotides, String protein) {
+        char[] seq = nucleotides.toCharArray();
+        assertThat(TranscriptSequenceAssembler.translate(seq, 0, seq.length), is(protein));
+    }
+}